@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.kraken.client.model.RGBA;
+import io.kraken.client.model.request.DirectUploadRequest;
+import io.kraken.client.model.resize.FillResize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+
+/**
+ * Fixtures shared by the benchmarks.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class BenchmarkSupport {
+
+    static final String API_KEY = "somekey";
+    static final String API_SECRET = "somesecret";
+
+    private BenchmarkSupport() {
+    }
+
+    static byte[] resource(String name) throws IOException {
+        return Resources.toByteArray(Resources.getResource(BenchmarkSupport.class, name));
+    }
+
+    static File imageFile() throws IOException {
+        final File image = File.createTempFile("kraken-io-benchmark", ".jpg");
+        image.deleteOnExit();
+        Files.write(resource("test.jpg"), image);
+        return image;
+    }
+
+    static FillResize resize() {
+        return new FillResize(150, 150, new RGBA(100, 100, 100, BigDecimal.ONE));
+    }
+
+    static DirectUploadRequest.Builder directUploadRequest(InputStream image) {
+        return DirectUploadRequest.builder(image).withLossy(true).withResize(resize());
+    }
+
+    /**
+     * Starts a local HTTP server answering every request with the given JSON after reading the request body.
+     */
+    static HttpServer startStub(final byte[] response) throws IOException {
+        return startStub(response, 0);
+    }
+
+    /**
+     * Like {@link #startStub(byte[])}, answering concurrent requests each after the given delay to stand in for the
+     * latency of the API.
+     */
+    static HttpServer startStub(final byte[] response, final long delayMillis) throws IOException {
+        // Without this the stub's delayed ACKs dominate every round trip
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        // Idle connections beyond the default of 200 are closed, failing concurrent uploads reusing them
+        System.setProperty("sun.net.httpserver.maxIdleConnections", "10000");
+        final HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange httpExchange) throws IOException {
+                try (InputStream inputStream = httpExchange.getRequestBody()) {
+                    ByteStreams.copy(inputStream, ByteStreams.nullOutputStream());
+                }
+                if (delayMillis > 0) {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                httpExchange.getResponseHeaders().add("Content-Type", "application/json");
+                httpExchange.sendResponseHeaders(200, response.length);
+                try (OutputStream outputStream = httpExchange.getResponseBody()) {
+                    outputStream.write(response);
+                }
+            }
+        });
+        if (delayMillis > 0) {
+            httpServer.setExecutor(Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("stub-%d").build()));
+        }
+        httpServer.start();
+        return httpServer;
+    }
+
+    static String baseUrl(HttpServer httpServer) {
+        return "http://127.0.0.1:" + httpServer.getAddress().getPort();
+    }
+}
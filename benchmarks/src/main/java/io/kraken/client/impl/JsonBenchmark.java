@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kraken.client.model.Auth;
+import io.kraken.client.model.AuthWrapper;
+import io.kraken.client.model.request.DirectUploadRequest;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import io.kraken.client.model.response.AbstractUploadResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the request payload, reflectively as {@link AuthWrapper} around an upload request and with the
+ * {@link RequestWriter} used by the clients, and of {@link AbstractUploadResponse}s, reflectively with polymorphic
+ * deserialization and with the streaming {@link ResponseReader} used by the clients. Run with
+ * {@code -prof gc} to see the bytes allocated per operation.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private ObjectMapper objectMapper;
+    private RequestWriter requestWriter;
+    private ResponseReader responseReader;
+    private DirectUploadRequest directUploadRequest;
+    private ImageUrlUploadRequest imageUrlUploadRequest;
+    private byte[] successfulResponse;
+    private byte[] failedResponse;
+    private AbstractUploadResponse uploadResponse;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = AbstractKrakenIoClient.createObjectMapper();
+        requestWriter = new RequestWriter(objectMapper, BenchmarkSupport.API_KEY, BenchmarkSupport.API_SECRET);
+        responseReader = new ResponseReader(objectMapper.getFactory());
+        directUploadRequest = BenchmarkSupport.directUploadRequest(new ByteArrayInputStream(new byte[0])).build();
+        imageUrlUploadRequest = ImageUrlUploadRequest.builder(new URL("http://somehost/image.jpg")).withLossy(true).build();
+        successfulResponse = BenchmarkSupport.resource("krakenIoResponse200.json");
+        failedResponse = BenchmarkSupport.resource("krakenIoResponse500.json");
+        uploadResponse = objectMapper.readValue(successfulResponse, AbstractUploadResponse.class);
+    }
+
+    @Benchmark
+    public byte[] serializeDirectUploadRequest() throws Exception {
+        return objectMapper.writeValueAsBytes(wrapAuth(directUploadRequest));
+    }
+
+    @Benchmark
+    public byte[] serializeImageUrlUploadRequest() throws Exception {
+        return objectMapper.writeValueAsBytes(wrapAuth(imageUrlUploadRequest));
+    }
+
+    @Benchmark
+    public byte[] writeDirectUploadRequest() {
+        return requestWriter.write(directUploadRequest);
+    }
+
+    @Benchmark
+    public byte[] writeImageUrlUploadRequest() {
+        return requestWriter.write(imageUrlUploadRequest);
+    }
+
+    @Benchmark
+    public AbstractUploadResponse deserializeSuccessfulUploadResponse() throws Exception {
+        return objectMapper.readValue(successfulResponse, AbstractUploadResponse.class);
+    }
+
+    @Benchmark
+    public AbstractUploadResponse deserializeFailedUploadResponse() throws Exception {
+        return objectMapper.readValue(failedResponse, AbstractUploadResponse.class);
+    }
+
+    @Benchmark
+    public AbstractUploadResponse readSuccessfulUploadResponse() throws Exception {
+        return responseReader.readUploadResponse(new ByteArrayInputStream(successfulResponse));
+    }
+
+    @Benchmark
+    public AbstractUploadResponse readFailedUploadResponse() throws Exception {
+        return responseReader.readUploadResponse(new ByteArrayInputStream(failedResponse));
+    }
+
+    @Benchmark
+    public String uploadResponseToString() {
+        return uploadResponse.toString();
+    }
+
+    private static <T> AuthWrapper<T> wrapAuth(T payload) {
+        return new AuthWrapper<T>(new Auth(BenchmarkSupport.API_KEY, BenchmarkSupport.API_SECRET), payload);
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.google.common.io.ByteStreams;
+import io.kraken.client.model.request.DirectFileUploadRequest;
+import io.kraken.client.model.request.DirectUploadRequest;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
+import org.glassfish.jersey.message.internal.OutboundMessageContext;
+import org.openjdk.jmh.annotations.*;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction and writing of the multipart request bodies of direct uploads, streamed and from a file. The body is
+ * written by the JAX-RS runtime into a connector which discards it, so no network is involved.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiPartBenchmark {
+
+    private DefaultKrakenIoClient krakenIoClient;
+    private Client client;
+    private byte[] image;
+    private File imageFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        krakenIoClient = new DefaultKrakenIoClient(BenchmarkSupport.API_KEY, BenchmarkSupport.API_SECRET);
+        client = ClientBuilder.newClient(new ClientConfig().connectorProvider(new DiscardingConnectorProvider()))
+                .register(new JacksonJsonProvider(AbstractKrakenIoClient.createObjectMapper()))
+                .register(MultiPartFeature.class);
+        image = BenchmarkSupport.resource("test.jpg");
+        imageFile = BenchmarkSupport.imageFile();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        krakenIoClient.close();
+    }
+
+    @Benchmark
+    public int streamMultiPart() {
+        final DirectUploadRequest directUploadRequest = BenchmarkSupport.directUploadRequest(new ByteArrayInputStream(image)).build();
+        return post(krakenIoClient.streamMultiPartEntity(directUploadRequest, krakenIoClient.uploadImage(directUploadRequest.getImage(), directUploadRequest.isStreaming(), directUploadRequest.getContentLength())));
+    }
+
+    @Benchmark
+    public int fileMultiPart() {
+        final DirectFileUploadRequest directFileUploadRequest = DirectFileUploadRequest.builder(imageFile).withLossy(true).withResize(BenchmarkSupport.resize()).build();
+        return post(krakenIoClient.fileMultiPartEntity(directFileUploadRequest, directFileUploadRequest.getImage()));
+    }
+
+    private int post(Entity<?> entity) {
+        final Response response = client.target("http://localhost/v1/upload").request(MediaType.APPLICATION_JSON_TYPE).post(entity);
+        response.close();
+        return response.getStatus();
+    }
+
+    private static class DiscardingConnectorProvider implements ConnectorProvider {
+
+        @Override
+        public Connector getConnector(Client client, Configuration runtimeConfig) {
+            return new DiscardingConnector();
+        }
+    }
+
+    private static class DiscardingConnector implements Connector {
+
+        @Override
+        public ClientResponse apply(ClientRequest request) {
+            request.setStreamProvider(new OutboundMessageContext.StreamProvider() {
+                @Override
+                public OutputStream getOutputStream(int contentLength) {
+                    return ByteStreams.nullOutputStream();
+                }
+            });
+            try {
+                request.writeEntity();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+
+            final ClientResponse response = new ClientResponse(Response.Status.OK, request);
+            response.setEntityStream(new ByteArrayInputStream(new byte[0]));
+            return response;
+        }
+
+        @Override
+        public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+            final ClientResponse response = apply(request);
+            callback.response(response);
+            return CompletableFuture.completedFuture(response);
+        }
+
+        @Override
+        public String getName() {
+            return "discarding";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
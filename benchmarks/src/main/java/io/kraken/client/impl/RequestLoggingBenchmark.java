@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.sun.net.httpserver.HttpServer;
+import io.kraken.client.config.KrakenIoClientConfig;
+import io.kraken.client.logging.RequestLogging;
+import io.kraken.client.model.request.DirectUploadRequest;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Overhead of request logging on 4 MB uploads: without {@link RequestLogging}, sampling one in a hundred requests and
+ * logging every request. Records are formatted but discarded, the cost of writing them out depends on the handler.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestLoggingBenchmark {
+
+    private static final int IMAGE_SIZE = 4 * 1024 * 1024;
+
+    @Param({"off", "sampled", "all"})
+    public String logging;
+
+    private HttpServer httpServer;
+    private DefaultKrakenIoClient krakenIoClient;
+    private byte[] image;
+
+    @Setup
+    public void setUp() throws Exception {
+        httpServer = BenchmarkSupport.startStub(BenchmarkSupport.resource("krakenIoResponse200.json"));
+        final KrakenIoClientConfig.Builder krakenIoClientConfig = KrakenIoClientConfig.builder()
+                .withBaseUrl(BenchmarkSupport.baseUrl(httpServer))
+                .withReadTimeout(10000);
+        if (!"off".equals(logging)) {
+            krakenIoClientConfig.withRequestLogging(RequestLogging.builder()
+                    .withLogger(discardingLogger())
+                    .withSampleRate("sampled".equals(logging) ? 100 : 1)
+                    .build());
+        }
+        krakenIoClient = new DefaultKrakenIoClient(BenchmarkSupport.API_KEY, BenchmarkSupport.API_SECRET, krakenIoClientConfig.build());
+        image = new byte[IMAGE_SIZE];
+        new Random(0).nextBytes(image);
+    }
+
+    @TearDown
+    public void tearDown() {
+        krakenIoClient.close();
+        httpServer.stop(0);
+    }
+
+    @Benchmark
+    public SuccessfulUploadResponse directUpload() {
+        return krakenIoClient.directUpload(DirectUploadRequest.builder(new ByteArrayInputStream(image)).withContentLength(IMAGE_SIZE).build());
+    }
+
+    private static Logger discardingLogger() {
+        final Logger logger = Logger.getLogger(RequestLoggingBenchmark.class.getCanonicalName());
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.INFO);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return logger;
+    }
+}
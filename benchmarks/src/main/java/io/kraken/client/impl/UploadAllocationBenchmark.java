@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.sun.net.httpserver.HttpServer;
+import io.kraken.client.model.request.DirectFileUploadRequest;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap allocated per MB of image uploaded with a {@link DirectFileUploadRequest}. The 32 MB image goes to a local
+ * stub which discards the body, so the numbers reflect the client side only. Every invocation counts as 32
+ * operations, run with {@code -prof gc} to read the bytes per MB uploaded from {@code gc.alloc.rate.norm}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UploadAllocationBenchmark {
+
+    private static final int IMAGE_SIZE_IN_MB = 32;
+
+    private HttpServer httpServer;
+    private DefaultKrakenIoClient krakenIoClient;
+    private DirectFileUploadRequest directFileUploadRequest;
+
+    @Setup
+    public void setUp() throws Exception {
+        httpServer = BenchmarkSupport.startStub(BenchmarkSupport.resource("krakenIoResponse200.json"));
+        krakenIoClient = new DefaultKrakenIoClient(BenchmarkSupport.API_KEY, BenchmarkSupport.API_SECRET, BenchmarkSupport.baseUrl(httpServer), 60000);
+
+        final File image = File.createTempFile("kraken-io-benchmark", ".png");
+        image.deleteOnExit();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(image, "rw")) {
+            randomAccessFile.setLength(IMAGE_SIZE_IN_MB * 1024L * 1024L);
+        }
+        directFileUploadRequest = DirectFileUploadRequest.builder(image).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        krakenIoClient.close();
+        httpServer.stop(0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IMAGE_SIZE_IN_MB)
+    public SuccessfulUploadResponse directFileUpload() {
+        return krakenIoClient.directUpload(directFileUploadRequest);
+    }
+}
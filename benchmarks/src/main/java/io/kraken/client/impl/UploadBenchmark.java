@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.sun.net.httpserver.HttpServer;
+import io.kraken.client.model.request.DirectFileUploadRequest;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end uploads with {@link DefaultKrakenIoClient} against an in-process HTTP stub, covering request
+ * serialization, the pooled connection, the multipart body and response handling.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UploadBenchmark {
+
+    private HttpServer httpServer;
+    private DefaultKrakenIoClient krakenIoClient;
+    private byte[] image;
+    private File imageFile;
+    private URL imageUrl;
+
+    @Setup
+    public void setUp() throws Exception {
+        httpServer = BenchmarkSupport.startStub(BenchmarkSupport.resource("krakenIoResponse200.json"));
+        krakenIoClient = new DefaultKrakenIoClient(BenchmarkSupport.API_KEY, BenchmarkSupport.API_SECRET, BenchmarkSupport.baseUrl(httpServer), 10000);
+        image = BenchmarkSupport.resource("test.jpg");
+        imageFile = BenchmarkSupport.imageFile();
+        imageUrl = new URL("http://somehost/image.jpg");
+    }
+
+    @TearDown
+    public void tearDown() {
+        krakenIoClient.close();
+        httpServer.stop(0);
+    }
+
+    @Benchmark
+    public SuccessfulUploadResponse directUpload() {
+        return krakenIoClient.directUpload(BenchmarkSupport.directUploadRequest(new ByteArrayInputStream(image)).build());
+    }
+
+    @Benchmark
+    public SuccessfulUploadResponse directFileUpload() {
+        return krakenIoClient.directUpload(DirectFileUploadRequest.builder(imageFile).withLossy(true).withResize(BenchmarkSupport.resize()).build());
+    }
+
+    @Benchmark
+    public SuccessfulUploadResponse imageUrlUpload() {
+        return krakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(imageUrl).withLossy(true).build());
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.sun.net.httpserver.HttpServer;
+import io.kraken.client.batch.BatchSummary;
+import io.kraken.client.batch.KrakenIoBatch;
+import io.kraken.client.batch.UploadExecutors;
+import io.kraken.client.config.KrakenIoClientConfig;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of blocking uploads with {@link KrakenIoBatch} on a fixed pool of platform threads versus a virtual
+ * thread per upload, against an in-process HTTP stub answering after a delay. Virtual threads require the Java 21 layer
+ * of the client, run on JDK 21 or later to compare them.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VirtualThreadBenchmark {
+
+    private static final int UPLOADS = 2000;
+    private static final long STUB_DELAY_MILLIS = 20;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"100", "1000"})
+    public int concurrency;
+
+    private HttpServer httpServer;
+    private DefaultKrakenIoClient krakenIoClient;
+    private KrakenIoBatch krakenIoBatch;
+    private List<ImageUrlUploadRequest> requests;
+
+    @Setup
+    public void setUp() throws Exception {
+        if ("virtual".equals(threads) && !UploadExecutors.isVirtualThreadsSupported()) {
+            throw new IllegalStateException("Virtual threads require JDK 21 or later");
+        }
+
+        httpServer = BenchmarkSupport.startStub(BenchmarkSupport.resource("krakenIoResponse200.json"), STUB_DELAY_MILLIS);
+        krakenIoClient = new DefaultKrakenIoClient(BenchmarkSupport.API_KEY, BenchmarkSupport.API_SECRET, KrakenIoClientConfig.builder()
+                .withBaseUrl(BenchmarkSupport.baseUrl(httpServer))
+                .withMaxTotalConnections(concurrency)
+                .withMaxConnectionsPerRoute(concurrency)
+                .build());
+        krakenIoBatch = KrakenIoBatch.builder(krakenIoClient)
+                .withConcurrency(concurrency)
+                .withVirtualThreads("virtual".equals(threads))
+                .build();
+        requests = Collections.nCopies(UPLOADS, ImageUrlUploadRequest.builder(new URL("http://somehost/image.jpg")).withLossy(true).build());
+    }
+
+    @TearDown
+    public void tearDown() {
+        krakenIoClient.close();
+        httpServer.stop(0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPLOADS)
+    public BatchSummary upload() {
+        final BatchSummary batchSummary = krakenIoBatch.submitAll(requests);
+        if (batchSummary.getFailed() > 0) {
+            throw new IllegalStateException(batchSummary.getFailed() + " uploads failed");
+        }
+        return batchSummary;
+    }
+}
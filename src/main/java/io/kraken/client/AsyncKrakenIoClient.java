@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client;
+
+import io.kraken.client.model.request.*;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterpart of {@link KrakenIoClient}, the calling thread does not wait for the request. The returned
+ * futures complete exceptionally with a
+ * {@link io.kraken.client.exception.KrakenIoRequestException} if Kraken.io rejected the request and with a
+ * {@link io.kraken.client.exception.KrakenIoException} for any other failure.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public interface AsyncKrakenIoClient {
+    CompletableFuture<SuccessfulUploadResponse> directUpload(DirectUploadRequest directUploadRequest);
+    CompletableFuture<SuccessfulUploadResponse> directUpload(DirectFileUploadRequest directFileUploadRequest);
+    CompletableFuture<SuccessfulUploadResponse> imageUrlUpload(ImageUrlUploadRequest imageUrlUploadRequest);
+
+    CompletableFuture<SuccessfulUploadCallbackUrlResponse> directUpload(DirectUploadCallbackUrlRequest directUploadCallbackUrlRequest);
+    CompletableFuture<SuccessfulUploadCallbackUrlResponse> directUpload(DirectFileUploadCallbackUrlRequest directFileUploadCallbackUrlRequest);
+    CompletableFuture<SuccessfulUploadCallbackUrlResponse> imageUrlUpload(ImageUrlUploadCallbackUrlRequest imageUrlUploadCallbackUrlRequest);
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+import io.kraken.client.model.request.AbstractUploadRequest;
+import io.kraken.client.model.response.FailedUploadResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+/**
+ * Outcome of a single upload of a batch. Exactly one of {@link #getSuccessfulUploadResponse()} or
+ * {@link #getException()} is set, {@link #getFailedUploadResponse()} is additionally set if Kraken.io rejected
+ * the request.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class BatchItemResult {
+
+    private final AbstractUploadRequest request;
+    private final SuccessfulUploadResponse successfulUploadResponse;
+    private final FailedUploadResponse failedUploadResponse;
+    private final RuntimeException exception;
+
+    BatchItemResult(AbstractUploadRequest request,
+                    SuccessfulUploadResponse successfulUploadResponse,
+                    FailedUploadResponse failedUploadResponse,
+                    RuntimeException exception) {
+        this.request = request;
+        this.successfulUploadResponse = successfulUploadResponse;
+        this.failedUploadResponse = failedUploadResponse;
+        this.exception = exception;
+    }
+
+    public AbstractUploadRequest getRequest() {
+        return request;
+    }
+
+    public boolean isSuccessful() {
+        return successfulUploadResponse != null;
+    }
+
+    public SuccessfulUploadResponse getSuccessfulUploadResponse() {
+        return successfulUploadResponse;
+    }
+
+    public FailedUploadResponse getFailedUploadResponse() {
+        return failedUploadResponse;
+    }
+
+    public RuntimeException getException() {
+        return exception;
+    }
+}
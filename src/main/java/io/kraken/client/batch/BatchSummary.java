@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+/**
+ * Aggregated figures of a completed batch.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class BatchSummary {
+
+    private final long succeeded;
+    private final long failed;
+    private final long originalBytes;
+    private final long krakedBytes;
+    private final long savedBytes;
+    private final long elapsedMillis;
+
+    BatchSummary(long succeeded, long failed, long originalBytes, long krakedBytes, long savedBytes, long elapsedMillis) {
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.originalBytes = originalBytes;
+        this.krakedBytes = krakedBytes;
+        this.savedBytes = savedBytes;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getTotal() {
+        return succeeded + failed;
+    }
+
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getOriginalBytes() {
+        return originalBytes;
+    }
+
+    public long getKrakedBytes() {
+        return krakedBytes;
+    }
+
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getUploadsPerSecond() {
+        return elapsedMillis == 0 ? 0 : getTotal() * 1000d / elapsedMillis;
+    }
+
+    public double getOriginalBytesPerSecond() {
+        return elapsedMillis == 0 ? 0 : originalBytes * 1000d / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchSummary{" +
+                "succeeded=" + succeeded +
+                ", failed=" + failed +
+                ", originalBytes=" + originalBytes +
+                ", krakedBytes=" + krakedBytes +
+                ", savedBytes=" + savedBytes +
+                ", elapsedMillis=" + elapsedMillis +
+                ", uploadsPerSecond=" + getUploadsPerSecond() +
+                '}';
+    }
+}
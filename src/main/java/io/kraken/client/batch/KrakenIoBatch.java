@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.kraken.client.KrakenIoClient;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.model.request.AbstractUploadRequest;
+import io.kraken.client.model.request.DirectFileUploadRequest;
+import io.kraken.client.model.request.DirectUploadRequest;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Uploads large numbers of images with a bounded number of uploads in flight. Requests are pulled from the source
+ * only when a slot becomes free and results are handed to a {@link BatchListener} as they complete, so neither the
+ * requests nor the results of a batch have to fit into memory at once.
+ * <p>
+ * Supported are the requests waiting for the optimization result: {@link DirectUploadRequest},
+ * {@link DirectFileUploadRequest} and {@link ImageUrlUploadRequest}. Any other request fails with an
+ * {@link IllegalArgumentException} reported through the listener.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoBatch {
+
+    private static final BatchListener NOOP_LISTENER = new BatchListener() {
+        @Override
+        public void onResult(BatchItemResult batchItemResult) {
+        }
+    };
+
+    private final KrakenIoClient krakenIoClient;
+    private final int concurrency;
+    private final ExecutorService executorService;
+    private final boolean virtualThreads;
+
+    private KrakenIoBatch(KrakenIoClient krakenIoClient, int concurrency, ExecutorService executorService, boolean virtualThreads) {
+        checkNotNull(krakenIoClient, "krakenIoClient must not be null");
+        checkArgument(concurrency > 0, "concurrency must be greater than 0");
+
+        this.krakenIoClient = krakenIoClient;
+        this.concurrency = concurrency;
+        this.executorService = executorService;
+        this.virtualThreads = virtualThreads;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public BatchSummary submitAll(Iterable<? extends AbstractUploadRequest> requests) {
+        return submitAll(requests, NOOP_LISTENER);
+    }
+
+    /**
+     * Uploads all requests and blocks until the last upload completed. If the source fails or an upload cannot be
+     * submitted, the uploads already running are awaited before the exception propagates, so the listener is never
+     * called after this method returned.
+     */
+    public BatchSummary submitAll(Iterable<? extends AbstractUploadRequest> requests, final BatchListener batchListener) {
+        checkNotNull(requests, "requests must not be null");
+        checkNotNull(batchListener, "batchListener must not be null");
+
+        final ExecutorService executor = executorService != null ? executorService : createExecutorService();
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final Tally tally = new Tally();
+        final long start = System.nanoTime();
+
+        boolean drained = false;
+        try {
+            for (final AbstractUploadRequest request : requests) {
+                inFlight.acquire();
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                final BatchItemResult batchItemResult = upload(request);
+                                tally.record(batchItemResult);
+                                batchListener.onResult(batchItemResult);
+                            } finally {
+                                inFlight.release();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+
+            inFlight.acquire(concurrency);
+            drained = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrakenIoException("Interrupted while waiting for the batch to complete", e);
+        } finally {
+            if (!drained) {
+                inFlight.acquireUninterruptibly(concurrency);
+            }
+            if (executorService == null) {
+                executor.shutdown();
+            }
+        }
+
+        return tally.toSummary(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private BatchItemResult upload(AbstractUploadRequest request) {
+        try {
+            return new BatchItemResult(request, dispatch(request), null, null);
+        } catch (KrakenIoRequestException e) {
+            return new BatchItemResult(request, null, e.getFailedUploadResponse(), e);
+        } catch (RuntimeException e) {
+            return new BatchItemResult(request, null, null, e);
+        }
+    }
+
+    private SuccessfulUploadResponse dispatch(AbstractUploadRequest request) {
+        if (request instanceof DirectFileUploadRequest) {
+            return krakenIoClient.directUpload((DirectFileUploadRequest) request);
+        } else if (request instanceof DirectUploadRequest) {
+            return krakenIoClient.directUpload((DirectUploadRequest) request);
+        } else if (request instanceof ImageUrlUploadRequest) {
+            return krakenIoClient.imageUrlUpload((ImageUrlUploadRequest) request);
+        } else {
+            throw new IllegalArgumentException("Unsupported request type " + (request == null ? null : request.getClass().getName()));
+        }
+    }
+
+    private ExecutorService createExecutorService() {
+        if (virtualThreads) {
+            return UploadExecutors.newPerUploadExecutor();
+        }
+        return Executors.newFixedThreadPool(concurrency, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kraken-io-batch-%d").build());
+    }
+
+    public static Builder builder(KrakenIoClient krakenIoClient) {
+        return new Builder(krakenIoClient);
+    }
+
+    public static class Builder {
+        private final KrakenIoClient krakenIoClient;
+        private int concurrency = 8;
+        private ExecutorService executorService;
+        private boolean virtualThreads;
+
+        private Builder(KrakenIoClient krakenIoClient) {
+            this.krakenIoClient = krakenIoClient;
+        }
+
+        public Builder withConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Runs the uploads on the given executor instead of a fixed thread pool owned by each batch run. The executor
+         * is not shut down by the batch and must be able to run {@code concurrency} tasks in parallel.
+         */
+        public Builder withExecutorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * Runs every upload on its own thread of {@link UploadExecutors#newPerUploadExecutor()}, a virtual thread on
+         * Java 21 and later, instead of a fixed pool of {@code concurrency} platform threads. With virtual threads the
+         * concurrency can be raised into the thousands, bounded by the connection pool of the client. Ignored if an
+         * executor is given.
+         */
+        public Builder withVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        public KrakenIoBatch build() {
+            return new KrakenIoBatch(krakenIoClient, concurrency, executorService, virtualThreads);
+        }
+    }
+
+    private static class Tally {
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder originalBytes = new LongAdder();
+        private final LongAdder krakedBytes = new LongAdder();
+        private final LongAdder savedBytes = new LongAdder();
+
+        void record(BatchItemResult batchItemResult) {
+            if (!batchItemResult.isSuccessful()) {
+                failed.increment();
+                return;
+            }
+
+            final SuccessfulUploadResponse successfulUploadResponse = batchItemResult.getSuccessfulUploadResponse();
+            succeeded.increment();
+            add(originalBytes, successfulUploadResponse.getOriginalSizeLong());
+            add(krakedBytes, successfulUploadResponse.getKrakedSizeLong());
+            add(savedBytes, successfulUploadResponse.getSavedBytesLong());
+        }
+
+        private void add(LongAdder longAdder, Number value) {
+            if (value != null) {
+                longAdder.add(value.longValue());
+            }
+        }
+
+        BatchSummary toSummary(long elapsedMillis) {
+            return new BatchSummary(succeeded.sum(), failed.sum(), originalBytes.sum(), krakedBytes.sum(), savedBytes.sum(), elapsedMillis);
+        }
+    }
+}
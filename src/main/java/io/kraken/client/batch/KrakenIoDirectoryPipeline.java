@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+import com.google.common.collect.ImmutableSet;
+import io.kraken.client.KrakenIoClient;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.impl.DefaultKrakenIoClient;
+import io.kraken.client.model.Convert;
+import io.kraken.client.model.request.*;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Optimizes all images under a directory and writes each result next to its original, {@code photo.jpg} becomes
+ * {@code photo.kraked.jpg} with the default suffix. The tree is walked lazily while uploads complete, at most
+ * {@code concurrency} files are uploaded and downloaded at a time, so memory stays bounded regardless of the size of
+ * the tree.
+ * <p>
+ * The results double as checkpoint: an original whose result exists and is not older than the original is skipped,
+ * a rerun after an interruption or failures only uploads what is missing. Results are written atomically, an
+ * interrupted download never leaves a partial result behind. A file whose attributes cannot be read is reported to the
+ * listener as failed item and counted as failed, the run continues with the next file.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoDirectoryPipeline {
+
+    private final DefaultKrakenIoClient krakenIoClient;
+    private final int concurrency;
+    private final Set<String> extensions;
+    private final long minSize;
+    private final long maxSize;
+    private final AbstractUploadRequest template;
+    private final String suffix;
+    private final BatchListener batchListener;
+
+    private KrakenIoDirectoryPipeline(DefaultKrakenIoClient krakenIoClient,
+                                      int concurrency,
+                                      Set<String> extensions,
+                                      long minSize,
+                                      long maxSize,
+                                      AbstractUploadRequest template,
+                                      String suffix,
+                                      BatchListener batchListener) {
+        checkNotNull(krakenIoClient, "krakenIoClient must not be null");
+        checkArgument(!extensions.isEmpty(), "extensions must not be empty");
+        checkArgument(minSize >= 0 && minSize <= maxSize, "minSize must be between 0 and maxSize");
+        checkNotNull(suffix, "suffix must not be null");
+        checkArgument(!suffix.isEmpty(), "suffix must not be empty");
+        checkNotNull(batchListener, "batchListener must not be null");
+
+        this.krakenIoClient = krakenIoClient;
+        this.concurrency = concurrency;
+        this.extensions = ImmutableSet.copyOf(extensions);
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.template = template;
+        this.suffix = suffix;
+        this.batchListener = batchListener;
+    }
+
+    /**
+     * Optimizes the tree under the given directory and blocks until the last file is written.
+     */
+    public PipelineSummary run(Path directory) {
+        checkNotNull(directory, "directory must not be null");
+        checkArgument(Files.isDirectory(directory), "%s is not a directory", directory);
+
+        final KrakenIoBatch krakenIoBatch = KrakenIoBatch.builder(new DownloadingClient()).withConcurrency(concurrency).build();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder failed = new LongAdder();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            final Iterator<AbstractUploadRequest> requests = files
+                    .filter(this::hasCandidateName)
+                    .filter(original -> {
+                        try {
+                            if (!isCandidate(original)) {
+                                return false;
+                            }
+                            if (isDone(original)) {
+                                skipped.increment();
+                                return false;
+                            }
+                            return true;
+                        } catch (IOException e) {
+                            failed.increment();
+                            final KrakenIoException exception = new KrakenIoException("Failed to read " + original, e);
+                            batchListener.onResult(new BatchItemResult(request(original), null, null, exception));
+                            return false;
+                        }
+                    })
+                    .<AbstractUploadRequest>map(this::request)
+                    .iterator();
+
+            final BatchSummary batchSummary = krakenIoBatch.submitAll(() -> requests, batchListener);
+            return new PipelineSummary(new BatchSummary(
+                    batchSummary.getSucceeded(),
+                    batchSummary.getFailed() + failed.sum(),
+                    batchSummary.getOriginalBytes(),
+                    batchSummary.getKrakedBytes(),
+                    batchSummary.getSavedBytes(),
+                    batchSummary.getElapsedMillis()
+            ), skipped.sum());
+        } catch (IOException | UncheckedIOException e) {
+            throw new KrakenIoException("Failed to walk " + directory, e);
+        }
+    }
+
+    /**
+     * Where the result of the given original is written. With a template changing the format of the images the
+     * extension of the result is the one of the new format and the original keeps its extension in the name, so
+     * originals differing only in their extension do not share a result: {@code photo.png} becomes
+     * {@code photo.png.kraked.webp} with a WebP template.
+     */
+    public Path target(Path original) {
+        final String fileName = original.getFileName().toString();
+        final String outputExtension = outputExtension();
+        if (outputExtension != null) {
+            return original.resolveSibling(fileName + suffix + "." + outputExtension);
+        }
+
+        final int dot = fileName.lastIndexOf('.');
+        return original.resolveSibling(fileName.substring(0, dot) + suffix + fileName.substring(dot));
+    }
+
+    /**
+     * @return extension of the format the template converts to, {@code null} if the format is kept
+     */
+    private String outputExtension() {
+        if (template == null) {
+            return null;
+        }
+        if (Boolean.TRUE.equals(template.getWebp())) {
+            return "webp";
+        }
+        final Convert convert = template.getConvert();
+        if (convert != null && convert.getFormat() != null && !Boolean.TRUE.equals(convert.getKeepExtension())) {
+            return convert.getFormat().getValue();
+        }
+        return null;
+    }
+
+    private boolean hasCandidateName(Path file) {
+        final String fileName = file.getFileName().toString();
+        final int dot = fileName.lastIndexOf('.');
+        if (dot <= 0 || !extensions.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+            return false;
+        }
+        // Results of earlier runs, or of this one when the walk reaches them
+        return !fileName.substring(0, dot).endsWith(suffix);
+    }
+
+    private boolean isCandidate(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        final long size = Files.size(file);
+        return size >= minSize && size <= maxSize;
+    }
+
+    private boolean isDone(Path original) throws IOException {
+        final Path target = target(original);
+        return Files.isRegularFile(target) && Files.getLastModifiedTime(target).compareTo(Files.getLastModifiedTime(original)) >= 0;
+    }
+
+    private DirectFileUploadRequest request(Path original) {
+        final DirectFileUploadRequest.Builder builder = DirectFileUploadRequest.builder(original.toFile());
+        if (template != null) {
+            builder.withOptionsFrom(template);
+        }
+        return builder.build();
+    }
+
+    public static Builder builder(DefaultKrakenIoClient krakenIoClient) {
+        return new Builder(krakenIoClient);
+    }
+
+    public static class Builder {
+        private final DefaultKrakenIoClient krakenIoClient;
+        private int concurrency = 8;
+        private Set<String> extensions = new HashSet<>(ImmutableSet.of("jpg", "jpeg", "png", "gif", "svg"));
+        private long minSize;
+        private long maxSize = Long.MAX_VALUE;
+        private AbstractUploadRequest template;
+        private String suffix = ".kraked";
+        private BatchListener batchListener = new BatchListener() {
+            @Override
+            public void onResult(BatchItemResult batchItemResult) {
+            }
+        };
+
+        private Builder(DefaultKrakenIoClient krakenIoClient) {
+            this.krakenIoClient = krakenIoClient;
+        }
+
+        public Builder withConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * File extensions to optimize, case insensitive, defaults to jpg, jpeg, png, gif and svg.
+         */
+        public Builder withExtensions(String... extensions) {
+            this.extensions = new HashSet<>();
+            for (String extension : extensions) {
+                this.extensions.add(extension.toLowerCase(Locale.ROOT));
+            }
+            return this;
+        }
+
+        /**
+         * Only files with a size between the given bounds (inclusive, in bytes) are optimized.
+         */
+        public Builder withSize(long minSize, long maxSize) {
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Request whose options (everything but the image) are applied to every file, lossless by default.
+         */
+        public Builder withTemplate(AbstractUploadRequest template) {
+            this.template = template;
+            return this;
+        }
+
+        /**
+         * Inserted before the extension of an original to name its result.
+         */
+        public Builder withSuffix(String suffix) {
+            this.suffix = suffix;
+            return this;
+        }
+
+        /**
+         * Receives the outcome of every file once its result is written, or its upload or download failed.
+         */
+        public Builder withBatchListener(BatchListener batchListener) {
+            this.batchListener = batchListener;
+            return this;
+        }
+
+        public KrakenIoDirectoryPipeline build() {
+            return new KrakenIoDirectoryPipeline(krakenIoClient, concurrency, extensions, minSize, maxSize, template, suffix, batchListener);
+        }
+    }
+
+    /**
+     * Downloads the result of every file upload to its target, so a failed download fails the item of the batch.
+     */
+    private class DownloadingClient implements KrakenIoClient {
+
+        @Override
+        public SuccessfulUploadResponse directUpload(DirectFileUploadRequest directFileUploadRequest) {
+            final SuccessfulUploadResponse successfulUploadResponse = krakenIoClient.directUpload(directFileUploadRequest);
+            krakenIoClient.downloadTo(successfulUploadResponse, target(directFileUploadRequest.getImage().toPath()));
+            return successfulUploadResponse;
+        }
+
+        @Override
+        public SuccessfulUploadResponse directUpload(DirectUploadRequest directUploadRequest) {
+            return krakenIoClient.directUpload(directUploadRequest);
+        }
+
+        @Override
+        public SuccessfulUploadResponse imageUrlUpload(ImageUrlUploadRequest imageUrlUploadRequest) {
+            return krakenIoClient.imageUrlUpload(imageUrlUploadRequest);
+        }
+
+        @Override
+        public SuccessfulUploadCallbackUrlResponse directUpload(DirectUploadCallbackUrlRequest directUploadCallbackUrlRequest) {
+            return krakenIoClient.directUpload(directUploadCallbackUrlRequest);
+        }
+
+        @Override
+        public SuccessfulUploadCallbackUrlResponse directUpload(DirectFileUploadCallbackUrlRequest directFileUploadCallbackUrlRequest) {
+            return krakenIoClient.directUpload(directFileUploadCallbackUrlRequest);
+        }
+
+        @Override
+        public SuccessfulUploadCallbackUrlResponse imageUrlUpload(ImageUrlUploadCallbackUrlRequest imageUrlUploadCallbackUrlRequest) {
+            return krakenIoClient.imageUrlUpload(imageUrlUploadCallbackUrlRequest);
+        }
+    }
+}
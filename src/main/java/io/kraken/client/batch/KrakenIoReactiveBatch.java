@@ -0,0 +1,300 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+import io.kraken.client.AsyncKrakenIoClient;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.model.request.AbstractUploadRequest;
+import io.kraken.client.model.request.DirectFileUploadRequest;
+import io.kraken.client.model.request.DirectUploadRequest;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reactive Streams counterpart of {@link KrakenIoBatch}, uploading the requests of a {@link Publisher} with an
+ * {@link AsyncKrakenIoClient} and publishing a {@link BatchItemResult} per request as the uploads complete. Requests
+ * are pulled from the source only as far as the subscriber asked for results, so the uploads in flight are bounded by
+ * the downstream demand and by {@code concurrency}, not by a number of threads: no thread waits for an upload, see
+ * {@link io.kraken.client.impl.DefaultAsyncKrakenIoClient} for the threads sending them.
+ * <p>
+ * Failed uploads are published as results, the results terminate with an error only if the source does, after the
+ * uploads in flight completed. Cancelling the results cancels the source, uploads in flight are not aborted but their
+ * results are dropped. Supported are the requests {@link KrakenIoBatch} supports. For a
+ * {@code java.util.concurrent.Flow} source or subscriber use {@code org.reactivestreams.FlowAdapters}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoReactiveBatch {
+
+    private final AsyncKrakenIoClient asyncKrakenIoClient;
+    private final int concurrency;
+
+    private KrakenIoReactiveBatch(AsyncKrakenIoClient asyncKrakenIoClient, int concurrency) {
+        checkNotNull(asyncKrakenIoClient, "asyncKrakenIoClient must not be null");
+        checkArgument(concurrency > 0, "concurrency must be greater than 0");
+
+        this.asyncKrakenIoClient = asyncKrakenIoClient;
+        this.concurrency = concurrency;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return a cold publisher subscribing to the requests once per subscriber
+     */
+    public Publisher<BatchItemResult> submitAll(final Publisher<? extends AbstractUploadRequest> requests) {
+        checkNotNull(requests, "requests must not be null");
+
+        return new Publisher<BatchItemResult>() {
+            @Override
+            public void subscribe(Subscriber<? super BatchItemResult> subscriber) {
+                checkNotNull(subscriber, "subscriber must not be null");
+                requests.subscribe(new UploadSubscriber(subscriber));
+            }
+        };
+    }
+
+    private CompletableFuture<SuccessfulUploadResponse> dispatch(AbstractUploadRequest request) {
+        if (request instanceof DirectFileUploadRequest) {
+            return asyncKrakenIoClient.directUpload((DirectFileUploadRequest) request);
+        } else if (request instanceof DirectUploadRequest) {
+            return asyncKrakenIoClient.directUpload((DirectUploadRequest) request);
+        } else if (request instanceof ImageUrlUploadRequest) {
+            return asyncKrakenIoClient.imageUrlUpload((ImageUrlUploadRequest) request);
+        } else {
+            throw new IllegalArgumentException("Unsupported request type " + (request == null ? null : request.getClass().getName()));
+        }
+    }
+
+    private static BatchItemResult failure(AbstractUploadRequest request, Throwable throwable) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        if (cause instanceof KrakenIoRequestException) {
+            return new BatchItemResult(request, null, ((KrakenIoRequestException) cause).getFailedUploadResponse(), (KrakenIoRequestException) cause);
+        } else if (cause instanceof RuntimeException) {
+            return new BatchItemResult(request, null, null, (RuntimeException) cause);
+        } else {
+            return new BatchItemResult(request, null, null, new KrakenIoException("Failed to upload image", cause));
+        }
+    }
+
+    public static Builder builder(AsyncKrakenIoClient asyncKrakenIoClient) {
+        return new Builder(asyncKrakenIoClient);
+    }
+
+    public static class Builder {
+        private final AsyncKrakenIoClient asyncKrakenIoClient;
+        private int concurrency = 8;
+
+        private Builder(AsyncKrakenIoClient asyncKrakenIoClient) {
+            this.asyncKrakenIoClient = asyncKrakenIoClient;
+        }
+
+        /**
+         * Maximum number of uploads in flight, 8 by default. Below it the uploads in flight are bounded by the
+         * results the subscriber requested but did not receive yet.
+         */
+        public Builder withConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        public KrakenIoReactiveBatch build() {
+            return new KrakenIoReactiveBatch(asyncKrakenIoClient, concurrency);
+        }
+    }
+
+    /**
+     * Subscribes to the requests on behalf of one subscriber of the results. Signals to the subscriber and requests to
+     * the source are issued by whichever thread wins the drain loop, every request drawn from the source is covered by
+     * demand of the subscriber so at most the uploads in flight have to be buffered.
+     */
+    private final class UploadSubscriber implements Subscriber<AbstractUploadRequest>, Subscription {
+        private final Subscriber<? super BatchItemResult> downstream;
+        private final Queue<BatchItemResult> results = new ConcurrentLinkedQueue<BatchItemResult>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+
+        private Subscription upstream;
+        private volatile boolean upstreamDone;
+        private volatile Throwable upstreamError;
+        private volatile Throwable invalidRequest;
+        private volatile boolean cancelled;
+
+        // Only accessed by the drain loop
+        private long emitted;
+        private long upstreamRequested;
+        private boolean terminated;
+
+        private UploadSubscriber(Subscriber<? super BatchItemResult> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            checkNotNull(subscription, "subscription must not be null");
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(final AbstractUploadRequest request) {
+            checkNotNull(request, "request must not be null");
+            received.incrementAndGet();
+
+            final CompletableFuture<SuccessfulUploadResponse> upload;
+            try {
+                upload = dispatch(request);
+            } catch (RuntimeException e) {
+                complete(failure(request, e));
+                return;
+            }
+            upload.whenComplete(new BiConsumer<SuccessfulUploadResponse, Throwable>() {
+                @Override
+                public void accept(SuccessfulUploadResponse successfulUploadResponse, Throwable throwable) {
+                    complete(throwable == null ? new BatchItemResult(request, successfulUploadResponse, null, null) : failure(request, throwable));
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            checkNotNull(throwable, "throwable must not be null");
+            upstreamError = throwable;
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Number of requested results must be positive (rule 3.9), was " + n);
+                drain();
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void complete(BatchItemResult batchItemResult) {
+            // Queued before counted, a completed count covering all received requests implies all results are queued
+            results.offer(batchItemResult);
+            completed.incrementAndGet();
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                if (!terminated) {
+                    drainOnce();
+                }
+                if (terminated) {
+                    results.clear();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainOnce() {
+            if (cancelled || invalidRequest != null) {
+                terminated = true;
+                upstream.cancel();
+                if (!cancelled) {
+                    downstream.onError(invalidRequest);
+                }
+                return;
+            }
+
+            final long demand = requested.get();
+            while (emitted != demand) {
+                final BatchItemResult batchItemResult = results.poll();
+                if (batchItemResult == null) {
+                    break;
+                }
+                downstream.onNext(batchItemResult);
+                emitted++;
+                if (cancelled) {
+                    return;
+                }
+            }
+
+            if (upstreamDone) {
+                if (completed.get() == received.get() && results.isEmpty()) {
+                    terminated = true;
+                    if (upstreamError != null) {
+                        downstream.onError(upstreamError);
+                    } else {
+                        downstream.onComplete();
+                    }
+                }
+                return;
+            }
+
+            final long byDemand = demand - upstreamRequested;
+            final long byConcurrency = concurrency - (upstreamRequested - completed.get());
+            final long more = Math.min(byDemand, byConcurrency);
+            if (more > 0) {
+                upstreamRequested += more;
+                upstream.request(more);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+/**
+ * Aggregated figures of a completed {@link KrakenIoDirectoryPipeline} run.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class PipelineSummary {
+
+    private final BatchSummary batchSummary;
+    private final long skipped;
+
+    PipelineSummary(BatchSummary batchSummary, long skipped) {
+        this.batchSummary = batchSummary;
+        this.skipped = skipped;
+    }
+
+    /**
+     * Figures of the files uploaded in this run.
+     */
+    public BatchSummary getBatchSummary() {
+        return batchSummary;
+    }
+
+    /**
+     * Number of files skipped because their result was already written.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public String toString() {
+        return "PipelineSummary{" +
+                "batchSummary=" + batchSummary +
+                ", skipped=" + skipped +
+                '}';
+    }
+}
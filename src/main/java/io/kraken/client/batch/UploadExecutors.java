@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors running blocking {@link io.kraken.client.KrakenIoClient} calls. The client artifact is a multi-release
+ * jar: on Java 21 and later this class is replaced by a variant starting a virtual thread per upload, so thousands of
+ * uploads can wait for their responses without holding a platform thread each. On older runtimes uploads run on daemon
+ * platform threads.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public final class UploadExecutors {
+
+    private UploadExecutors() {
+    }
+
+    /**
+     * @return {@code true} if {@link #newPerUploadExecutor()} runs uploads on virtual threads
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return false;
+    }
+
+    /**
+     * Creates an executor starting a new thread per upload, virtual where supported. The number of concurrent uploads
+     * is not bounded by the executor, callers bound it e.g. through {@link KrakenIoBatch.Builder#withConcurrency(int)}.
+     */
+    public static ExecutorService newPerUploadExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kraken-io-upload-%d").build());
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.cache;
+
+import com.google.common.io.BaseEncoding;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * SHA-256 digest over the image content and the canonical form of the optimization options of an upload.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public final class CacheKey {
+
+    public static final int LENGTH = 32;
+
+    private final byte[] digest;
+
+    public CacheKey(byte[] digest) {
+        checkNotNull(digest, "digest must not be null");
+        checkArgument(digest.length == LENGTH, "digest must be %s bytes long", LENGTH);
+
+        this.digest = digest.clone();
+    }
+
+    public byte[] getBytes() {
+        return digest.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        return Arrays.equals(digest, ((CacheKey) o).digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(digest);
+    }
+
+    @Override
+    public String toString() {
+        return BaseEncoding.base16().lowerCase().encode(digest);
+    }
+}
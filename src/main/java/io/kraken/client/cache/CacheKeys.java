@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.cache;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.model.request.AbstractUploadRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Derives {@link CacheKey}s from uploads. The options part of the key is the JSON representation of the request with
+ * sorted properties and sorted metadata, so equal options always produce equal keys, across JVMs as well.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public final class CacheKeys {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+    private static final String PRESERVE_META = "preserve_meta";
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.WRITE_ENUMS_USING_TO_STRING, true)
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private CacheKeys() {
+    }
+
+    public static CacheKey forImage(byte[] image, AbstractUploadRequest abstractUploadRequest) {
+        return combine(HASH_FUNCTION.hashBytes(image), abstractUploadRequest);
+    }
+
+    public static CacheKey forImage(File image, AbstractUploadRequest abstractUploadRequest) {
+        try {
+            return combine(Files.hash(image, HASH_FUNCTION), abstractUploadRequest);
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to read image " + image, e);
+        }
+    }
+
+    private static CacheKey combine(HashCode imageHash, AbstractUploadRequest abstractUploadRequest) {
+        final HashCode hashCode = HASH_FUNCTION.newHasher()
+                .putBytes(imageHash.asBytes())
+                .putString(canonicalOptions(abstractUploadRequest), Charsets.UTF_8)
+                .hash();
+        return new CacheKey(hashCode.asBytes());
+    }
+
+    @SuppressWarnings("unchecked")
+    static String canonicalOptions(AbstractUploadRequest abstractUploadRequest) {
+        final Map<String, Object> options = OBJECT_MAPPER.convertValue(abstractUploadRequest, MAP_TYPE);
+        final Object preserveMeta = options.get(PRESERVE_META);
+        if (preserveMeta instanceof List) {
+            Collections.sort((List<String>) preserveMeta);
+        }
+
+        try {
+            return OBJECT_MAPPER.writeValueAsString(options);
+        } catch (JsonProcessingException e) {
+            throw new KrakenIoException("Failed to serialize request options", e);
+        }
+    }
+}
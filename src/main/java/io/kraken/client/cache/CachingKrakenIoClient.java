@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.cache;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.io.ByteStreams;
+import io.kraken.client.KrakenIoClient;
+import io.kraken.client.exception.KrakenIoDeadlineExceededException;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.model.request.*;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link KrakenIoClient} decorator that skips the upload of images which have already been optimized with the same
+ * options. Direct uploads are keyed by the SHA-256 of the image content plus the canonical options, see
+ * {@link CacheKeys}. Concurrent uploads of the same key are coalesced into a single API call whose result is shared,
+ * a request joining the call of another one waits at most for its own deadline.
+ * <p>
+ * Only successful results are cached. {@link DirectUploadRequest} images are read into memory to compute the key.
+ * Image url and callback url uploads are passed through unchanged.
+ * <p>
+ * An optional {@link ResultStore}, e.g. {@link DiskResultStore}, is consulted on a miss of the in-memory cache before
+ * uploading and receives every new result, so results outlive the process. The store is an optimization only, its
+ * failures are logged and treated like a miss, a result which has been paid for is always returned.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class CachingKrakenIoClient implements KrakenIoClient {
+
+    private static final Logger LOGGER = Logger.getLogger(CachingKrakenIoClient.class.getCanonicalName());
+
+    private final KrakenIoClient krakenIoClient;
+    private final Cache<CacheKey, SuccessfulUploadResponse> cache;
+    private final ResultStore resultStore;
+    private final ConcurrentMap<CacheKey, CompletableFuture<SuccessfulUploadResponse>> loads = new ConcurrentHashMap<>();
+
+    private CachingKrakenIoClient(KrakenIoClient krakenIoClient, long maximumSize, long expireAfterWrite, TimeUnit expireAfterWriteUnit, ResultStore resultStore) {
+        checkNotNull(krakenIoClient, "krakenIoClient must not be null");
+        checkArgument(maximumSize >= 0, "maximumSize must not be negative");
+        checkArgument(expireAfterWrite > 0, "expireAfterWrite must be greater than 0");
+        checkNotNull(expireAfterWriteUnit, "expireAfterWriteUnit must not be null");
+
+        this.krakenIoClient = krakenIoClient;
+        this.resultStore = resultStore;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite, expireAfterWriteUnit)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public SuccessfulUploadResponse directUpload(DirectUploadRequest directUploadRequest) {
+        final byte[] image = readImage(directUploadRequest.getImage());
+        final DirectUploadRequest bufferedDirectUploadRequest = DirectUploadRequest.builder(new ByteArrayInputStream(image))
+                .withOptionsFrom(directUploadRequest)
+                .build();
+
+        return get(CacheKeys.forImage(image, directUploadRequest), directUploadRequest, new Callable<SuccessfulUploadResponse>() {
+            @Override
+            public SuccessfulUploadResponse call() {
+                return krakenIoClient.directUpload(bufferedDirectUploadRequest);
+            }
+        });
+    }
+
+    @Override
+    public SuccessfulUploadResponse directUpload(final DirectFileUploadRequest directFileUploadRequest) {
+        return get(CacheKeys.forImage(directFileUploadRequest.getImage(), directFileUploadRequest), directFileUploadRequest, new Callable<SuccessfulUploadResponse>() {
+            @Override
+            public SuccessfulUploadResponse call() {
+                return krakenIoClient.directUpload(directFileUploadRequest);
+            }
+        });
+    }
+
+    @Override
+    public SuccessfulUploadResponse imageUrlUpload(ImageUrlUploadRequest imageUrlUploadRequest) {
+        return krakenIoClient.imageUrlUpload(imageUrlUploadRequest);
+    }
+
+    @Override
+    public SuccessfulUploadCallbackUrlResponse directUpload(DirectUploadCallbackUrlRequest directUploadCallbackUrlRequest) {
+        return krakenIoClient.directUpload(directUploadCallbackUrlRequest);
+    }
+
+    @Override
+    public SuccessfulUploadCallbackUrlResponse directUpload(DirectFileUploadCallbackUrlRequest directFileUploadCallbackUrlRequest) {
+        return krakenIoClient.directUpload(directFileUploadCallbackUrlRequest);
+    }
+
+    @Override
+    public SuccessfulUploadCallbackUrlResponse imageUrlUpload(ImageUrlUploadCallbackUrlRequest imageUrlUploadCallbackUrlRequest) {
+        return krakenIoClient.imageUrlUpload(imageUrlUploadCallbackUrlRequest);
+    }
+
+    public CacheStatistics getCacheStatistics() {
+        final CacheStats cacheStats = cache.stats();
+        return new CacheStatistics(cacheStats.hitCount(), cacheStats.missCount(), cacheStats.evictionCount(), cache.size());
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private SuccessfulUploadResponse get(CacheKey cacheKey, AbstractUploadRequest request, Callable<SuccessfulUploadResponse> upload) {
+        final long started = System.nanoTime();
+        final SuccessfulUploadResponse cachedSuccessfulUploadResponse = cache.getIfPresent(cacheKey);
+        if (cachedSuccessfulUploadResponse != null) {
+            return cachedSuccessfulUploadResponse;
+        }
+
+        final CompletableFuture<SuccessfulUploadResponse> load = new CompletableFuture<>();
+        final CompletableFuture<SuccessfulUploadResponse> runningLoad = loads.putIfAbsent(cacheKey, load);
+        if (runningLoad != null) {
+            return join(runningLoad, request, started);
+        }
+
+        try {
+            final SuccessfulUploadResponse successfulUploadResponse = load(cacheKey, upload);
+            cache.put(cacheKey, successfulUploadResponse);
+            load.complete(successfulUploadResponse);
+            return successfulUploadResponse;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(cacheKey, load);
+        }
+    }
+
+    private SuccessfulUploadResponse load(CacheKey cacheKey, Callable<SuccessfulUploadResponse> upload) {
+        // The previous load may have completed between the lookup and claiming the key
+        final SuccessfulUploadResponse cachedSuccessfulUploadResponse = cache.asMap().get(cacheKey);
+        if (cachedSuccessfulUploadResponse != null) {
+            return cachedSuccessfulUploadResponse;
+        }
+
+        if (resultStore != null) {
+            final SuccessfulUploadResponse storedSuccessfulUploadResponse = readStore(cacheKey);
+            if (storedSuccessfulUploadResponse != null) {
+                return storedSuccessfulUploadResponse;
+            }
+        }
+
+        final SuccessfulUploadResponse successfulUploadResponse;
+        try {
+            successfulUploadResponse = upload.call();
+        } catch (Exception e) {
+            Throwables.propagateIfPossible(e);
+            throw new KrakenIoException("Failed to upload image", e);
+        }
+        if (resultStore != null) {
+            writeStore(cacheKey, successfulUploadResponse);
+        }
+        return successfulUploadResponse;
+    }
+
+    /**
+     * Waits for the upload of another request with the same key, at most for the time left of the own deadline.
+     */
+    private SuccessfulUploadResponse join(CompletableFuture<SuccessfulUploadResponse> load, AbstractUploadRequest request, long started) {
+        try {
+            if (request.getDeadline() == null) {
+                return load.get();
+            }
+
+            final long remainingNanos = TimeUnit.MILLISECONDS.toNanos(request.getDeadline()) - (System.nanoTime() - started);
+            return load.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new KrakenIoDeadlineExceededException(Endpoint.UPLOAD, request.getDeadline(), e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw new KrakenIoException("Failed to upload image", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrakenIoException("Interrupted while waiting for the upload of the same image", e);
+        }
+    }
+
+    private SuccessfulUploadResponse readStore(CacheKey cacheKey) {
+        try {
+            return resultStore.get(cacheKey);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to read from result store, uploading", e);
+            return null;
+        }
+    }
+
+    private void writeStore(CacheKey cacheKey, SuccessfulUploadResponse successfulUploadResponse) {
+        try {
+            resultStore.put(cacheKey, successfulUploadResponse);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to write to result store, the result is cached in memory only", e);
+        }
+    }
+
+    private byte[] readImage(InputStream image) {
+        try {
+            return ByteStreams.toByteArray(image);
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to read image", e);
+        }
+    }
+
+    public static Builder builder(KrakenIoClient krakenIoClient) {
+        return new Builder(krakenIoClient);
+    }
+
+    public static class Builder {
+        private final KrakenIoClient krakenIoClient;
+        private long maximumSize = 10000;
+        private long expireAfterWrite = 1;
+        private TimeUnit expireAfterWriteUnit = TimeUnit.HOURS;
+        private ResultStore resultStore;
+
+        private Builder(KrakenIoClient krakenIoClient) {
+            this.krakenIoClient = krakenIoClient;
+        }
+
+        public Builder withMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        public Builder withExpireAfterWrite(long expireAfterWrite, TimeUnit expireAfterWriteUnit) {
+            this.expireAfterWrite = expireAfterWrite;
+            this.expireAfterWriteUnit = expireAfterWriteUnit;
+            return this;
+        }
+
+        public Builder withResultStore(ResultStore resultStore) {
+            this.resultStore = resultStore;
+            return this;
+        }
+
+        public CachingKrakenIoClient build() {
+            return new CachingKrakenIoClient(krakenIoClient, maximumSize, expireAfterWrite, expireAfterWriteUnit, resultStore);
+        }
+    }
+}
@@ -0,0 +1,517 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.cache;
+
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link ResultStore} persisted in an append-only log file, so results survive restarts of the JVM.
+ * <p>
+ * Every record consists of a fixed size header (key, write time, payload length and checksum) followed by the
+ * binary encoded result. Opening the store only walks the record headers to rebuild an in-memory index of key to
+ * file position; results are read from disk on demand. A record torn by a crash is cut off on open, a record with a
+ * mismatching checksum is treated as missing.
+ * <p>
+ * Superseded and expired records are dropped by {@link #compact()}, which runs automatically on a background thread
+ * once the log exceeds its maximum size or consists mostly of dead records, so writers do not pay for it. If the live
+ * records alone exceed the maximum size, the oldest are discarded as well. A failed compaction leaves the log as it was.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class DiskResultStore implements ResultStore, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(DiskResultStore.class.getCanonicalName());
+    private static final int MAGIC = 0x4B524B31;
+    private static final int FILE_HEADER_LENGTH = 4;
+    private static final int RECORD_HEADER_LENGTH = CacheKey.LENGTH + 8 + 4 + 4;
+    private static final int MAX_PAYLOAD_LENGTH = 64 * 1024;
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+    private static final byte PAYLOAD_VERSION = 1;
+
+    private final Path file;
+    private final long maximumSize;
+    private final long expireAfterWriteMillis;
+    private final boolean sync;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<CacheKey, Slot> index = new HashMap<CacheKey, Slot>();
+    private final ExecutorService compactionExecutor;
+
+    private FileChannel channel;
+    private long fileSize;
+    private long liveSize;
+    private boolean compactionScheduled;
+    private boolean closed;
+
+    private DiskResultStore(Path file, long maximumSize, long expireAfterWriteMillis, boolean sync) {
+        checkNotNull(file, "file must not be null");
+        checkArgument(maximumSize >= 0, "maximumSize must not be negative");
+        checkArgument(expireAfterWriteMillis > 0, "expireAfterWrite must be greater than 0");
+
+        this.file = file;
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteMillis = expireAfterWriteMillis;
+        this.sync = sync;
+
+        try {
+            open();
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to open result store " + file, e);
+        }
+        this.compactionExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kraken-io-result-store-%d").build()
+        );
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final long size = channel.size();
+        if (size == 0) {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH).putInt(0, MAGIC);
+            writeFully(header, 0);
+            fileSize = FILE_HEADER_LENGTH;
+            return;
+        }
+
+        final ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+        if (size < FILE_HEADER_LENGTH || !readFully(fileHeader, 0) || fileHeader.getInt(0) != MAGIC) {
+            throw new IOException("Not a result store: " + file);
+        }
+
+        final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        final byte[] key = new byte[CacheKey.LENGTH];
+        long position = FILE_HEADER_LENGTH;
+        while (position < size) {
+            recordHeader.clear();
+            if (!readFully(recordHeader, position)) {
+                break;
+            }
+
+            recordHeader.flip();
+            recordHeader.get(key);
+            final long writtenAt = recordHeader.getLong();
+            final int length = recordHeader.getInt();
+            if (length < 0 || length > MAX_PAYLOAD_LENGTH || position + RECORD_HEADER_LENGTH + length > size) {
+                break;
+            }
+
+            index(new CacheKey(key), new Slot(position, length, writtenAt));
+            position += RECORD_HEADER_LENGTH + length;
+        }
+
+        if (position < size) {
+            // Torn or corrupt tail left behind by a crash
+            channel.truncate(position);
+        }
+        fileSize = position;
+    }
+
+    @Override
+    public SuccessfulUploadResponse get(CacheKey cacheKey) {
+        checkNotNull(cacheKey, "cacheKey must not be null");
+
+        lock.readLock().lock();
+        try {
+            final Slot slot = index.get(cacheKey);
+            if (slot == null || isExpired(slot, System.currentTimeMillis())) {
+                return null;
+            }
+
+            final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + slot.length);
+            if (!readFully(record, slot.position)) {
+                return null;
+            }
+
+            final int checksum = record.getInt(RECORD_HEADER_LENGTH - 4);
+            final CRC32 crc32 = new CRC32();
+            crc32.update(record.array(), RECORD_HEADER_LENGTH, slot.length);
+            if ((int) crc32.getValue() != checksum) {
+                return null;
+            }
+
+            return decode(record.array(), RECORD_HEADER_LENGTH, slot.length);
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to read from result store " + file, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(CacheKey cacheKey, SuccessfulUploadResponse successfulUploadResponse) {
+        checkNotNull(cacheKey, "cacheKey must not be null");
+        checkNotNull(successfulUploadResponse, "successfulUploadResponse must not be null");
+
+        final byte[] payload = encode(successfulUploadResponse);
+        checkArgument(payload.length <= MAX_PAYLOAD_LENGTH, "successfulUploadResponse too large to be stored");
+
+        final CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+        final long writtenAt = System.currentTimeMillis();
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + payload.length)
+                .put(cacheKey.getBytes())
+                .putLong(writtenAt)
+                .putInt(payload.length)
+                .putInt((int) crc32.getValue())
+                .put(payload);
+        record.flip();
+
+        lock.writeLock().lock();
+        try {
+            final long position = fileSize;
+            writeFully(record, position);
+            if (sync) {
+                channel.force(false);
+            }
+
+            fileSize += record.capacity();
+            index(cacheKey, new Slot(position, payload.length, writtenAt));
+
+            if (needsCompaction() && !compactionScheduled) {
+                compactionScheduled = true;
+                compactionExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        compactInBackground();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to write to result store " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log keeping only the live records, bounded by the maximum size.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            compactLocked();
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to compact result store " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compactInBackground() {
+        lock.writeLock().lock();
+        try {
+            compactionScheduled = false;
+            if (!closed && needsCompaction()) {
+                compactLocked();
+            }
+        } catch (IOException e) {
+            // The log is left as it was, the next write beyond the limits tries again
+            LOGGER.log(Level.WARNING, "Failed to compact result store " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean needsCompaction() {
+        return (maximumSize > 0 && fileSize > maximumSize) || (fileSize > MIN_COMPACTION_SIZE && liveSize < fileSize / 2);
+    }
+
+    private void compactLocked() throws IOException {
+        final long now = System.currentTimeMillis();
+        final List<Map.Entry<CacheKey, Slot>> entries = new ArrayList<Map.Entry<CacheKey, Slot>>(index.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<CacheKey, Slot>>() {
+            @Override
+            public int compare(Map.Entry<CacheKey, Slot> first, Map.Entry<CacheKey, Slot> second) {
+                return Long.compare(second.getValue().position, first.getValue().position);
+            }
+        });
+
+        // Newest records win if the live records do not fit, the retained ones leave room for further appends
+        final long budget = maximumSize > 0 ? maximumSize * 3 / 4 : Long.MAX_VALUE;
+        final List<Map.Entry<CacheKey, Slot>> retained = new ArrayList<Map.Entry<CacheKey, Slot>>();
+        long retainedSize = FILE_HEADER_LENGTH;
+        for (Map.Entry<CacheKey, Slot> entry : entries) {
+            final Slot slot = entry.getValue();
+            if (isExpired(slot, now)) {
+                continue;
+            }
+            if (retainedSize + slot.recordLength() > budget) {
+                break;
+            }
+
+            retained.add(entry);
+            retainedSize += slot.recordLength();
+        }
+        Collections.reverse(retained);
+
+        final Path compactFile = file.resolveSibling(file.getFileName() + ".compact");
+        final Map<CacheKey, Slot> compactIndex = new HashMap<CacheKey, Slot>();
+        final FileChannel compactChannel = FileChannel.open(compactFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long compactSize = FILE_HEADER_LENGTH;
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH).putInt(0, MAGIC);
+            while (header.hasRemaining()) {
+                compactChannel.write(header);
+            }
+
+            for (Map.Entry<CacheKey, Slot> entry : retained) {
+                final Slot slot = entry.getValue();
+                long transferred = 0;
+                while (transferred < slot.recordLength()) {
+                    transferred += channel.transferTo(slot.position + transferred, slot.recordLength() - transferred, compactChannel);
+                }
+
+                compactIndex.put(entry.getKey(), new Slot(compactSize, slot.length, slot.writtenAt));
+                compactSize += slot.recordLength();
+            }
+            compactChannel.force(true);
+
+            // The open channel follows the file, once moved it is the channel of the log
+            Files.move(compactFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Nothing has been swapped yet, the store keeps using the old log
+            Closeables.close(compactChannel, true);
+            try {
+                Files.deleteIfExists(compactFile);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        final FileChannel previousChannel = channel;
+        channel = compactChannel;
+        index.clear();
+        liveSize = 0;
+        fileSize = compactSize;
+        for (Map.Entry<CacheKey, Slot> entry : compactIndex.entrySet()) {
+            index(entry.getKey(), entry.getValue());
+        }
+        Closeables.close(previousChannel, true);
+    }
+
+    /**
+     * @return number of results in the store, including expired ones not yet compacted away
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getFileSize() {
+        lock.readLock().lock();
+        try {
+            return fileSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        // A scheduled compaction still runs, but finds the store closed
+        compactionExecutor.shutdown();
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            channel.close();
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to close result store " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(CacheKey cacheKey, Slot slot) {
+        final Slot previous = index.put(cacheKey, slot);
+        if (previous != null) {
+            liveSize -= previous.recordLength();
+        }
+        liveSize += slot.recordLength();
+    }
+
+    private boolean isExpired(Slot slot, long now) {
+        return now - slot.writtenAt > expireAfterWriteMillis;
+    }
+
+    private boolean readFully(ByteBuffer byteBuffer, long position) throws IOException {
+        while (byteBuffer.hasRemaining()) {
+            if (channel.read(byteBuffer, position + byteBuffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeFully(ByteBuffer byteBuffer, long position) throws IOException {
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer, position + byteBuffer.position());
+        }
+    }
+
+    private static byte[] encode(SuccessfulUploadResponse successfulUploadResponse) {
+        try {
+            final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(256);
+            final DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+            dataOutputStream.writeByte(PAYLOAD_VERSION);
+            writeString(dataOutputStream, successfulUploadResponse.getFileName());
+            writeSize(dataOutputStream, successfulUploadResponse.getOriginalSizeLong());
+            writeSize(dataOutputStream, successfulUploadResponse.getKrakedSizeLong());
+            writeSize(dataOutputStream, successfulUploadResponse.getSavedBytesLong());
+            writeString(dataOutputStream, successfulUploadResponse.getKrakedUrl());
+            dataOutputStream.flush();
+            return byteArrayOutputStream.toByteArray();
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to encode result", e);
+        }
+    }
+
+    private static SuccessfulUploadResponse decode(byte[] bytes, int offset, int length) throws IOException {
+        final DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(bytes, offset, length));
+        if (dataInputStream.readByte() != PAYLOAD_VERSION) {
+            return null;
+        }
+
+        final SuccessfulUploadResponse successfulUploadResponse = new SuccessfulUploadResponse(
+                true,
+                readString(dataInputStream),
+                readSize(dataInputStream),
+                readSize(dataInputStream),
+                readSize(dataInputStream),
+                readString(dataInputStream)
+        );
+        successfulUploadResponse.setStatus(200);
+        return successfulUploadResponse;
+    }
+
+    private static void writeString(DataOutputStream dataOutputStream, String value) throws IOException {
+        dataOutputStream.writeBoolean(value != null);
+        if (value != null) {
+            dataOutputStream.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream dataInputStream) throws IOException {
+        return dataInputStream.readBoolean() ? dataInputStream.readUTF() : null;
+    }
+
+    private static void writeSize(DataOutputStream dataOutputStream, Number value) throws IOException {
+        dataOutputStream.writeLong(value == null ? -1 : value.longValue());
+    }
+
+    private static Long readSize(DataInputStream dataInputStream) throws IOException {
+        final long value = dataInputStream.readLong();
+        return value < 0 ? null : value;
+    }
+
+    public static Builder builder(Path file) {
+        return new Builder(file);
+    }
+
+    public static class Builder {
+        private final Path file;
+        private long maximumSize = 256L * 1024 * 1024;
+        private long expireAfterWriteMillis = TimeUnit.HOURS.toMillis(1);
+        private boolean sync;
+
+        private Builder(Path file) {
+            this.file = file;
+        }
+
+        /**
+         * Maximum size of the log file in bytes, 0 means unbounded.
+         */
+        public Builder withMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Time after which a result is neither returned nor kept by {@link #compact()}, defaults to 1 hour like
+         * {@link CachingKrakenIoClient}.
+         */
+        public Builder withExpireAfterWrite(long expireAfterWrite, TimeUnit expireAfterWriteUnit) {
+            this.expireAfterWriteMillis = expireAfterWriteUnit.toMillis(expireAfterWrite);
+            return this;
+        }
+
+        /**
+         * Forces every appended record to the storage device before {@link #put} returns.
+         */
+        public Builder withSync(boolean sync) {
+            this.sync = sync;
+            return this;
+        }
+
+        public DiskResultStore build() {
+            return new DiskResultStore(file, maximumSize, expireAfterWriteMillis, sync);
+        }
+    }
+
+    private static final class Slot {
+        private final long position;
+        private final int length;
+        private final long writtenAt;
+
+        private Slot(long position, int length, long writtenAt) {
+            this.position = position;
+            this.length = length;
+            this.writtenAt = writtenAt;
+        }
+
+        private long recordLength() {
+            return RECORD_HEADER_LENGTH + length;
+        }
+    }
+}
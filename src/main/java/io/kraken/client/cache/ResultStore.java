@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.cache;
+
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+/**
+ * Second level store of optimization results consulted by {@link CachingKrakenIoClient} before uploading.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public interface ResultStore {
+
+    /**
+     * @return the stored result or {@code null} if there is none
+     */
+    SuccessfulUploadResponse get(CacheKey cacheKey);
+
+    void put(CacheKey cacheKey, SuccessfulUploadResponse successfulUploadResponse);
+}
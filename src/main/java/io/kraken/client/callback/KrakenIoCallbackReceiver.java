@@ -0,0 +1,415 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.callback;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.model.response.AbstractUploadResponse;
+import io.kraken.client.model.response.FailedUploadResponse;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Embedded HTTP server receiving the results Kraken.io posts to the callback url of
+ * {@link io.kraken.client.model.request.AbstractUploadCallbackUrlRequest}s. Uploads submitted with
+ * {@link #getCallbackUrl()} return right away with an id; {@link #expect} turns that id into a future which is
+ * completed once the result for it arrives, so no connection is held open while the image is optimized.
+ * <pre>
+ *   final DirectUploadCallbackUrlRequest request = DirectUploadCallbackUrlRequest.builder(image, receiver.getCallbackUrl()).build();
+ *   final CompletableFuture&lt;SuccessfulUploadResponse&gt; result = receiver.expect(asyncKrakenIoClient.directUpload(request));
+ * </pre>
+ * Failed results complete the future with a {@link KrakenIoRequestException}, results which do not arrive within the
+ * configured timeout with a {@link KrakenIoException}. Futures are completed on the threads of the server, longer
+ * running dependent work should use the async variants of the {@link CompletableFuture} methods.
+ * <p>
+ * The callback url carries a random secret generated per receiver, callbacks without it are rejected with 403, so
+ * only whoever got the url from an upload request can post results. Results arriving before {@link #expect} was called
+ * for their id are kept for a short retention only and their number is limited, callbacks beyond the limit are
+ * rejected with 429. The receiver listens on the loopback address unless another host is configured, the callback url
+ * is always given explicitly since only the caller knows under which address Kraken.io can reach it.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoCallbackReceiver implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(KrakenIoCallbackReceiver.class.getCanonicalName());
+    private static final String SECRET_PARAMETER = "secret";
+    private static final int SECRET_BYTES = 16;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final ConcurrentMap<String, Result> results = new ConcurrentHashMap<>();
+    private final AtomicInteger unclaimedCount = new AtomicInteger();
+    private final long timeoutMillis;
+    private final long unclaimedRetentionMillis;
+    private final int maxUnclaimedResults;
+    private final String secret;
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    private final ScheduledThreadPoolExecutor timeoutScheduler;
+    private final URL callbackUrl;
+
+    private KrakenIoCallbackReceiver(InetSocketAddress address,
+                                     String path,
+                                     URL callbackUrl,
+                                     int threads,
+                                     long timeoutMillis,
+                                     long unclaimedRetentionMillis,
+                                     int maxUnclaimedResults) {
+        checkNotNull(address, "address must not be null");
+        checkNotNull(path, "path must not be null");
+        checkNotNull(callbackUrl, "callbackUrl must not be null");
+        checkArgument(path.startsWith("/"), "path must start with /");
+        checkArgument(threads > 0, "threads must be greater than 0");
+        checkArgument(timeoutMillis > 0, "timeout must be greater than 0");
+        checkArgument(unclaimedRetentionMillis > 0, "unclaimedRetention must be greater than 0");
+        checkArgument(maxUnclaimedResults >= 0, "maxUnclaimedResults must not be negative");
+
+        this.timeoutMillis = timeoutMillis;
+        this.unclaimedRetentionMillis = unclaimedRetentionMillis;
+        this.maxUnclaimedResults = maxUnclaimedResults;
+        this.secret = newSecret();
+        this.timeoutScheduler = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kraken-io-callback-timeout-%d").build()
+        );
+        this.timeoutScheduler.setRemoveOnCancelPolicy(true);
+        this.executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kraken-io-callback-%d").build()
+        );
+
+        try {
+            this.httpServer = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            timeoutScheduler.shutdownNow();
+            executor.shutdownNow();
+            throw new KrakenIoException("Failed to bind callback receiver to " + address, e);
+        }
+        this.httpServer.createContext(path, new CallbackHandler());
+        this.httpServer.setExecutor(executor);
+        this.httpServer.start();
+        this.callbackUrl = withSecret(callbackUrl, secret);
+    }
+
+    /**
+     * The url to pass as callback url of the uploads, including the secret of this receiver.
+     */
+    public URL getCallbackUrl() {
+        return callbackUrl;
+    }
+
+    /**
+     * Number of results which are awaited or were received but not yet claimed.
+     */
+    public int getPendingCount() {
+        return results.size();
+    }
+
+    /**
+     * Returns a future for the result of the upload with the id of the given response.
+     */
+    public CompletableFuture<SuccessfulUploadResponse> expect(SuccessfulUploadCallbackUrlResponse successfulUploadCallbackUrlResponse) {
+        checkNotNull(successfulUploadCallbackUrlResponse, "successfulUploadCallbackUrlResponse must not be null");
+        return expect(successfulUploadCallbackUrlResponse.getId());
+    }
+
+    /**
+     * Returns a future for the result of the upload submitted by the given stage.
+     */
+    public CompletableFuture<SuccessfulUploadResponse> expect(CompletionStage<SuccessfulUploadCallbackUrlResponse> submission) {
+        checkNotNull(submission, "submission must not be null");
+        return submission.toCompletableFuture().thenCompose(this::expect);
+    }
+
+    /**
+     * Returns a future for the result of the upload with the given id.
+     */
+    public CompletableFuture<SuccessfulUploadResponse> expect(String id) {
+        checkNotNull(id, "id must not be null");
+
+        final Result result = results.computeIfAbsent(id, key -> newResult(key, timeoutMillis, false));
+        result.claim();
+        // Claimed, neither the entry nor the timeout are needed anymore once the result is there
+        result.whenComplete((successfulUploadResponse, throwable) -> {
+            results.remove(id, result);
+            result.timeout.cancel(false);
+        });
+        return result;
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        executor.shutdownNow();
+        timeoutScheduler.shutdownNow();
+
+        final KrakenIoException closed = new KrakenIoException("Callback receiver closed");
+        for (Result result : results.values()) {
+            result.completeExceptionally(closed);
+        }
+        results.clear();
+    }
+
+    boolean complete(AbstractUploadResponse abstractUploadResponse) {
+        final Result result = results.computeIfAbsent(abstractUploadResponse.getId(), this::newUnclaimedResult);
+        if (result == null) {
+            return false;
+        }
+
+        if (abstractUploadResponse instanceof SuccessfulUploadResponse) {
+            abstractUploadResponse.setStatus(200);
+            result.complete((SuccessfulUploadResponse) abstractUploadResponse);
+        } else {
+            result.completeExceptionally(new KrakenIoRequestException("Kraken.io request failed", (FailedUploadResponse) abstractUploadResponse));
+        }
+        return true;
+    }
+
+    private Result newUnclaimedResult(String id) {
+        // Nobody expects this id (yet), bound what an unknown poster can make us keep
+        if (unclaimedCount.incrementAndGet() > maxUnclaimedResults) {
+            unclaimedCount.decrementAndGet();
+            return null;
+        }
+        return newResult(id, unclaimedRetentionMillis, true);
+    }
+
+    private Result newResult(String id, long expiryMillis, boolean unclaimed) {
+        // Whoever comes first, the callback or the caller, creates the entry. Unclaimed results are removed by the
+        // timeout as well.
+        final Result result = new Result(unclaimed);
+        result.timeout = timeoutScheduler.schedule(() -> {
+            if (results.remove(id, result)) {
+                result.claim();
+                result.completeExceptionally(new KrakenIoException("No result received for upload " + id + " within " + expiryMillis + "ms"));
+            }
+        }, expiryMillis, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    private boolean isAuthorized(HttpExchange httpExchange) {
+        final String query = httpExchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return false;
+        }
+
+        final byte[] expected = secret.getBytes(Charsets.US_ASCII);
+        for (String parameter : Splitter.on('&').split(query)) {
+            final int separator = parameter.indexOf('=');
+            if (separator > 0 && SECRET_PARAMETER.equals(parameter.substring(0, separator))
+                    && MessageDigest.isEqual(expected, parameter.substring(separator + 1).getBytes(Charsets.US_ASCII))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String newSecret() {
+        final byte[] secret = new byte[SECRET_BYTES];
+        new SecureRandom().nextBytes(secret);
+        return BaseEncoding.base16().lowerCase().encode(secret);
+    }
+
+    private static URL withSecret(URL url, String secret) {
+        try {
+            final String separator = url.getQuery() == null ? "?" : "&";
+            return new URL(url.toExternalForm() + separator + SECRET_PARAMETER + "=" + secret);
+        } catch (MalformedURLException e) {
+            throw new KrakenIoException("Failed to add the secret to the callback url " + url, e);
+        }
+    }
+
+    private static AbstractUploadResponse readResult(InputStream inputStream) throws IOException {
+        // The result is bound through the annotations of the response model, the id is not part of it
+        final JsonNode jsonNode = OBJECT_MAPPER.readTree(inputStream);
+        if (jsonNode == null || !jsonNode.isObject()) {
+            throw new IOException("Callback result is not a JSON object");
+        }
+
+        final AbstractUploadResponse abstractUploadResponse = OBJECT_MAPPER.treeToValue(jsonNode, AbstractUploadResponse.class);
+        abstractUploadResponse.setId(jsonNode.path("id").textValue());
+        return abstractUploadResponse;
+    }
+
+    /**
+     * @param callbackUrl url under which Kraken.io reaches the receiver, the secret is appended to it
+     */
+    public static Builder builder(URL callbackUrl) {
+        return new Builder(callbackUrl);
+    }
+
+    public static class Builder {
+        private String host = "127.0.0.1";
+        private int port;
+        private String path = "/kraken-io/callback";
+        private final URL callbackUrl;
+        private int threads = 2;
+        private long timeoutMillis = TimeUnit.HOURS.toMillis(1);
+        private long unclaimedRetentionMillis = TimeUnit.MINUTES.toMillis(1);
+        private int maxUnclaimedResults = 1000;
+
+        private Builder(URL callbackUrl) {
+            this.callbackUrl = callbackUrl;
+        }
+
+        /**
+         * Address to listen on, defaults to the loopback address, e.g. behind a reverse proxy. Use e.g. 0.0.0.0 to accept
+         * callbacks from other hosts directly.
+         */
+        public Builder withHost(String host) {
+            this.host = host;
+            return this;
+        }
+
+        /**
+         * Port to listen on, 0 (the default) picks a free port.
+         */
+        public Builder withPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder withPath(String path) {
+            this.path = path;
+            return this;
+        }
+
+        public Builder withThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * How long a result is awaited.
+         */
+        public Builder withTimeout(long timeout, TimeUnit timeoutUnit) {
+            this.timeoutMillis = timeoutUnit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * How long a result nobody expects yet is kept, defaults to 1 minute. Results usually arrive long after
+         * {@link #expect} was called, this only covers the race with very fast results.
+         */
+        public Builder withUnclaimedRetention(long unclaimedRetention, TimeUnit unclaimedRetentionUnit) {
+            this.unclaimedRetentionMillis = unclaimedRetentionUnit.toMillis(unclaimedRetention);
+            return this;
+        }
+
+        /**
+         * Maximum number of results nobody expects yet, defaults to 1000. Further callbacks are rejected.
+         */
+        public Builder withMaxUnclaimedResults(int maxUnclaimedResults) {
+            this.maxUnclaimedResults = maxUnclaimedResults;
+            return this;
+        }
+
+        /**
+         * Starts the receiver.
+         */
+        public KrakenIoCallbackReceiver build() {
+            checkNotNull(host, "host must not be null");
+            return new KrakenIoCallbackReceiver(new InetSocketAddress(host, port), path, callbackUrl, threads, timeoutMillis,
+                    unclaimedRetentionMillis, maxUnclaimedResults);
+        }
+    }
+
+    private class CallbackHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange httpExchange) throws IOException {
+            try {
+                if (!isAuthorized(httpExchange)) {
+                    LOGGER.log(Level.WARNING, "Rejected callback from {0} without a valid secret", httpExchange.getRemoteAddress());
+                    httpExchange.sendResponseHeaders(403, -1);
+                    return;
+                }
+
+                if (!"POST".equalsIgnoreCase(httpExchange.getRequestMethod())) {
+                    httpExchange.getResponseHeaders().add("Allow", "POST");
+                    httpExchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+
+                final AbstractUploadResponse abstractUploadResponse;
+                try (InputStream inputStream = httpExchange.getRequestBody()) {
+                    abstractUploadResponse = readResult(inputStream);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to read callback result", e);
+                    httpExchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+
+                if (abstractUploadResponse.getId() == null) {
+                    LOGGER.log(Level.WARNING, "Callback result without id: {0}", abstractUploadResponse);
+                    httpExchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+
+                if (!complete(abstractUploadResponse)) {
+                    LOGGER.log(Level.WARNING, "Rejected unexpected callback result {0}, too many unclaimed results", abstractUploadResponse.getId());
+                    httpExchange.sendResponseHeaders(429, -1);
+                    return;
+                }
+                httpExchange.sendResponseHeaders(200, -1);
+            } finally {
+                httpExchange.close();
+            }
+        }
+    }
+
+    private class Result extends CompletableFuture<SuccessfulUploadResponse> {
+        private final AtomicBoolean unclaimed;
+        private volatile ScheduledFuture<?> timeout;
+
+        private Result(boolean unclaimed) {
+            this.unclaimed = new AtomicBoolean(unclaimed);
+        }
+
+        private void claim() {
+            if (unclaimed.compareAndSet(true, false)) {
+                unclaimedCount.decrementAndGet();
+            }
+        }
+    }
+}
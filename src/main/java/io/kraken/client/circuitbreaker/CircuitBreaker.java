@@ -0,0 +1,388 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.circuitbreaker;
+
+import com.google.common.base.Ticker;
+import io.kraken.client.metrics.Endpoint;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Circuit breaker per Kraken.io endpoint, failing requests fast while the API is degraded instead of letting every
+ * request wait for the read timeout. Outcomes of the last {@code slidingWindowSize} requests are kept; once at least
+ * {@code minimumNumberOfCalls} are recorded and the rate of failed or of slow requests reaches its threshold the
+ * circuit opens. A request failed if no response was received or the response status is 5xx, 4xx responses including
+ * 429 are answers of a healthy API. After {@code waitDurationInOpenState} the circuit is half-open and lets
+ * {@code permittedCallsInHalfOpenState} trial requests through, which close the circuit or open it again.
+ * <p>
+ * A circuit breaker is thread safe and can be shared by any number of clients in one JVM by passing the same instance
+ * to their {@link io.kraken.client.config.KrakenIoClientConfig}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class CircuitBreaker {
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final Ticker ticker;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final int slidingWindowSize;
+    private final int minimumNumberOfCalls;
+    private final long waitDurationInOpenStateNanos;
+    private final int permittedCallsInHalfOpenState;
+    private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<CircuitBreakerListener>();
+    private final Map<Endpoint, Circuit> circuits = new EnumMap<Endpoint, Circuit>(Endpoint.class);
+
+    CircuitBreaker(float failureRateThreshold,
+                   float slowCallRateThreshold,
+                   long slowCallDuration,
+                   int slidingWindowSize,
+                   int minimumNumberOfCalls,
+                   long waitDurationInOpenState,
+                   int permittedCallsInHalfOpenState,
+                   List<CircuitBreakerListener> listeners,
+                   Ticker ticker) {
+        checkArgument(failureRateThreshold > 0 && failureRateThreshold <= 100, "failureRateThreshold must be between 0 (exclusive) and 100");
+        checkArgument(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100, "slowCallRateThreshold must be between 0 (exclusive) and 100");
+        checkArgument(slowCallDuration > 0, "slowCallDuration must be greater than 0");
+        checkArgument(slidingWindowSize > 0, "slidingWindowSize must be greater than 0");
+        checkArgument(minimumNumberOfCalls > 0 && minimumNumberOfCalls <= slidingWindowSize, "minimumNumberOfCalls must be between 1 and slidingWindowSize");
+        checkArgument(waitDurationInOpenState >= 0, "waitDurationInOpenState must not be negative");
+        checkArgument(permittedCallsInHalfOpenState > 0, "permittedCallsInHalfOpenState must be greater than 0");
+        checkNotNull(ticker, "ticker must not be null");
+
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDuration);
+        this.slidingWindowSize = slidingWindowSize;
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+        this.waitDurationInOpenStateNanos = TimeUnit.MILLISECONDS.toNanos(waitDurationInOpenState);
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+        this.ticker = ticker;
+        this.listeners.addAll(listeners);
+        for (Endpoint endpoint : Endpoint.values()) {
+            circuits.put(endpoint, new Circuit());
+        }
+    }
+
+    /**
+     * Asks to send one request to the endpoint. A permitted request has to be followed by
+     * {@link #recordResponse(Endpoint, int, long)}, {@link #recordFailure(Endpoint, long)},
+     * {@link #recordSlowCall(Endpoint)} or, if it was not sent, {@link #releasePermission(Endpoint)}.
+     *
+     * @return {@code false} if the request must fail fast
+     */
+    public boolean tryAcquirePermission(Endpoint endpoint) {
+        final Circuit circuit = circuit(endpoint);
+        final CircuitState from;
+        final CircuitState to;
+        final boolean permitted;
+        circuit.lock.lock();
+        try {
+            from = circuit.state;
+            if (circuit.state == CircuitState.OPEN && ticker.read() - circuit.openedAt >= waitDurationInOpenStateNanos) {
+                circuit.halfOpen();
+            }
+            permitted = circuit.tryAcquirePermission();
+            to = circuit.state;
+        } finally {
+            circuit.lock.unlock();
+        }
+        notifyTransition(endpoint, from, to);
+        return permitted;
+    }
+
+    /**
+     * Gives back the permission of a request which was not sent after all.
+     */
+    public void releasePermission(Endpoint endpoint) {
+        final Circuit circuit = circuit(endpoint);
+        circuit.lock.lock();
+        try {
+            if (circuit.state == CircuitState.HALF_OPEN) {
+                circuit.halfOpenPermits++;
+            }
+        } finally {
+            circuit.lock.unlock();
+        }
+    }
+
+    /**
+     * Records a response received after the given time.
+     */
+    public void recordResponse(Endpoint endpoint, int status, long durationNanos) {
+        record(endpoint, status >= 500, durationNanos);
+    }
+
+    /**
+     * Records a request which did not receive a response, e.g. due to an I/O error or timeout.
+     */
+    public void recordFailure(Endpoint endpoint, long durationNanos) {
+        record(endpoint, true, durationNanos);
+    }
+
+    /**
+     * Records a request abandoned before its response because the caller ran out of time. It counts as slow, its
+     * actual duration only tells how short the deadline of the caller was, and not as failed, the API may still have
+     * answered.
+     */
+    public void recordSlowCall(Endpoint endpoint) {
+        record(endpoint, false, slowCallDurationNanos);
+    }
+
+    public CircuitState getState(Endpoint endpoint) {
+        final Circuit circuit = circuit(endpoint);
+        circuit.lock.lock();
+        try {
+            return circuit.state;
+        } finally {
+            circuit.lock.unlock();
+        }
+    }
+
+    public void addListener(CircuitBreakerListener listener) {
+        listeners.add(checkNotNull(listener, "listener must not be null"));
+    }
+
+    public void removeListener(CircuitBreakerListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void record(Endpoint endpoint, boolean failed, long durationNanos) {
+        final byte outcome = (byte) ((failed ? FAILED : 0) | (durationNanos >= slowCallDurationNanos ? SLOW : 0));
+        final Circuit circuit = circuit(endpoint);
+        final CircuitState from;
+        final CircuitState to;
+        circuit.lock.lock();
+        try {
+            from = circuit.state;
+            circuit.record(outcome);
+            to = circuit.state;
+        } finally {
+            circuit.lock.unlock();
+        }
+        notifyTransition(endpoint, from, to);
+    }
+
+    private void notifyTransition(Endpoint endpoint, CircuitState from, CircuitState to) {
+        if (from == to) {
+            return;
+        }
+        for (CircuitBreakerListener listener : listeners) {
+            listener.onStateTransition(endpoint, from, to);
+        }
+    }
+
+    private Circuit circuit(Endpoint endpoint) {
+        checkNotNull(endpoint, "endpoint must not be null");
+        return circuits.get(endpoint);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 100;
+        private long slowCallDuration = 10000;
+        private int slidingWindowSize = 100;
+        private int minimumNumberOfCalls = 20;
+        private long waitDurationInOpenState = 30000;
+        private int permittedCallsInHalfOpenState = 5;
+        private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<CircuitBreakerListener>();
+
+        private Builder() {
+        }
+
+        /**
+         * Percentage of failed requests in the sliding window at which the circuit opens, 50 by default.
+         */
+        public Builder withFailureRateThreshold(float failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * Percentage of slow requests in the sliding window at which the circuit opens, 100 by default.
+         */
+        public Builder withSlowCallRateThreshold(float slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        /**
+         * Requests taking at least this long until the response are slow, 10 seconds by default.
+         */
+        public Builder withSlowCallDuration(long slowCallDuration, TimeUnit timeUnit) {
+            this.slowCallDuration = timeUnit.toMillis(slowCallDuration);
+            return this;
+        }
+
+        /**
+         * Number of most recent requests the rates are calculated over, 100 by default.
+         */
+        public Builder withSlidingWindowSize(int slidingWindowSize) {
+            this.slidingWindowSize = slidingWindowSize;
+            return this;
+        }
+
+        /**
+         * Number of requests to record before the rates are evaluated, 20 by default.
+         */
+        public Builder withMinimumNumberOfCalls(int minimumNumberOfCalls) {
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        /**
+         * Time requests fail fast before trial requests are let through, 30 seconds by default.
+         */
+        public Builder withWaitDurationInOpenState(long waitDurationInOpenState, TimeUnit timeUnit) {
+            this.waitDurationInOpenState = timeUnit.toMillis(waitDurationInOpenState);
+            return this;
+        }
+
+        /**
+         * Number of trial requests in half-open state, 5 by default.
+         */
+        public Builder withPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+            this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+            return this;
+        }
+
+        public Builder withListener(CircuitBreakerListener listener) {
+            this.listeners.add(checkNotNull(listener, "listener must not be null"));
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(
+                    failureRateThreshold,
+                    slowCallRateThreshold,
+                    slowCallDuration,
+                    slidingWindowSize,
+                    minimumNumberOfCalls,
+                    waitDurationInOpenState,
+                    permittedCallsInHalfOpenState,
+                    listeners,
+                    Ticker.systemTicker()
+            );
+        }
+    }
+
+    /**
+     * State of one endpoint, guarded by its lock. The sliding window is a ring of outcomes with running counts. A lock
+     * rather than a monitor keeps a virtual thread recording an outcome from pinning its carrier thread.
+     */
+    private final class Circuit {
+        private final Lock lock = new ReentrantLock();
+        private final byte[] outcomes = new byte[slidingWindowSize];
+        private CircuitState state = CircuitState.CLOSED;
+        private int next;
+        private int calls;
+        private int failures;
+        private int slowCalls;
+        private long openedAt;
+        private int halfOpenPermits;
+
+        private boolean tryAcquirePermission() {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                    if (halfOpenPermits > 0) {
+                        halfOpenPermits--;
+                        return true;
+                    }
+                    return false;
+                default:
+                    return false;
+            }
+        }
+
+        private void record(byte outcome) {
+            if (state == CircuitState.OPEN) {
+                // Outcome of a request sent before the circuit opened
+                return;
+            }
+
+            if (calls == outcomes.length) {
+                remove(outcomes[next]);
+            } else {
+                calls++;
+            }
+            outcomes[next] = outcome;
+            next = (next + 1) % outcomes.length;
+            if ((outcome & FAILED) != 0) {
+                failures++;
+            }
+            if ((outcome & SLOW) != 0) {
+                slowCalls++;
+            }
+
+            final int required = state == CircuitState.HALF_OPEN ? Math.min(permittedCallsInHalfOpenState, outcomes.length) : minimumNumberOfCalls;
+            if (calls < required) {
+                return;
+            }
+            if (failures * 100f / calls >= failureRateThreshold || slowCalls * 100f / calls >= slowCallRateThreshold) {
+                open();
+            } else if (state == CircuitState.HALF_OPEN) {
+                reset(CircuitState.CLOSED);
+            }
+        }
+
+        private void remove(byte outcome) {
+            if ((outcome & FAILED) != 0) {
+                failures--;
+            }
+            if ((outcome & SLOW) != 0) {
+                slowCalls--;
+            }
+        }
+
+        private void open() {
+            reset(CircuitState.OPEN);
+            openedAt = ticker.read();
+        }
+
+        private void halfOpen() {
+            reset(CircuitState.HALF_OPEN);
+            halfOpenPermits = permittedCallsInHalfOpenState;
+        }
+
+        private void reset(CircuitState state) {
+            this.state = state;
+            this.next = 0;
+            this.calls = 0;
+            this.failures = 0;
+            this.slowCalls = 0;
+        }
+    }
+}
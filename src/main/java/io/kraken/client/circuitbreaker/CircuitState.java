@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.circuitbreaker;
+
+/**
+ * States of the circuit of one endpoint.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public enum CircuitState {
+
+    /**
+     * Requests are sent, their outcomes are recorded in the sliding window.
+     */
+    CLOSED,
+
+    /**
+     * Requests fail fast without being sent until the wait duration elapsed.
+     */
+    OPEN,
+
+    /**
+     * A limited number of trial requests is sent, their outcomes decide whether the circuit closes or opens again.
+     */
+    HALF_OPEN
+}
@@ -0,0 +1,360 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.config;
+
+import io.kraken.client.circuitbreaker.CircuitBreaker;
+import io.kraken.client.logging.RequestLogging;
+import io.kraken.client.metrics.KrakenIoMetrics;
+import io.kraken.client.ratelimit.RateLimiter;
+import io.kraken.client.retry.RetryPolicy;
+import io.kraken.client.timeout.TimeoutPolicy;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Transport settings of a Kraken.io client. Connections are kept alive and pooled, all durations are in milliseconds.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoClientConfig {
+
+    public static final String DEFAULT_BASE_URL = "https://api.kraken.io";
+    public static final int DEFAULT_TIMEOUT = 3000;
+
+    private final String baseUrl;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final TimeoutPolicy timeoutPolicy;
+    private final int connectionRequestTimeout;
+    private final int maxTotalConnections;
+    private final int maxConnectionsPerRoute;
+    private final int idleConnectionTimeout;
+    private final int keepAliveTime;
+    private final Integer asyncThreadPoolSize;
+    private final int uploadBufferSize;
+    private final int uploadBufferPoolSize;
+    private final RetryPolicy retryPolicy;
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final KrakenIoMetrics metrics;
+    private final RequestLogging requestLogging;
+
+    private KrakenIoClientConfig(String baseUrl,
+                                 int connectTimeout,
+                                 int readTimeout,
+                                 TimeoutPolicy timeoutPolicy,
+                                 int connectionRequestTimeout,
+                                 int maxTotalConnections,
+                                 int maxConnectionsPerRoute,
+                                 int idleConnectionTimeout,
+                                 int keepAliveTime,
+                                 Integer asyncThreadPoolSize,
+                                 int uploadBufferSize,
+                                 int uploadBufferPoolSize,
+                                 RetryPolicy retryPolicy,
+                                 RateLimiter rateLimiter,
+                                 CircuitBreaker circuitBreaker,
+                                 KrakenIoMetrics metrics,
+                                 RequestLogging requestLogging) {
+        checkNotNull(baseUrl, "baseUrl must not be null");
+        checkArgument(!baseUrl.isEmpty(), "baseUrl must not be empty");
+        checkArgument(connectTimeout >= 0, "connectTimeout must not be negative");
+        checkArgument(readTimeout >= 0, "readTimeout must not be negative");
+        checkArgument(connectionRequestTimeout >= 0, "connectionRequestTimeout must not be negative");
+        checkArgument(maxTotalConnections > 0, "maxTotalConnections must be greater than 0");
+        checkArgument(maxConnectionsPerRoute > 0, "maxConnectionsPerRoute must be greater than 0");
+        checkArgument(maxConnectionsPerRoute <= maxTotalConnections, "maxConnectionsPerRoute must not exceed maxTotalConnections");
+        checkArgument(idleConnectionTimeout >= 0, "idleConnectionTimeout must not be negative");
+        checkArgument(keepAliveTime >= 0, "keepAliveTime must not be negative");
+        checkArgument(asyncThreadPoolSize == null || asyncThreadPoolSize > 0, "asyncThreadPoolSize must be greater than 0");
+        checkArgument(uploadBufferSize > 0, "uploadBufferSize must be greater than 0");
+        checkArgument(uploadBufferPoolSize > 0, "uploadBufferPoolSize must be greater than 0");
+        checkNotNull(retryPolicy, "retryPolicy must not be null");
+        checkNotNull(metrics, "metrics must not be null");
+
+        this.baseUrl = baseUrl;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.timeoutPolicy = timeoutPolicy;
+        this.connectionRequestTimeout = connectionRequestTimeout;
+        this.maxTotalConnections = maxTotalConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.idleConnectionTimeout = idleConnectionTimeout;
+        this.keepAliveTime = keepAliveTime;
+        this.asyncThreadPoolSize = asyncThreadPoolSize;
+        this.uploadBufferSize = uploadBufferSize;
+        this.uploadBufferPoolSize = uploadBufferPoolSize;
+        this.retryPolicy = retryPolicy;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.metrics = metrics;
+        this.requestLogging = requestLogging;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Maximum time to establish a TCP/TLS connection, 0 means no limit.
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Maximum time of inactivity while waiting for response data, 0 means no limit.
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Derives the read timeout of every request from its upload size, {@code null} applies the fixed read timeout to
+     * all requests.
+     */
+    public TimeoutPolicy getTimeoutPolicy() {
+        return timeoutPolicy;
+    }
+
+    /**
+     * Maximum time to wait for a free connection from the pool, 0 means no limit.
+     */
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Pooled connections idle for longer than this are evicted, 0 disables idle eviction.
+     */
+    public int getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    /**
+     * Total time to live of a pooled connection regardless of its activity, 0 means connections never expire.
+     */
+    public int getKeepAliveTime() {
+        return keepAliveTime;
+    }
+
+    /**
+     * Size of the platform thread pool driving asynchronous invocations. Every request being sent by the asynchronous
+     * client holds one of these threads, further requests wait in the queue of the pool. {@code null} runs requests on
+     * a virtual thread each on Java 21 and later and on a pool of {@link #getMaxTotalConnections()} threads before.
+     */
+    public Integer getAsyncThreadPoolSize() {
+        return asyncThreadPoolSize;
+    }
+
+    /**
+     * Size of the buffers image streams are copied through, to the connection on upload and to the target on download.
+     */
+    public int getUploadBufferSize() {
+        return uploadBufferSize;
+    }
+
+    /**
+     * Number of buffers kept for reuse, concurrent uploads and downloads beyond that allocate a buffer of their own.
+     */
+    public int getUploadBufferPoolSize() {
+        return uploadBufferPoolSize;
+    }
+
+    /**
+     * Retry behaviour on transient failures, retries are disabled by default.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Limiter every request has to pass, {@code null} means requests are not limited.
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Circuit breaker every request has to pass, {@code null} means requests never fail fast.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Instrumentation hook called for every request, no-op by default.
+     */
+    public KrakenIoMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Selects the requests to log, {@code null} means requests are not logged.
+     */
+    public RequestLogging getRequestLogging() {
+        return requestLogging;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private String baseUrl = DEFAULT_BASE_URL;
+        private int connectTimeout = DEFAULT_TIMEOUT;
+        private int readTimeout = DEFAULT_TIMEOUT;
+        private TimeoutPolicy timeoutPolicy;
+        private int connectionRequestTimeout = DEFAULT_TIMEOUT;
+        private int maxTotalConnections = 20;
+        private int maxConnectionsPerRoute = 20;
+        private int idleConnectionTimeout = 30000;
+        private int keepAliveTime = 60000;
+        private Integer asyncThreadPoolSize;
+        private int uploadBufferSize = 64 * 1024;
+        private int uploadBufferPoolSize = 20;
+        private RetryPolicy retryPolicy = RetryPolicy.disabled();
+        private RateLimiter rateLimiter;
+        private CircuitBreaker circuitBreaker;
+        private KrakenIoMetrics metrics = KrakenIoMetrics.noop();
+        private RequestLogging requestLogging;
+
+        private Builder() {
+        }
+
+        public Builder withBaseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        public Builder withConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder withReadTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public Builder withTimeoutPolicy(TimeoutPolicy timeoutPolicy) {
+            this.timeoutPolicy = timeoutPolicy;
+            return this;
+        }
+
+        public Builder withConnectionRequestTimeout(int connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+            return this;
+        }
+
+        public Builder withMaxTotalConnections(int maxTotalConnections) {
+            this.maxTotalConnections = maxTotalConnections;
+            return this;
+        }
+
+        public Builder withMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        public Builder withIdleConnectionTimeout(int idleConnectionTimeout) {
+            this.idleConnectionTimeout = idleConnectionTimeout;
+            return this;
+        }
+
+        public Builder withKeepAliveTime(int keepAliveTime) {
+            this.keepAliveTime = keepAliveTime;
+            return this;
+        }
+
+        /**
+         * Runs the requests of the asynchronous client on a pool of platform threads of the given size.
+         *
+         * @see KrakenIoClientConfig#getAsyncThreadPoolSize()
+         */
+        public Builder withAsyncThreadPoolSize(int asyncThreadPoolSize) {
+            this.asyncThreadPoolSize = asyncThreadPoolSize;
+            return this;
+        }
+
+        public Builder withUploadBufferSize(int uploadBufferSize) {
+            this.uploadBufferSize = uploadBufferSize;
+            return this;
+        }
+
+        public Builder withUploadBufferPoolSize(int uploadBufferPoolSize) {
+            this.uploadBufferPoolSize = uploadBufferPoolSize;
+            return this;
+        }
+
+        public Builder withRetryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        public Builder withRateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        public Builder withCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        public Builder withMetrics(KrakenIoMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public Builder withRequestLogging(RequestLogging requestLogging) {
+            this.requestLogging = requestLogging;
+            return this;
+        }
+
+        public KrakenIoClientConfig build() {
+            return new KrakenIoClientConfig(
+                    baseUrl,
+                    connectTimeout,
+                    readTimeout,
+                    timeoutPolicy,
+                    connectionRequestTimeout,
+                    maxTotalConnections,
+                    maxConnectionsPerRoute,
+                    idleConnectionTimeout,
+                    keepAliveTime,
+                    asyncThreadPoolSize,
+                    uploadBufferSize,
+                    uploadBufferPoolSize,
+                    retryPolicy,
+                    rateLimiter,
+                    circuitBreaker,
+                    metrics,
+                    requestLogging
+            );
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.exception;
+
+import io.kraken.client.metrics.Endpoint;
+
+/**
+ * Thrown instead of sending a request while the circuit of its endpoint is open.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoCircuitOpenException extends KrakenIoException {
+
+    private final Endpoint endpoint;
+
+    public KrakenIoCircuitOpenException(Endpoint endpoint) {
+        super("Circuit breaker of " + endpoint.getPath() + " is open");
+        this.endpoint = endpoint;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.exception;
+
+import io.kraken.client.metrics.Endpoint;
+
+/**
+ * Thrown instead of sending a request if the adaptive concurrency limit of its endpoint is reached and the request
+ * could not be queued, or waited in the queue for too long.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoConcurrencyLimitException extends KrakenIoException {
+
+    private final Endpoint endpoint;
+
+    public KrakenIoConcurrencyLimitException(String message, Endpoint endpoint) {
+        super(message);
+        this.endpoint = endpoint;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.exception;
+
+import io.kraken.client.metrics.Endpoint;
+
+/**
+ * Thrown when a request did not complete within the deadline set on it, including all of its retries.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoDeadlineExceededException extends KrakenIoException {
+
+    private final Endpoint endpoint;
+    private final long deadline;
+
+    public KrakenIoDeadlineExceededException(Endpoint endpoint, long deadline) {
+        this(endpoint, deadline, null);
+    }
+
+    public KrakenIoDeadlineExceededException(Endpoint endpoint, long deadline, Throwable cause) {
+        super("Request to " + endpoint.getPath() + " exceeded its deadline of " + deadline + " ms", cause);
+        this.endpoint = endpoint;
+        this.deadline = deadline;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the deadline of the request in milliseconds
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.hedge;
+
+import io.kraken.client.KrakenIoClient;
+import io.kraken.client.batch.UploadExecutors;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.model.request.*;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link KrakenIoClient} decorator hedging {@link #imageUrlUpload(ImageUrlUploadRequest)}: a request still waiting for
+ * its response after the delay of the {@link HedgingPolicy} is sent a second time and the first successful response is
+ * returned. The other attempt is cancelled by interrupting its thread, which aborts the connection on virtual threads
+ * and otherwise lets its response be discarded. A request which failed before it was hedged is not hedged, retrying
+ * failures is the job of the {@link io.kraken.client.retry.RetryPolicy}.
+ * <p>
+ * Only image url uploads are hedged, their request is tiny and the result is returned in the response. All other
+ * requests are passed through, uploads with a callback url would be called back twice.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class HedgingKrakenIoClient implements KrakenIoClient {
+
+    private final KrakenIoClient krakenIoClient;
+    private final HedgingPolicy hedgingPolicy;
+    private final ExecutorService executorService;
+
+    /**
+     * Runs the attempts on {@link UploadExecutors#newPerUploadExecutor()}.
+     */
+    public HedgingKrakenIoClient(KrakenIoClient krakenIoClient, HedgingPolicy hedgingPolicy) {
+        this(krakenIoClient, hedgingPolicy, UploadExecutors.newPerUploadExecutor());
+    }
+
+    /**
+     * @param executorService runs the attempts, it must be able to run two attempts per concurrent request
+     */
+    public HedgingKrakenIoClient(KrakenIoClient krakenIoClient, HedgingPolicy hedgingPolicy, ExecutorService executorService) {
+        checkNotNull(krakenIoClient, "krakenIoClient must not be null");
+        checkNotNull(hedgingPolicy, "hedgingPolicy must not be null");
+        checkNotNull(executorService, "executorService must not be null");
+
+        this.krakenIoClient = krakenIoClient;
+        this.hedgingPolicy = hedgingPolicy;
+        this.executorService = executorService;
+    }
+
+    @Override
+    public SuccessfulUploadResponse directUpload(DirectUploadRequest directUploadRequest) {
+        return krakenIoClient.directUpload(directUploadRequest);
+    }
+
+    @Override
+    public SuccessfulUploadResponse directUpload(DirectFileUploadRequest directFileUploadRequest) {
+        return krakenIoClient.directUpload(directFileUploadRequest);
+    }
+
+    @Override
+    public SuccessfulUploadResponse imageUrlUpload(ImageUrlUploadRequest imageUrlUploadRequest) {
+        hedgingPolicy.recordRequest();
+        final Race race = new Race(imageUrlUploadRequest);
+        try {
+            race.attempt();
+            if (!race.awaitFirst(hedgingPolicy.getHedgeDelay(TimeUnit.NANOSECONDS)) && hedgingPolicy.tryAcquireHedge()) {
+                hedgingPolicy.getMetrics().requestHedged(Endpoint.URL);
+                race.attempt();
+            }
+            return race.await();
+        } finally {
+            race.cancel();
+        }
+    }
+
+    @Override
+    public SuccessfulUploadCallbackUrlResponse directUpload(DirectUploadCallbackUrlRequest directUploadCallbackUrlRequest) {
+        return krakenIoClient.directUpload(directUploadCallbackUrlRequest);
+    }
+
+    @Override
+    public SuccessfulUploadCallbackUrlResponse directUpload(DirectFileUploadCallbackUrlRequest directFileUploadCallbackUrlRequest) {
+        return krakenIoClient.directUpload(directFileUploadCallbackUrlRequest);
+    }
+
+    @Override
+    public SuccessfulUploadCallbackUrlResponse imageUrlUpload(ImageUrlUploadCallbackUrlRequest imageUrlUploadCallbackUrlRequest) {
+        return krakenIoClient.imageUrlUpload(imageUrlUploadCallbackUrlRequest);
+    }
+
+    /**
+     * Attempts of one request, completed by the first success or by the failure of the last attempt.
+     */
+    private final class Race {
+        private final ImageUrlUploadRequest request;
+        private final CompletableFuture<SuccessfulUploadResponse> result = new CompletableFuture<SuccessfulUploadResponse>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final List<Future<?>> attempts = new CopyOnWriteArrayList<Future<?>>();
+
+        private Race(ImageUrlUploadRequest request) {
+            this.request = request;
+        }
+
+        private void attempt() {
+            pending.incrementAndGet();
+            try {
+                attempts.add(executorService.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        final long start = System.nanoTime();
+                        try {
+                            final SuccessfulUploadResponse successfulUploadResponse = krakenIoClient.imageUrlUpload(request);
+                            hedgingPolicy.recordLatency(System.nanoTime() - start);
+                            result.complete(successfulUploadResponse);
+                        } catch (RuntimeException e) {
+                            failed(e);
+                        }
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                failed(new KrakenIoException("Failed to execute request", e));
+            }
+        }
+
+        private void failed(RuntimeException e) {
+            if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * @return {@code true} if the request completed within the given time
+         */
+        private boolean awaitFirst(long nanos) {
+            try {
+                result.get(nanos, TimeUnit.NANOSECONDS);
+                return true;
+            } catch (TimeoutException e) {
+                return false;
+            } catch (ExecutionException e) {
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KrakenIoException("Interrupted while waiting for the response", e);
+            }
+        }
+
+        private SuccessfulUploadResponse await() {
+            try {
+                return result.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new KrakenIoException("Failed to execute request", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KrakenIoException("Interrupted while waiting for the response", e);
+            }
+        }
+
+        private void cancel() {
+            for (Future<?> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.hedge;
+
+import io.kraken.client.metrics.KrakenIoMetrics;
+import io.kraken.client.retry.RetryBudget;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decides when a slow request is hedged by a second copy. A request is hedged once it took longer than a fixed
+ * {@code delay} or, with a {@code percentile} configured, longer than that percentile of the latencies observed over
+ * the last {@code windowSize} requests; the fixed delay applies until the first window is complete.
+ * <p>
+ * Hedges are drawn from a {@link RetryBudget}, so they cannot exceed a fraction of the requests and with it of the
+ * quota. Share the budget of the {@link io.kraken.client.retry.RetryPolicy} to cap retries and hedges together.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class HedgingPolicy {
+
+    private final long delayNanos;
+    private final double percentile;
+    private final int windowSize;
+    private final RetryBudget budget;
+    private final KrakenIoMetrics metrics;
+    private final Recorder recorder = new Recorder(2);
+    private final AtomicLong samples = new AtomicLong();
+    private volatile long observedDelayNanos = -1;
+
+    private HedgingPolicy(long delay, double percentile, int windowSize, RetryBudget budget, KrakenIoMetrics metrics) {
+        checkArgument(delay >= 0, "delay must not be negative");
+        checkArgument(percentile >= 0 && percentile < 100, "percentile must be between 0 and 100 (exclusive)");
+        checkArgument(windowSize > 0, "windowSize must be greater than 0");
+        checkNotNull(budget, "budget must not be null");
+        checkNotNull(metrics, "metrics must not be null");
+
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delay);
+        this.percentile = percentile;
+        this.windowSize = windowSize;
+        this.budget = budget;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return time after which a request still waiting for its response is hedged
+     */
+    public long getHedgeDelay(TimeUnit timeUnit) {
+        final long observed = observedDelayNanos;
+        return timeUnit.convert(observed >= 0 ? observed : delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a request which may be hedged, to be called once per request.
+     */
+    public void recordRequest() {
+        budget.recordRequest();
+    }
+
+    /**
+     * Records the latency of a successful attempt.
+     */
+    public void recordLatency(long nanos) {
+        if (percentile == 0) {
+            return;
+        }
+
+        recorder.recordValue(Math.max(0, nanos));
+        if (samples.incrementAndGet() % windowSize == 0) {
+            final Histogram window = recorder.getIntervalHistogram();
+            observedDelayNanos = window.getValueAtPercentile(percentile);
+        }
+    }
+
+    /**
+     * @return {@code true} if a hedge may be sent, the hedge is withdrawn from the budget in that case
+     */
+    public boolean tryAcquireHedge() {
+        return budget.tryAcquireRetry();
+    }
+
+    KrakenIoMetrics getMetrics() {
+        return metrics;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private long delay = 100;
+        private double percentile;
+        private int windowSize = 100;
+        private RetryBudget budget;
+        private KrakenIoMetrics metrics = KrakenIoMetrics.noop();
+
+        private Builder() {
+        }
+
+        /**
+         * Time after which a request is hedged, 100 milliseconds by default. With a percentile it applies until enough
+         * latencies are observed.
+         */
+        public Builder withDelay(long delay, TimeUnit timeUnit) {
+            this.delay = timeUnit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * Hedges requests taking longer than this percentile of the observed latencies, e.g. 95. Disabled by default.
+         */
+        public Builder withPercentile(double percentile) {
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Number of requests the percentile is calculated over, 100 by default.
+         */
+        public Builder withWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * Budget the hedges are drawn from, by default one allowing a hedge per ten requests.
+         */
+        public Builder withBudget(RetryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        public Builder withMetrics(KrakenIoMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(delay, percentile, windowSize, budget != null ? budget : RetryBudget.builder().build(), metrics);
+        }
+    }
+}
@@ -0,0 +1,687 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.kraken.client.circuitbreaker.CircuitBreaker;
+import io.kraken.client.circuitbreaker.CircuitBreakerListener;
+import io.kraken.client.config.KrakenIoClientConfig;
+import io.kraken.client.exception.KrakenIoCircuitOpenException;
+import io.kraken.client.exception.KrakenIoDeadlineExceededException;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.metrics.KrakenIoMetrics;
+import io.kraken.client.metrics.RequestTimings;
+import io.kraken.client.model.ConnectionPoolStats;
+import io.kraken.client.model.request.AbstractUploadRequest;
+import io.kraken.client.model.response.AbstractUploadResponse;
+import io.kraken.client.model.response.FailedUploadResponse;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import io.kraken.client.ratelimit.RateLimiter;
+import io.kraken.client.retry.RetryPolicy;
+import io.kraken.client.timeout.TimeoutPolicy;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.media.multipart.Boundary;
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Shared plumbing of the blocking and the asynchronous client: configuration of the underlying JAX-RS client,
+ * construction of the request entities and translation of the Kraken.io responses. Requests are executed over a pool
+ * of keep-alive connections configured through {@link KrakenIoClientConfig}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public abstract class AbstractKrakenIoClient implements Closeable {
+
+    protected static final String DEFAULT_BASE_URL = KrakenIoClientConfig.DEFAULT_BASE_URL;
+    protected static final int CLIENT_TIMEOUT = KrakenIoClientConfig.DEFAULT_TIMEOUT;
+
+    private static final String DATA_PART = "data";
+    private static final String UPLOAD_PART = "upload";
+    private static final String MIME_VERSION_HEADER = "MIME-Version";
+    private static final String MIME_VERSION = "1.0";
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    private final javax.ws.rs.client.Client client;
+    private final RequestWriter requestWriter;
+    private final ResponseReader responseReader;
+    private final BufferPool bufferPool;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final ScheduledExecutorService connectionEvictor;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final TimeoutPolicy timeoutPolicy;
+    private final RetryPolicy retryPolicy;
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final CircuitBreakerListener circuitBreakerListener;
+    private final KrakenIoMetrics metrics;
+    private final RequestLog requestLog;
+    private final String directUploadUrl;
+    private final String imageUrl;
+
+    protected AbstractKrakenIoClient(String apiKey, String apiSecret, KrakenIoClientConfig krakenIoClientConfig) {
+        checkNotNull(apiKey, "apiKey must not be null");
+        checkArgument(!apiKey.isEmpty(), "apiKey must not be empty");
+        checkNotNull(apiSecret, "apiSecret must not be null");
+        checkArgument(!apiSecret.isEmpty(), "apiSecret must not be empty");
+        checkNotNull(krakenIoClientConfig, "krakenIoClientConfig must not be null");
+
+        final ObjectMapper objectMapper = createObjectMapper();
+        this.requestWriter = new RequestWriter(objectMapper, apiKey, apiSecret);
+        this.responseReader = new ResponseReader(objectMapper.getFactory());
+        this.bufferPool = new BufferPool(krakenIoClientConfig.getUploadBufferPoolSize(), krakenIoClientConfig.getUploadBufferSize());
+        this.directUploadUrl = krakenIoClientConfig.getBaseUrl() + Endpoint.UPLOAD.getPath();
+        this.imageUrl = krakenIoClientConfig.getBaseUrl() + Endpoint.URL.getPath();
+        this.connectTimeout = krakenIoClientConfig.getConnectTimeout();
+        this.readTimeout = krakenIoClientConfig.getReadTimeout();
+        this.timeoutPolicy = krakenIoClientConfig.getTimeoutPolicy();
+        this.retryPolicy = krakenIoClientConfig.getRetryPolicy();
+        this.rateLimiter = krakenIoClientConfig.getRateLimiter();
+        this.metrics = krakenIoClientConfig.getMetrics();
+        this.requestLog = krakenIoClientConfig.getRequestLogging() != null ? new RequestLog(krakenIoClientConfig.getRequestLogging(), objectMapper) : null;
+        this.circuitBreaker = krakenIoClientConfig.getCircuitBreaker();
+        this.circuitBreakerListener = circuitBreaker != null ? metrics::circuitStateChanged : null;
+        if (circuitBreaker != null) {
+            circuitBreaker.addListener(circuitBreakerListener);
+        }
+        this.connectionManager = createConnectionManager(krakenIoClientConfig);
+        this.connectionEvictor = createConnectionEvictor(connectionManager, krakenIoClientConfig);
+        this.client = createClient(objectMapper, connectionManager, krakenIoClientConfig);
+    }
+
+    protected static KrakenIoClientConfig createConfig(String baseUrl, int timeout) {
+        return KrakenIoClientConfig.builder()
+                .withBaseUrl(baseUrl)
+                .withConnectTimeout(timeout)
+                .withReadTimeout(timeout)
+                .build();
+    }
+
+    private PoolingHttpClientConnectionManager createConnectionManager(KrakenIoClientConfig krakenIoClientConfig) {
+        final long timeToLive = krakenIoClientConfig.getKeepAliveTime() > 0 ? krakenIoClientConfig.getKeepAliveTime() : -1;
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                        .build(),
+                new ManagedHttpClientConnectionFactory(new ContentLength.RequestWriterFactory(), null),
+                null,
+                null,
+                timeToLive,
+                TimeUnit.MILLISECONDS
+        );
+        connectionManager.setMaxTotal(krakenIoClientConfig.getMaxTotalConnections());
+        connectionManager.setDefaultMaxPerRoute(krakenIoClientConfig.getMaxConnectionsPerRoute());
+        return connectionManager;
+    }
+
+    private ScheduledExecutorService createConnectionEvictor(final PoolingHttpClientConnectionManager connectionManager, KrakenIoClientConfig krakenIoClientConfig) {
+        final long idleConnectionTimeout = krakenIoClientConfig.getIdleConnectionTimeout();
+        if (idleConnectionTimeout == 0) {
+            return null;
+        }
+
+        final ScheduledExecutorService connectionEvictor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kraken-io-connection-evictor-%d").build()
+        );
+        final long period = Math.max(idleConnectionTimeout / 2, 1000);
+        connectionEvictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(idleConnectionTimeout, TimeUnit.MILLISECONDS);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+
+        return connectionEvictor;
+    }
+
+    private Client createClient(ObjectMapper objectMapper, PoolingHttpClientConnectionManager connectionManager, KrakenIoClientConfig krakenIoClientConfig) {
+        final ClientConfig clientConfig = new ClientConfig();
+        clientConfig.connectorProvider(new ApacheConnectorProvider());
+        clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, new LeaseTimeout.ConnectionManager(connectionManager));
+        clientConfig.property(ApacheClientProperties.REQUEST_CONFIG, RequestConfig.custom()
+                .setConnectionRequestTimeout(krakenIoClientConfig.getConnectionRequestTimeout())
+                .build());
+        clientConfig.property(ClientProperties.FOLLOW_REDIRECTS, true);
+        clientConfig.property(ClientProperties.CONNECT_TIMEOUT, krakenIoClientConfig.getConnectTimeout());
+        clientConfig.property(ClientProperties.READ_TIMEOUT, krakenIoClientConfig.getReadTimeout());
+        clientConfig.property(ClientProperties.FEATURE_AUTO_DISCOVERY_DISABLE, true);
+        if (krakenIoClientConfig.getAsyncThreadPoolSize() != null) {
+            clientConfig.property(ClientProperties.ASYNC_THREADPOOL_SIZE, krakenIoClientConfig.getAsyncThreadPoolSize());
+        } else {
+            // No more requests than pooled connections can be sent at once, more threads would only wait for a lease
+            clientConfig.register(new AsyncExecutorProvider(krakenIoClientConfig.getMaxTotalConnections()));
+        }
+
+        final JacksonJsonProvider jacksonJsonProvider = new JacksonJsonProvider(objectMapper);
+        final Client client = ClientBuilder.newClient(clientConfig)
+                .register(jacksonJsonProvider)
+                .register(MultiPartFeature.class)
+                .register(new ContentLength.Filter())
+                .register(new LeaseTimeout.Filter());
+        if (krakenIoClientConfig.getMetrics() != KrakenIoMetrics.noop()) {
+            client.register(new RequestTimer.Interceptor());
+        }
+        return client;
+    }
+
+    static ObjectMapper createObjectMapper() {
+        final ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.configure(DeserializationFeature.READ_ENUMS_USING_TO_STRING, true);
+        objectMapper.configure(SerializationFeature.WRITE_ENUMS_USING_TO_STRING, true);
+        objectMapper.configure(SerializationFeature.WRITE_EMPTY_JSON_ARRAYS, false);
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        objectMapper.enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        objectMapper.enable(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS);
+
+        return objectMapper;
+    }
+
+    public ConnectionPoolStats getConnectionPoolStats() {
+        final PoolStats poolStats = connectionManager.getTotalStats();
+        return new ConnectionPoolStats(poolStats.getLeased(), poolStats.getPending(), poolStats.getAvailable(), poolStats.getMax());
+    }
+
+    /**
+     * Closes all pooled connections, the client must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (circuitBreaker != null) {
+            circuitBreaker.removeListener(circuitBreakerListener);
+        }
+        if (connectionEvictor != null) {
+            connectionEvictor.shutdownNow();
+        }
+        client.close();
+        connectionManager.shutdown();
+    }
+
+    protected RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @return the limiter to pass before every attempt or {@code null} if requests are not limited
+     */
+    protected RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Posts the entity of the request and hands the response to the handler, retrying transient failures according to
+     * the {@link RetryPolicy} within the deadline of the request. Every attempt passes the {@link CircuitBreaker} and
+     * the {@link RateLimiter}, requests a new entity and is recorded with the {@link KrakenIoMetrics}. The size of the
+     * upload, -1 if unknown, scales the read timeout and is counted by the rate limiter.
+     */
+    protected <T> T execute(Endpoint endpoint, AbstractUploadRequest request, Supplier<Entity<?>> entity, long uploadBytes, Function<Response, T> responseHandler) {
+        return execute(endpoint, request, entity, uploadBytes, true, responseHandler);
+    }
+
+    /**
+     * Like {@link #execute(Endpoint, AbstractUploadRequest, Supplier, long, Function)}, a request which is not
+     * {@code replayable}, because its entity cannot be sent again or a repeated request would have side effects, is
+     * sent only once.
+     */
+    protected <T> T execute(Endpoint endpoint, AbstractUploadRequest request, Supplier<Entity<?>> entity, long uploadBytes, boolean replayable, Function<Response, T> responseHandler) {
+        final Deadline deadline = Deadline.after(request.getDeadline());
+        retryPolicy.getRetryBudget().recordRequest();
+        for (int attempt = 1; ; attempt++) {
+            acquirePermission(endpoint);
+
+            final RequestTimer requestTimer;
+            final long started;
+            final Response response;
+            try {
+                if (rateLimiter != null && !rateLimiter.tryAcquire(Math.max(0, uploadBytes), deadline.remaining(), TimeUnit.MILLISECONDS)) {
+                    throw deadlineExceeded(endpoint, deadline, null);
+                }
+                if (deadline.isExpired()) {
+                    throw deadlineExceeded(endpoint, deadline, null);
+                }
+                requestTimer = startRequest(endpoint);
+                started = System.nanoTime();
+            } catch (RuntimeException e) {
+                releasePermission(endpoint);
+                throw e;
+            }
+            try {
+                response = invocation(endpoint, requestTimer, uploadBytes, deadline).post(entity.get());
+            } catch (ProcessingException e) {
+                requestFailed(endpoint, request, requestTimer, e);
+                if (Thread.currentThread().isInterrupted()) {
+                    // Cancelled by the caller, e.g. a hedge which lost the race, not a failure of the API
+                    releasePermission(endpoint);
+                    throw e;
+                }
+                if (deadline.isExpired()) {
+                    // Timed out on the budget of the caller rather than on a timeout of the client
+                    recordDeadlineExceeded(endpoint, e);
+                    throw deadlineExceeded(endpoint, deadline, e);
+                }
+                recordFailure(endpoint, started);
+                final long backoff = replayable ? retryBackoff(attempt, e, deadline) : -1;
+                if (backoff < 0) {
+                    throw e;
+                }
+
+                sleep(backoff);
+                continue;
+            } catch (RuntimeException e) {
+                // Failed before sending, e.g. building the entity
+                releasePermission(endpoint);
+                requestFailed(endpoint, request, requestTimer, e);
+                throw e;
+            }
+            recordResponse(endpoint, response.getStatus(), started);
+
+            final long backoff = replayable ? retryBackoff(attempt, response, deadline) : -1;
+            if (backoff < 0) {
+                return completeRequest(endpoint, request, requestTimer, response, responseHandler);
+            }
+
+            discard(endpoint, request, requestTimer, response);
+            sleep(backoff);
+        }
+    }
+
+    /**
+     * Records a request which ran out of its deadline.
+     *
+     * @param cause failure of the attempt which ran out of time, may be {@code null}
+     */
+    KrakenIoDeadlineExceededException deadlineExceeded(Endpoint endpoint, Deadline deadline, Throwable cause) {
+        metrics.deadlineExceeded(endpoint);
+        return new KrakenIoDeadlineExceededException(endpoint, deadline.getDeadline(), cause);
+    }
+
+    /**
+     * Passes the {@link CircuitBreaker} before an attempt, the outcome of a permitted attempt has to be recorded.
+     *
+     * @throws KrakenIoCircuitOpenException if the circuit of the endpoint is open
+     */
+    protected void acquirePermission(Endpoint endpoint) {
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission(endpoint)) {
+            metrics.requestRejected(endpoint);
+            throw new KrakenIoCircuitOpenException(endpoint);
+        }
+    }
+
+    /**
+     * Gives back the permission of an attempt which was not sent.
+     */
+    protected void releasePermission(Endpoint endpoint) {
+        if (circuitBreaker != null) {
+            circuitBreaker.releasePermission(endpoint);
+        }
+    }
+
+    /**
+     * Records the response of an attempt sent at {@code started} ({@link System#nanoTime()}) with the circuit breaker.
+     */
+    protected void recordResponse(Endpoint endpoint, int status, long started) {
+        if (circuitBreaker != null) {
+            circuitBreaker.recordResponse(endpoint, status, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Records an attempt sent at {@code started} ({@link System#nanoTime()}) which did not receive a response with the
+     * circuit breaker.
+     */
+    protected void recordFailure(Endpoint endpoint, long started) {
+        if (circuitBreaker != null) {
+            circuitBreaker.recordFailure(endpoint, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Records an attempt whose timeouts, cut to the deadline of its request, ran out with the circuit breaker. An
+     * attempt still waiting for a pooled connection was never sent and only gives back its permission.
+     */
+    protected void recordDeadlineExceeded(Endpoint endpoint, Throwable throwable) {
+        if (circuitBreaker == null) {
+            return;
+        }
+        if (Throwables.getRootCause(throwable) instanceof ConnectionPoolTimeoutException) {
+            circuitBreaker.releasePermission(endpoint);
+        } else {
+            circuitBreaker.recordSlowCall(endpoint);
+        }
+    }
+
+    protected RequestTimer startRequest(Endpoint endpoint) {
+        metrics.requestStarted(endpoint);
+        return new RequestTimer();
+    }
+
+    /**
+     * Hands the response to the handler and records the request with the {@link KrakenIoMetrics} and the request log.
+     */
+    protected <T> T completeRequest(Endpoint endpoint, AbstractUploadRequest request, RequestTimer requestTimer, Response response, Function<Response, T> responseHandler) {
+        requestTimer.responseReceived();
+        T result = null;
+        RuntimeException failure = null;
+        try {
+            result = responseHandler.apply(response);
+            if (result instanceof SuccessfulUploadResponse && ((SuccessfulUploadResponse) result).getSavedBytesLong() != null) {
+                metrics.bytesSaved(endpoint, ((SuccessfulUploadResponse) result).getSavedBytesLong());
+            }
+            return result;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            final RequestTimings requestTimings = requestTimer.stop();
+            metrics.requestCompleted(endpoint, response.getStatus(), requestTimings, requestTimer.getUploadedBytes());
+            if (requestLog != null) {
+                requestLog.log(endpoint, request, response.getStatus(), requestTimings.getTotalNanos(), result, failure);
+            }
+        }
+    }
+
+    protected void requestFailed(Endpoint endpoint, AbstractUploadRequest request, RequestTimer requestTimer, Throwable throwable) {
+        metrics.requestFailed(endpoint, throwable);
+        if (requestLog != null) {
+            requestLog.log(endpoint, request, 0, requestTimer.elapsed(), null, throwable);
+        }
+    }
+
+    /**
+     * @return milliseconds to wait before attempting the request again or -1 if the response is final or the retry
+     * would not start before the deadline
+     */
+    long retryBackoff(int attempt, Response response, Deadline deadline) {
+        if (!retryPolicy.isRetryable(response.getStatus())) {
+            return -1;
+        }
+        return retryPolicy.nextBackoff(attempt, response.getHeaderString(RETRY_AFTER_HEADER), deadline.remaining());
+    }
+
+    /**
+     * @return milliseconds to wait before attempting the request again or -1 if the failure is final or the retry
+     * would not start before the deadline
+     */
+    long retryBackoff(int attempt, Throwable throwable, Deadline deadline) {
+        if (!retryPolicy.isRetryable(throwable)) {
+            return -1;
+        }
+        return retryPolicy.nextBackoff(attempt, null, deadline.remaining());
+    }
+
+    /**
+     * Records a response which is not handed to a handler and releases its connection.
+     */
+    protected void discard(Endpoint endpoint, AbstractUploadRequest request, RequestTimer requestTimer, Response response) {
+        requestTimer.responseReceived();
+        try {
+            releaseConnection(response);
+        } catch (ProcessingException ignored) {
+            // The connection is not reused then
+        } finally {
+            response.close();
+            final RequestTimings requestTimings = requestTimer.stop();
+            metrics.requestCompleted(endpoint, response.getStatus(), requestTimings, requestTimer.getUploadedBytes());
+            if (requestLog != null) {
+                requestLog.log(endpoint, request, response.getStatus(), requestTimings.getTotalNanos(), null, null);
+            }
+        }
+    }
+
+    private void sleep(long backoff) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(backoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrakenIoException("Interrupted while waiting to retry request", e);
+        }
+    }
+
+    /**
+     * Prepares an image stream for upload. Streams can be sent only once, with retries enabled the image is buffered so
+     * every attempt can send it again, unless the request is {@code streaming}. Images of known length are sent with a
+     * {@code Content-Length}. The size of a stream which is neither buffered nor in memory is only known from its
+     * {@code contentLength}, without it the upload is not counted by the bytes per second of the {@link RateLimiter} and
+     * waits for the maximum read timeout of the {@link TimeoutPolicy}.
+     *
+     * @param contentLength exact number of bytes the stream provides or {@code null} if unknown
+     */
+    protected UploadImage uploadImage(final InputStream image, boolean streaming, Long contentLength) {
+        final boolean inMemory = image instanceof ByteArrayInputStream;
+        // Exact for in memory streams only, available() of other streams may return anything up to the full size
+        final long length = contentLength != null ? contentLength : inMemory ? ((ByteArrayInputStream) image).available() : -1;
+        if (streaming || !retryPolicy.isEnabled()) {
+            return new UploadImage(() -> image, length, false);
+        }
+
+        if (inMemory) {
+            image.mark(0);
+            return new UploadImage(() -> {
+                try {
+                    image.reset();
+                } catch (IOException e) {
+                    throw new KrakenIoException("Failed to reset image", e);
+                }
+                return image;
+            }, length, true);
+        }
+
+        final byte[] bytes;
+        try {
+            bytes = ByteStreams.toByteArray(image);
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to read image", e);
+        }
+        if (contentLength != null && contentLength != bytes.length) {
+            throw new KrakenIoException("Image has " + bytes.length + " bytes, expected its content length of " + contentLength);
+        }
+        return new UploadImage(() -> new ByteArrayInputStream(bytes), bytes.length, true);
+    }
+
+    /**
+     * Builds an attempt of a request, its read timeout is derived from the {@link TimeoutPolicy} and both timeouts as
+     * well as the wait for a pooled connection are cut to the time left of the deadline.
+     */
+    Invocation.Builder invocation(Endpoint endpoint, RequestTimer requestTimer, long uploadBytes, Deadline deadline) {
+        final Invocation.Builder invocation;
+        if (endpoint == Endpoint.UPLOAD) {
+            // Set up front, the multipart writer would add it after the pooled connector already sent the headers
+            invocation = client.target(directUploadUrl).request(MediaType.APPLICATION_JSON_TYPE).header(MIME_VERSION_HEADER, MIME_VERSION);
+        } else {
+            invocation = client.target(imageUrl).request(MediaType.APPLICATION_JSON_TYPE);
+        }
+
+        invocation.property(RequestTimer.PROPERTY, requestTimer);
+        if (timeoutPolicy != null || deadline.isSet()) {
+            // Resolved per request by the connector, overriding the timeouts of the client
+            final int attemptReadTimeout = timeoutPolicy != null ? timeoutPolicy.getReadTimeout(uploadBytes) : readTimeout;
+            invocation.property(ClientProperties.CONNECT_TIMEOUT, deadline.cap(connectTimeout));
+            invocation.property(ClientProperties.READ_TIMEOUT, deadline.cap(attemptReadTimeout));
+        }
+        if (deadline.isSet()) {
+            invocation.property(LeaseTimeout.PROPERTY, deadline);
+        }
+        return invocation;
+    }
+
+    protected Entity<StreamingOutput> fileMultiPartEntity(AbstractUploadRequest abstractUploadRequest, File image) {
+        final MediaType mediaType = Boundary.addBoundary(MediaType.MULTIPART_FORM_DATA_TYPE);
+        final byte[] data = requestWriter.write(abstractUploadRequest);
+
+        final FileMultiPartOutput fileMultiPartOutput = new FileMultiPartOutput(mediaType.getParameters().get(Boundary.BOUNDARY_PARAMETER), DATA_PART, data, UPLOAD_PART, image);
+        return Entity.entity(fileMultiPartOutput, mediaType);
+    }
+
+    protected Entity<StreamingOutput> streamMultiPartEntity(AbstractUploadRequest abstractUploadRequest, UploadImage image) {
+        // The boundary has to be part of the headers before the body is streamed by the pooled connector
+        final MediaType mediaType = Boundary.addBoundary(MediaType.MULTIPART_FORM_DATA_TYPE);
+        final byte[] data = requestWriter.write(abstractUploadRequest);
+
+        final StreamMultiPartOutput streamMultiPartOutput = new StreamMultiPartOutput(mediaType.getParameters().get(Boundary.BOUNDARY_PARAMETER), DATA_PART, data, UPLOAD_PART, image.open(), image.getLength(), bufferPool);
+        return Entity.entity(streamMultiPartOutput, mediaType);
+    }
+
+    protected Entity<byte[]> jsonEntity(AbstractUploadRequest abstractUploadRequest) {
+        return Entity.entity(requestWriter.write(abstractUploadRequest), MediaType.APPLICATION_JSON_TYPE);
+    }
+
+    protected SuccessfulUploadResponse handleResponse(Response response) {
+        try {
+            releaseConnection(response);
+            final AbstractUploadResponse abstractUploadResponse = responseReader.readUploadResponse(response.readEntity(InputStream.class));
+            abstractUploadResponse.setStatus(response.getStatus());
+
+            if (response.getStatus() == 200) {
+                return (SuccessfulUploadResponse) abstractUploadResponse;
+            } else {
+                throw new KrakenIoRequestException("Kraken.io request failed", (FailedUploadResponse) abstractUploadResponse);
+            }
+        } catch (KrakenIoRequestException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new KrakenIoException("Failed to unmarshall response", e);
+        } finally {
+            response.close();
+        }
+    }
+
+    protected SuccessfulUploadCallbackUrlResponse handleCallbackUrlResponse(Response response) {
+        try {
+            releaseConnection(response);
+            if (response.getStatus() == 200) {
+                return responseReader.readCallbackUrlResponse(response.readEntity(InputStream.class));
+            } else {
+                final FailedUploadResponse failedUploadResponse = responseReader.readFailedUploadResponse(response.readEntity(InputStream.class));
+                failedUploadResponse.setStatus(response.getStatus());
+                throw new KrakenIoRequestException("Kraken.io request failed", failedUploadResponse);
+            }
+        } catch (KrakenIoRequestException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new KrakenIoException("Failed to unmarshall response", e);
+        } finally {
+            response.close();
+        }
+    }
+
+    protected Invocation.Builder downloadInvocation(SuccessfulUploadResponse successfulUploadResponse) {
+        checkNotNull(successfulUploadResponse, "successfulUploadResponse must not be null");
+        checkArgument(successfulUploadResponse.getKrakedUrl() != null, "successfulUploadResponse has no kraked url");
+
+        return client.target(successfulUploadResponse.getKrakedUrl()).request();
+    }
+
+    /**
+     * Streams the body of a download response into the target through a pooled buffer and verifies the number of
+     * bytes against the kraked size of the upload, if known.
+     */
+    protected long handleDownload(Response response, SuccessfulUploadResponse successfulUploadResponse, WritableByteChannel target) {
+        final String krakedUrl = successfulUploadResponse.getKrakedUrl();
+        try {
+            if (response.getStatus() != 200) {
+                throw new KrakenIoException("Failed to download " + krakedUrl + ", status " + response.getStatus());
+            }
+
+            final long bytes;
+            try (ReadableByteChannel source = Channels.newChannel(response.readEntity(InputStream.class))) {
+                bytes = transfer(source, target);
+            }
+
+            final Long krakedSize = successfulUploadResponse.getKrakedSizeLong();
+            if (krakedSize != null && bytes != krakedSize) {
+                throw new KrakenIoException("Downloaded " + bytes + " bytes from " + krakedUrl + ", expected " + krakedSize);
+            }
+            return bytes;
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to download " + krakedUrl, e);
+        } finally {
+            response.close();
+        }
+    }
+
+    private long transfer(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        // Pooled like the upload buffers, a buffer per thread would pile up with virtual threads
+        final ByteBuffer buffer = bufferPool.acquire();
+        try {
+            long bytes = 0;
+            while (source.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                bytes += target.write(buffer);
+                buffer.compact();
+            }
+            return bytes;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void releaseConnection(Response response) {
+        // Reading the (small) body up to EOF hands the connection back to the pool for reuse, closing a partially
+        // consumed response would discard the connection instead
+        response.bufferEntity();
+    }
+}
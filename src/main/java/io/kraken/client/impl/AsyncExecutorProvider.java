@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import org.glassfish.jersey.client.ClientAsyncExecutor;
+import org.glassfish.jersey.spi.ExecutorServiceProvider;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Replaces the unbounded default executor of the JAX-RS runtime running asynchronous invocations with one of
+ * {@link AsyncExecutors}, so requests in flight beyond the connection pool do not hold a platform thread each.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+@ClientAsyncExecutor
+final class AsyncExecutorProvider implements ExecutorServiceProvider {
+
+    private final int maxThreads;
+
+    AsyncExecutorProvider(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    @Override
+    public ExecutorService getExecutorService() {
+        return AsyncExecutors.newRequestExecutor(maxThreads);
+    }
+
+    @Override
+    public void dispose(ExecutorService executorService) {
+        executorService.shutdownNow();
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors running the requests of {@link DefaultAsyncKrakenIoClient} on the blocking Apache connector. The client
+ * artifact is a multi-release jar: on Java 21 and later this class is replaced by a variant starting a virtual thread
+ * per request. On older runtimes requests run on a fixed pool of daemon platform threads, requests beyond its size wait
+ * in its queue instead of holding a thread.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class AsyncExecutors {
+
+    private AsyncExecutors() {
+    }
+
+    /**
+     * @return {@code true} if {@link #newRequestExecutor(int)} runs requests on virtual threads
+     */
+    static boolean isVirtualThreadsSupported() {
+        return false;
+    }
+
+    /**
+     * @param maxThreads platform threads running requests, more requests than connections cannot be sent at once
+     */
+    static ExecutorService newRequestExecutor(int maxThreads) {
+        return Executors.newFixedThreadPool(maxThreads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kraken-io-async-%d").build());
+    }
+}
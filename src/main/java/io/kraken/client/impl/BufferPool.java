@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Fixed number of reusable, equally sized buffers. A caller finding the pool empty gets a fresh buffer which is
+ * dropped instead of pooled if the pool is full on release, so the retained memory never exceeds
+ * {@code buffers * bufferSize}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+class BufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    BufferPool(int buffers, int bufferSize) {
+        checkArgument(buffers > 0, "buffers must be greater than 0");
+        checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<ByteBuffer>(buffers);
+    }
+
+    /**
+     * @return a cleared, array backed buffer
+     */
+    ByteBuffer acquire() {
+        final ByteBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocate(bufferSize);
+    }
+
+    void release(ByteBuffer buffer) {
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.io.HttpMessageWriter;
+import org.apache.http.io.HttpMessageWriterFactory;
+import org.apache.http.io.SessionOutputBuffer;
+import org.apache.http.impl.io.DefaultHttpRequestWriter;
+import org.apache.http.protocol.HTTP;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import java.io.IOException;
+
+/**
+ * Sends multipart bodies of known length with a {@code Content-Length} instead of chunked. The Jersey Apache connector
+ * hands every body to HttpClient as an entity of unknown length, which HttpClient then frames as chunked and refuses a
+ * {@code Content-Length} set by the caller. The {@link Filter} therefore announces the length in an internal header,
+ * which the {@link RequestWriterFactory} of the pooled connections turns into the {@code Content-Length} just before
+ * the request head is written; the connection frames the body by the headers it finds then.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class ContentLength {
+
+    static final String HINT_HEADER = "X-Kraken-Io-Content-Length";
+
+    private ContentLength() {
+    }
+
+    static final class Filter implements ClientRequestFilter {
+
+        @Override
+        public void filter(ClientRequestContext requestContext) {
+            final Object entity = requestContext.getEntity();
+            if (entity instanceof MultiPartOutput) {
+                final long contentLength = ((MultiPartOutput) entity).getContentLength();
+                if (contentLength >= 0) {
+                    requestContext.getHeaders().putSingle(HINT_HEADER, Long.toString(contentLength));
+                }
+            }
+        }
+    }
+
+    static final class RequestWriterFactory implements HttpMessageWriterFactory<HttpRequest> {
+
+        @Override
+        public HttpMessageWriter<HttpRequest> create(SessionOutputBuffer buffer) {
+            return new DefaultHttpRequestWriter(buffer) {
+                @Override
+                public void write(HttpRequest request) throws IOException, HttpException {
+                    final Header hint = request.getFirstHeader(HINT_HEADER);
+                    if (hint != null) {
+                        request.removeHeaders(HINT_HEADER);
+                        request.removeHeaders(HTTP.TRANSFER_ENCODING);
+                        request.setHeader(HTTP.CONTENT_LEN, hint.getValue());
+                    }
+                    super.write(request);
+                }
+            };
+        }
+    }
+}
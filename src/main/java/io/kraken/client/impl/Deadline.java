@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time left of a request with a deadline, measured from the moment the client received the request.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class Deadline {
+
+    static final Deadline NONE = new Deadline(0, 0);
+
+    private final long deadline;
+    private final long expiresAt;
+
+    private Deadline(long deadline, long expiresAt) {
+        this.deadline = deadline;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @param deadline milliseconds from now or {@code null} for no deadline
+     */
+    static Deadline after(Long deadline) {
+        if (deadline == null) {
+            return NONE;
+        }
+        return new Deadline(deadline, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline));
+    }
+
+    boolean isSet() {
+        return this != NONE;
+    }
+
+    /**
+     * @return the deadline in milliseconds as set on the request
+     */
+    long getDeadline() {
+        return deadline;
+    }
+
+    boolean isExpired() {
+        return isSet() && expiresAt - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @return milliseconds left, {@link Long#MAX_VALUE} without deadline
+     */
+    long remaining() {
+        if (!isSet()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+    }
+
+    /**
+     * Shortens a timeout of the client to the time left, timeouts are in milliseconds and 0 means no limit.
+     */
+    int cap(int timeout) {
+        if (!isSet()) {
+            return timeout;
+        }
+        final long remaining = Math.max(1, remaining());
+        return (int) (timeout == 0 ? Math.min(remaining, Integer.MAX_VALUE) : Math.min(remaining, timeout));
+    }
+}
@@ -0,0 +1,344 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.kraken.client.AsyncKrakenIoClient;
+import io.kraken.client.config.KrakenIoClientConfig;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.model.request.*;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import io.kraken.client.ratelimit.RateLimiter;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Response;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * {@link AsyncKrakenIoClient} built on the JAX-RS {@link javax.ws.rs.client.AsyncInvoker}. The calling thread returns
+ * as soon as the request has been handed over to the client runtime, the returned future is completed from the
+ * runtime's callback. Retries are scheduled on a timer instead of blocking a thread during the backoff.
+ * <p>
+ * The pooled Apache connector executes every request with blocking I/O on a thread of the runtime's async executor.
+ * On Java 21 and later every request runs on a virtual thread of its own, which only parks while waiting for a pooled
+ * connection or the response. On older runtimes the executor has as many platform threads as the connection pool has
+ * connections, requests beyond wait in its queue without holding a thread.
+ * {@link KrakenIoClientConfig.Builder#withAsyncThreadPoolSize(int)} replaces it with a pool of platform threads of the
+ * given size.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class DefaultAsyncKrakenIoClient extends AbstractKrakenIoClient implements AsyncKrakenIoClient {
+
+    private final ScheduledExecutorService retryScheduler;
+
+    public DefaultAsyncKrakenIoClient(String apiKey, String apiSecret) {
+        this(apiKey, apiSecret, DEFAULT_BASE_URL, CLIENT_TIMEOUT);
+    }
+
+    public DefaultAsyncKrakenIoClient(String apiKey, String apiSecret, String baseUrl) {
+        this(apiKey, apiSecret, baseUrl, CLIENT_TIMEOUT);
+    }
+
+    public DefaultAsyncKrakenIoClient(String apiKey, String apiSecret, int timeout) {
+        this(apiKey, apiSecret, DEFAULT_BASE_URL, timeout);
+    }
+
+    public DefaultAsyncKrakenIoClient(String apiKey, String apiSecret, String baseUrl, int timeout) {
+        this(apiKey, apiSecret, createConfig(baseUrl, timeout));
+    }
+
+    public DefaultAsyncKrakenIoClient(String apiKey, String apiSecret, KrakenIoClientConfig krakenIoClientConfig) {
+        super(apiKey, apiSecret, krakenIoClientConfig);
+        this.retryScheduler = getRetryPolicy().isEnabled() ? Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kraken-io-retry-%d").build()
+        ) : null;
+    }
+
+    @Override
+    public CompletableFuture<SuccessfulUploadResponse> directUpload(DirectUploadRequest directUploadRequest) {
+        final UploadImage image = uploadImage(directUploadRequest.getImage(), directUploadRequest.isStreaming(), directUploadRequest.getContentLength());
+        return post(Endpoint.UPLOAD, directUploadRequest, () -> streamMultiPartEntity(directUploadRequest, image), image.getLength(), image.isReplayable(), this::handleResponse);
+    }
+
+    @Override
+    public CompletableFuture<SuccessfulUploadResponse> directUpload(DirectFileUploadRequest directFileUploadRequest) {
+        return post(Endpoint.UPLOAD, directFileUploadRequest, () -> fileMultiPartEntity(directFileUploadRequest, directFileUploadRequest.getImage()), directFileUploadRequest.getImage().length(), this::handleResponse);
+    }
+
+    @Override
+    public CompletableFuture<SuccessfulUploadResponse> imageUrlUpload(ImageUrlUploadRequest imageUrlUploadRequest) {
+        return post(Endpoint.URL, imageUrlUploadRequest, () -> jsonEntity(imageUrlUploadRequest), 0, this::handleResponse);
+    }
+
+    @Override
+    public CompletableFuture<SuccessfulUploadCallbackUrlResponse> directUpload(DirectUploadCallbackUrlRequest directUploadCallbackUrlRequest) {
+        // Callback url uploads are sent only once, a repeated upload could call back twice
+        final UploadImage image = uploadImage(directUploadCallbackUrlRequest.getImage(), true, directUploadCallbackUrlRequest.getContentLength());
+        return post(Endpoint.UPLOAD, directUploadCallbackUrlRequest, () -> streamMultiPartEntity(directUploadCallbackUrlRequest, image), image.getLength(), false, this::handleCallbackUrlResponse);
+    }
+
+    @Override
+    public CompletableFuture<SuccessfulUploadCallbackUrlResponse> directUpload(DirectFileUploadCallbackUrlRequest directFileUploadCallbackUrlRequest) {
+        return post(Endpoint.UPLOAD, directFileUploadCallbackUrlRequest, () -> fileMultiPartEntity(directFileUploadCallbackUrlRequest, directFileUploadCallbackUrlRequest.getImage()), directFileUploadCallbackUrlRequest.getImage().length(), false, this::handleCallbackUrlResponse);
+    }
+
+    @Override
+    public CompletableFuture<SuccessfulUploadCallbackUrlResponse> imageUrlUpload(ImageUrlUploadCallbackUrlRequest imageUrlUploadCallbackUrlRequest) {
+        return post(Endpoint.URL, imageUrlUploadCallbackUrlRequest, () -> jsonEntity(imageUrlUploadCallbackUrlRequest), 0, false, this::handleCallbackUrlResponse);
+    }
+
+    /**
+     * Downloads the optimized image of the given upload over the pooled connections into the channel, which is not
+     * closed. Chained after an upload with {@link CompletableFuture#thenCompose} this makes upload and download one
+     * operation.
+     *
+     * @return a future of the number of bytes downloaded, failed with a {@link KrakenIoException} if the download
+     * failed or its size differs from the kraked size
+     * @since 1.2.0
+     */
+    public CompletableFuture<Long> downloadTo(SuccessfulUploadResponse successfulUploadResponse, WritableByteChannel target) {
+        final CompletableFuture<Long> future = new CompletableFuture<Long>();
+        downloadInvocation(successfulUploadResponse).async().get(new InvocationCallback<Response>() {
+            @Override
+            public void completed(Response response) {
+                try {
+                    future.complete(handleDownload(response, successfulUploadResponse, target));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                future.completeExceptionally(new KrakenIoException("Failed to download " + successfulUploadResponse.getKrakedUrl(), throwable));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Downloads the optimized image of the given upload into the file, replacing it. The file is only written once
+     * the download completed, a failed download leaves it untouched.
+     *
+     * @return a future of the number of bytes downloaded, failed with a {@link KrakenIoException} if the download
+     * failed or its size differs from the kraked size
+     * @since 1.2.0
+     */
+    public CompletableFuture<Long> downloadTo(SuccessfulUploadResponse successfulUploadResponse, Path target) {
+        final PartFile partFile = PartFile.create(target);
+        final CompletableFuture<Long> download;
+        try {
+            download = downloadTo(successfulUploadResponse, partFile.channel());
+        } catch (RuntimeException e) {
+            partFile.close();
+            throw e;
+        }
+
+        return download.whenComplete((bytes, throwable) -> {
+            try {
+                if (throwable == null) {
+                    partFile.commit();
+                }
+            } finally {
+                partFile.close();
+            }
+        });
+    }
+
+    /**
+     * Stops the retry timer and closes all pooled connections, the client must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+        }
+        super.close();
+    }
+
+    private <T> CompletableFuture<T> post(Endpoint endpoint, AbstractUploadRequest request, Supplier<Entity<?>> entity, long uploadBytes, Function<Response, T> responseHandler) {
+        return post(endpoint, request, entity, uploadBytes, true, responseHandler);
+    }
+
+    private <T> CompletableFuture<T> post(Endpoint endpoint, AbstractUploadRequest request, Supplier<Entity<?>> entity, long uploadBytes, boolean replayable, Function<Response, T> responseHandler) {
+        final Call<T> call = new Call<T>(endpoint, request, entity, uploadBytes, replayable, responseHandler);
+        getRetryPolicy().getRetryBudget().recordRequest();
+        call.attempt(1);
+        return call.future;
+    }
+
+    /**
+     * State of one logical request across its attempts.
+     */
+    private final class Call<T> {
+        private final Endpoint endpoint;
+        private final AbstractUploadRequest request;
+        private final Deadline deadline;
+        private final Supplier<Entity<?>> entity;
+        private final long uploadBytes;
+        private final boolean replayable;
+        private final Function<Response, T> responseHandler;
+        private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+        private Call(Endpoint endpoint, AbstractUploadRequest request, Supplier<Entity<?>> entity, long uploadBytes, boolean replayable, Function<Response, T> responseHandler) {
+            this.endpoint = endpoint;
+            this.request = request;
+            this.deadline = Deadline.after(request.getDeadline());
+            this.entity = entity;
+            this.uploadBytes = uploadBytes;
+            this.replayable = replayable;
+            this.responseHandler = responseHandler;
+        }
+
+        private void attempt(final int attempt) {
+            try {
+                acquirePermission(endpoint);
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+
+            final RateLimiter rateLimiter = getRateLimiter();
+            if (rateLimiter == null) {
+                send(attempt);
+                return;
+            }
+
+            final CompletableFuture<Boolean> permit;
+            try {
+                permit = rateLimiter.tryAcquireAsync(Math.max(0, uploadBytes), deadline.remaining(), TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                releasePermission(endpoint);
+                fail(e);
+                return;
+            }
+            permit.whenComplete((acquired, throwable) -> {
+                if (throwable != null) {
+                    releasePermission(endpoint);
+                    fail(throwable);
+                } else if (!acquired) {
+                    releasePermission(endpoint);
+                    fail(deadlineExceeded(endpoint, deadline, null));
+                } else {
+                    send(attempt);
+                }
+            });
+        }
+
+        private void send(final int attempt) {
+            final RequestTimer requestTimer;
+            try {
+                if (deadline.isExpired()) {
+                    throw deadlineExceeded(endpoint, deadline, null);
+                }
+                requestTimer = startRequest(endpoint);
+            } catch (RuntimeException e) {
+                releasePermission(endpoint);
+                fail(e);
+                return;
+            }
+
+            final long started = System.nanoTime();
+            try {
+                invocation(endpoint, requestTimer, uploadBytes, deadline).async().post(entity.get(), new InvocationCallback<Response>() {
+                    @Override
+                    public void completed(Response response) {
+                        // Anything escaping here would be swallowed by the runtime and leave the future pending
+                        try {
+                            recordResponse(endpoint, response.getStatus(), started);
+                            final long backoff = replayable ? retryBackoff(attempt, response, deadline) : -1;
+                            if (backoff >= 0) {
+                                discard(endpoint, request, requestTimer, response);
+                                retry(attempt, backoff);
+                                return;
+                            }
+
+                            future.complete(completeRequest(endpoint, request, requestTimer, response, responseHandler));
+                        } catch (RuntimeException e) {
+                            fail(e);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable) {
+                        try {
+                            requestFailed(endpoint, request, requestTimer, throwable);
+                            if (deadline.isExpired()) {
+                                recordDeadlineExceeded(endpoint, throwable);
+                                future.completeExceptionally(deadlineExceeded(endpoint, deadline, throwable));
+                                return;
+                            }
+
+                            recordFailure(endpoint, started);
+                            final long backoff = replayable ? retryBackoff(attempt, throwable, deadline) : -1;
+                            if (backoff >= 0) {
+                                retry(attempt, backoff);
+                                return;
+                            }
+
+                            fail(throwable);
+                        } catch (RuntimeException e) {
+                            e.addSuppressed(throwable);
+                            fail(e);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                releasePermission(endpoint);
+                try {
+                    requestFailed(endpoint, request, requestTimer, e);
+                } finally {
+                    fail(e);
+                }
+            }
+        }
+
+        /**
+         * Completes the future with the failure, wrapped into a {@link KrakenIoException} unless it is one.
+         */
+        private void fail(Throwable throwable) {
+            final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            future.completeExceptionally(cause instanceof KrakenIoException ? cause : new KrakenIoException("Failed to execute request", cause));
+        }
+
+        private void retry(final int attempt, long backoff) {
+            try {
+                retryScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        attempt(attempt + 1);
+                    }
+                }, backoff, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(new KrakenIoException("Client closed while waiting to retry request", e));
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import org.glassfish.jersey.media.multipart.file.DefaultMediaTypePredictor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Multipart body of a direct file upload. The image is transferred from its {@link FileChannel} instead of being
+ * copied through the multipart writer's heap buffers.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+class FileMultiPartOutput extends MultiPartOutput {
+
+    private final File file;
+    private final long size;
+
+    FileMultiPartOutput(String boundary, String dataPartName, byte[] data, String filePartName, File file) {
+        this(boundary, dataPartName, data, filePartName, file, file.length());
+    }
+
+    private FileMultiPartOutput(String boundary, String dataPartName, byte[] data, String filePartName, File file, long size) {
+        super(boundary, dataPartName, data, filePartName,
+                DefaultMediaTypePredictor.getInstance().getMediaTypeFromFile(file).toString(),
+                "filename=\"" + quote(file.getName()) + "\"; size=" + size,
+                size);
+        this.file = file;
+        this.size = size;
+    }
+
+    @Override
+    protected void writeImage(OutputStream outputStream) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (fileChannel.size() != size) {
+                throw new IOException(file + " changed its size from " + size + " to " + fileChannel.size() + " bytes");
+            }
+            outputStream.flush();
+
+            final WritableByteChannel target = Channels.newChannel(outputStream);
+            long position = 0;
+            while (position < size) {
+                position += fileChannel.transferTo(position, size - position, target);
+            }
+        }
+    }
+}
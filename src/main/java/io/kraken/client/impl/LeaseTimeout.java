@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.HttpContext;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cuts the wait for a pooled connection to the time left of the deadline of a request. The Jersey Apache connector
+ * resolves the connect and read timeouts per request but takes the connection request timeout from the client only.
+ * The {@link Filter} therefore hands the deadline of the request to the {@link ConnectionManager} through the thread
+ * the connector leases the connection on, which is the thread running the filters for both blocking and async
+ * requests.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class LeaseTimeout {
+
+    static final String PROPERTY = LeaseTimeout.class.getName();
+
+    private static final ThreadLocal<Deadline> DEADLINE = new ThreadLocal<>();
+
+    private LeaseTimeout() {
+    }
+
+    static final class Filter implements ClientRequestFilter {
+
+        @Override
+        public void filter(ClientRequestContext requestContext) {
+            final Object property = requestContext.getProperty(PROPERTY);
+            if (property instanceof Deadline) {
+                DEADLINE.set((Deadline) property);
+            } else {
+                DEADLINE.remove();
+            }
+        }
+    }
+
+    static final class ConnectionManager implements HttpClientConnectionManager {
+        private final HttpClientConnectionManager delegate;
+
+        ConnectionManager(HttpClientConnectionManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final Deadline deadline = DEADLINE.get();
+            final ConnectionRequest connectionRequest = delegate.requestConnection(route, state);
+            if (deadline == null) {
+                return connectionRequest;
+            }
+
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit timeUnit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    final long timeoutMillis = timeUnit.toMillis(timeout);
+                    final int cappedTimeout = deadline.cap((int) Math.min(timeoutMillis, Integer.MAX_VALUE));
+                    // The pool waits with millisecond precision, one more makes sure a cut wait ends after the deadline
+                    return connectionRequest.get(cappedTimeout == timeoutMillis ? timeoutMillis : cappedTimeout + 1L, TimeUnit.MILLISECONDS);
+                }
+
+                @Override
+                public boolean cancel() {
+                    return connectionRequest.cancel();
+                }
+            };
+        }
+
+        @Override
+        public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+            delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+        }
+
+        @Override
+        public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+            delegate.connect(conn, route, connectTimeout, context);
+        }
+
+        @Override
+        public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+            delegate.upgrade(conn, route, context);
+        }
+
+        @Override
+        public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+            delegate.routeComplete(conn, route, context);
+        }
+
+        @Override
+        public void closeIdleConnections(long idletime, TimeUnit timeUnit) {
+            delegate.closeIdleConnections(idletime, timeUnit);
+        }
+
+        @Override
+        public void closeExpiredConnections() {
+            delegate.closeExpiredConnections();
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code multipart/form-data} body of a direct upload, written straight to the connection: the serialized
+ * {@code data} part followed by the image part. The parts around the image are rendered up front, so with an image of
+ * known size the length of the whole body is known before it is written.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+abstract class MultiPartOutput implements StreamingOutput {
+
+    private static final String CRLF = "\r\n";
+    private static final String BOUNDARY_PREFIX = "--";
+
+    private final byte[] head;
+    private final byte[] tail;
+    private final long imageLength;
+
+    /**
+     * @param imageLength size of the image in bytes or -1 if unknown
+     */
+    MultiPartOutput(String boundary, String dataPartName, byte[] data, String imagePartName, String imageMediaType, String imageDisposition, long imageLength) {
+        checkNotNull(boundary, "boundary must not be null");
+        checkNotNull(data, "data must not be null");
+
+        final byte[] dataHead = bytes(BOUNDARY_PREFIX + boundary + CRLF
+                + "Content-Type: " + MediaType.APPLICATION_JSON + CRLF
+                + "Content-Disposition: form-data; name=\"" + dataPartName + "\"" + CRLF
+                + CRLF);
+        final byte[] imageHead = bytes(CRLF + BOUNDARY_PREFIX + boundary + CRLF
+                + "Content-Type: " + imageMediaType + CRLF
+                + "Content-Disposition: form-data; " + imageDisposition + "; name=\"" + imagePartName + "\"" + CRLF
+                + CRLF);
+
+        this.head = new byte[dataHead.length + data.length + imageHead.length];
+        System.arraycopy(dataHead, 0, head, 0, dataHead.length);
+        System.arraycopy(data, 0, head, dataHead.length, data.length);
+        System.arraycopy(imageHead, 0, head, dataHead.length + data.length, imageHead.length);
+        this.tail = bytes(CRLF + BOUNDARY_PREFIX + boundary + BOUNDARY_PREFIX + CRLF);
+        this.imageLength = imageLength;
+    }
+
+    /**
+     * @return length of the whole body in bytes or -1 if the size of the image is unknown
+     */
+    long getContentLength() {
+        return imageLength < 0 ? -1 : head.length + imageLength + tail.length;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        outputStream.write(head);
+        writeImage(outputStream);
+        outputStream.write(tail);
+    }
+
+    /**
+     * Writes exactly {@code imageLength} bytes if the length is known.
+     */
+    protected abstract void writeImage(OutputStream outputStream) throws IOException;
+
+    static String quote(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
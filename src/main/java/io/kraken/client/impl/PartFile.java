@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import io.kraken.client.exception.KrakenIoException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Temporary file next to a download target. The target only appears, atomically where supported, once the download
+ * is committed; closing an uncommitted part file deletes it, so failed downloads leave nothing behind. The part file is
+ * created with the default permissions of new files, or those of the target it replaces, and synced to disk before it
+ * is moved.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class PartFile implements Closeable {
+
+    private final Path target;
+    private final Path part;
+    private final FileChannel channel;
+    private boolean committed;
+
+    private PartFile(Path target, Path part, FileChannel channel) {
+        this.target = target;
+        this.part = part;
+        this.channel = channel;
+    }
+
+    static PartFile create(Path target) {
+        final Path absoluteTarget = target.toAbsolutePath();
+        try {
+            while (true) {
+                // Not a temp file, those are readable by the owner only
+                final Path part = absoluteTarget.resolveSibling(absoluteTarget.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".part");
+                try {
+                    final FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    return new PartFile(absoluteTarget, part, channel);
+                } catch (FileAlreadyExistsException ignored) {
+                    // Taken by a concurrent download of the same target, try another name
+                }
+            }
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to create " + target, e);
+        }
+    }
+
+    FileChannel channel() {
+        return channel;
+    }
+
+    void commit() {
+        try {
+            channel.force(true);
+            channel.close();
+            if (Files.exists(target) && target.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                Files.setPosixFilePermissions(part, Files.getPosixFilePermissions(target));
+            }
+            try {
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            committed = true;
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to write " + target, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (committed) {
+            return;
+        }
+
+        try {
+            channel.close();
+            Files.deleteIfExists(part);
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to delete " + part, e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.logging.RequestLogging;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.model.request.AbstractUploadRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the attempts selected by a {@link RequestLogging}. The request is logged from its options, the image and the
+ * credentials are not part of them, and the response from its deserialized form, so no payload is buffered for
+ * logging.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class RequestLog {
+
+    private final RequestLogging requestLogging;
+    private final ObjectMapper objectMapper;
+
+    RequestLog(RequestLogging requestLogging, ObjectMapper objectMapper) {
+        this.requestLogging = requestLogging;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @param status   HTTP status of the attempt, 0 if it did not receive a response
+     * @param response deserialized response, {@code null} if not read
+     * @param failure  failure of the attempt, may be {@code null}
+     */
+    void log(Endpoint endpoint, AbstractUploadRequest request, int status, long durationNanos, Object response, Throwable failure) {
+        if (!requestLogging.isLogged(durationNanos)) {
+            return;
+        }
+
+        final StringBuilder message = new StringBuilder(256)
+                .append("endpoint=").append(endpoint.getPath())
+                .append(" status=").append(status)
+                .append(" durationMs=").append(TimeUnit.NANOSECONDS.toMillis(durationNanos))
+                .append(" slow=").append(requestLogging.isSlow(durationNanos));
+        Object body = response;
+        if (failure instanceof KrakenIoRequestException) {
+            body = ((KrakenIoRequestException) failure).getFailedUploadResponse();
+        } else if (failure != null) {
+            message.append(" error=\"").append(failure).append('"');
+        }
+        if (requestLogging.isPayloads()) {
+            message.append(" request=").append(json(request));
+            if (body != null) {
+                message.append(" response=").append(json(body));
+            }
+        }
+        requestLogging.getLogger().log(requestLogging.getLevel(), message.toString());
+    }
+
+    private String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            return "\"" + value.getClass().getSimpleName() + "\"";
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.google.common.io.CountingOutputStream;
+import io.kraken.client.metrics.RequestTimings;
+
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+
+/**
+ * Marks the phase boundaries of one request attempt. The request body boundaries are marked by
+ * {@link RequestTimer.Interceptor}, which finds the timer in the request properties.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+class RequestTimer {
+
+    static final String PROPERTY = RequestTimer.class.getName();
+
+    private final long startTime = System.nanoTime();
+    private volatile long uploadStartTime;
+    private volatile long uploadEndTime;
+    private volatile long uploadedBytes;
+    private long responseTime;
+
+    void responseReceived() {
+        responseTime = System.nanoTime();
+    }
+
+    /**
+     * @return nanoseconds since the attempt started
+     */
+    long elapsed() {
+        return System.nanoTime() - startTime;
+    }
+
+    long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    RequestTimings stop() {
+        final long endTime = System.nanoTime();
+        if (responseTime == 0) {
+            responseTime = endTime;
+        }
+        if (uploadStartTime == 0) {
+            return new RequestTimings(0, 0, 0, endTime - responseTime, endTime - startTime);
+        }
+
+        return new RequestTimings(
+                uploadStartTime - startTime,
+                uploadEndTime - uploadStartTime,
+                responseTime - uploadEndTime,
+                endTime - responseTime,
+                endTime - startTime
+        );
+    }
+
+    /**
+     * Times and counts the request body as it is written to the connection.
+     */
+    static class Interceptor implements WriterInterceptor {
+
+        @Override
+        public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+            final Object property = context.getProperty(PROPERTY);
+            if (!(property instanceof RequestTimer)) {
+                context.proceed();
+                return;
+            }
+
+            final RequestTimer requestTimer = (RequestTimer) property;
+            final CountingOutputStream countingOutputStream = new CountingOutputStream(context.getOutputStream());
+            context.setOutputStream(countingOutputStream);
+            requestTimer.uploadStartTime = System.nanoTime();
+            try {
+                context.proceed();
+            } finally {
+                requestTimer.uploadEndTime = System.nanoTime();
+                requestTimer.uploadedBytes = countingOutputStream.getCount();
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.model.Auth;
+import io.kraken.client.model.AuthWrapper;
+import io.kraken.client.model.Metadata;
+import io.kraken.client.model.request.AbstractUploadCallbackUrlRequest;
+import io.kraken.client.model.request.AbstractUploadRequest;
+import io.kraken.client.model.request.ImageUrlUploadCallbackUrlRequest;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Set;
+
+/**
+ * Writes request bodies, the same JSON as an {@link AuthWrapper} around the request, without going through the
+ * reflective serializers for every request. The auth object is serialized once, the request properties are written
+ * directly to the generator. Nested objects (resize, convert) are still written by the object mapper.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class RequestWriter {
+
+    private static final SerializedString AUTH = new SerializedString("auth");
+    private static final SerializedString DEV = new SerializedString("dev");
+    private static final SerializedString WAIT = new SerializedString("wait");
+    private static final SerializedString WEBP = new SerializedString("webp");
+    private static final SerializedString LOSSY = new SerializedString("lossy");
+    private static final SerializedString QUALITY = new SerializedString("quality");
+    private static final SerializedString RESIZE = new SerializedString("resize");
+    private static final SerializedString PRESERVE_META = new SerializedString("preserve_meta");
+    private static final SerializedString CONVERT = new SerializedString("convert");
+    private static final SerializedString AUTO_ORIENT = new SerializedString("auto_orient");
+    private static final SerializedString URL = new SerializedString("url");
+    private static final SerializedString CALLBACK_URL = new SerializedString("callback_url");
+
+    private final JsonFactory jsonFactory;
+    private final String auth;
+
+    RequestWriter(ObjectMapper objectMapper, String apiKey, String apiSecret) {
+        // The factory of the mapper has the mapper as codec, nested objects are written with its configuration
+        this.jsonFactory = objectMapper.getFactory();
+        try {
+            this.auth = objectMapper.writeValueAsString(new Auth(apiKey, apiSecret));
+        } catch (JsonProcessingException e) {
+            throw new KrakenIoException("Failed to serialize auth", e);
+        }
+    }
+
+    byte[] write(AbstractUploadRequest abstractUploadRequest) {
+        final ByteArrayBuilder byteArrayBuilder = new ByteArrayBuilder(jsonFactory._getBufferRecycler());
+        try {
+            try (JsonGenerator jsonGenerator = jsonFactory.createGenerator(byteArrayBuilder, JsonEncoding.UTF8)) {
+                write(abstractUploadRequest, jsonGenerator);
+            }
+            return byteArrayBuilder.toByteArray();
+        } catch (IOException e) {
+            throw new KrakenIoException("Failed to serialize request", e);
+        } finally {
+            byteArrayBuilder.release();
+        }
+    }
+
+    private void write(AbstractUploadRequest abstractUploadRequest, JsonGenerator jsonGenerator) throws IOException {
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeFieldName(AUTH);
+        jsonGenerator.writeRawValue(auth);
+
+        writeBoolean(jsonGenerator, DEV, abstractUploadRequest.getDev());
+        writeBoolean(jsonGenerator, WAIT, abstractUploadRequest.getWait());
+        writeBoolean(jsonGenerator, WEBP, abstractUploadRequest.getWebp());
+        writeBoolean(jsonGenerator, LOSSY, abstractUploadRequest.getLossy());
+        if (abstractUploadRequest.getQuality() != null) {
+            jsonGenerator.writeFieldName(QUALITY);
+            jsonGenerator.writeNumber(abstractUploadRequest.getQuality());
+        }
+        writeObject(jsonGenerator, RESIZE, abstractUploadRequest.getResize());
+        writePreserveMeta(jsonGenerator, abstractUploadRequest.getPreserveMeta());
+        writeObject(jsonGenerator, CONVERT, abstractUploadRequest.getConvert());
+        writeBoolean(jsonGenerator, AUTO_ORIENT, abstractUploadRequest.getAutoOrient());
+
+        if (abstractUploadRequest instanceof ImageUrlUploadRequest) {
+            writeUrl(jsonGenerator, URL, ((ImageUrlUploadRequest) abstractUploadRequest).getImageUrl());
+        }
+        if (abstractUploadRequest instanceof ImageUrlUploadCallbackUrlRequest) {
+            writeUrl(jsonGenerator, URL, ((ImageUrlUploadCallbackUrlRequest) abstractUploadRequest).getImageUrl());
+        }
+        if (abstractUploadRequest instanceof AbstractUploadCallbackUrlRequest) {
+            writeUrl(jsonGenerator, CALLBACK_URL, ((AbstractUploadCallbackUrlRequest) abstractUploadRequest).getCallbackUrl());
+        }
+
+        jsonGenerator.writeEndObject();
+    }
+
+    private static void writeBoolean(JsonGenerator jsonGenerator, SerializedString name, Boolean value) throws IOException {
+        if (value != null) {
+            jsonGenerator.writeFieldName(name);
+            jsonGenerator.writeBoolean(value);
+        }
+    }
+
+    private static void writeObject(JsonGenerator jsonGenerator, SerializedString name, Object value) throws IOException {
+        if (value != null) {
+            jsonGenerator.writeFieldName(name);
+            jsonGenerator.writeObject(value);
+        }
+    }
+
+    private static void writeUrl(JsonGenerator jsonGenerator, SerializedString name, URL value) throws IOException {
+        if (value != null) {
+            jsonGenerator.writeFieldName(name);
+            jsonGenerator.writeString(value.toExternalForm());
+        }
+    }
+
+    private static void writePreserveMeta(JsonGenerator jsonGenerator, Set<Metadata> preserveMeta) throws IOException {
+        // Empty arrays are not written, see SerializationFeature.WRITE_EMPTY_JSON_ARRAYS
+        if (preserveMeta == null || preserveMeta.isEmpty()) {
+            return;
+        }
+
+        jsonGenerator.writeFieldName(PRESERVE_META);
+        jsonGenerator.writeStartArray();
+        for (Metadata metadata : preserveMeta) {
+            jsonGenerator.writeString(metadata.toString());
+        }
+        jsonGenerator.writeEndArray();
+    }
+}
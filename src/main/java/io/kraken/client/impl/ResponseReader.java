@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.kraken.client.model.response.AbstractUploadResponse;
+import io.kraken.client.model.response.FailedUploadResponse;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads responses with a streaming parser. The fields are collected in a single pass, so the response type can be
+ * chosen on the {@code success} field wherever it appears, without building a tree. Sizes are read as {@code long}s,
+ * unknown fields are skipped.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class ResponseReader {
+
+    private final JsonFactory jsonFactory;
+
+    ResponseReader(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    AbstractUploadResponse readUploadResponse(InputStream inputStream) throws IOException {
+        final Fields fields = read(inputStream);
+        if (fields.success == null) {
+            throw new IOException("Response has no success field");
+        }
+
+        return fields.success ? fields.toSuccessfulUploadResponse() : fields.toFailedUploadResponse();
+    }
+
+    FailedUploadResponse readFailedUploadResponse(InputStream inputStream) throws IOException {
+        return read(inputStream).toFailedUploadResponse();
+    }
+
+    SuccessfulUploadCallbackUrlResponse readCallbackUrlResponse(InputStream inputStream) throws IOException {
+        return new SuccessfulUploadCallbackUrlResponse(read(inputStream).id);
+    }
+
+    private Fields read(InputStream inputStream) throws IOException {
+        try (JsonParser jsonParser = jsonFactory.createParser(inputStream)) {
+            if (jsonParser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(jsonParser, "Expected a JSON object");
+            }
+
+            final Fields fields = new Fields();
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = jsonParser.getCurrentName();
+                jsonParser.nextToken();
+                switch (name) {
+                    case "success":
+                        fields.success = readBoolean(jsonParser);
+                        break;
+                    case "id":
+                        fields.id = jsonParser.getValueAsString();
+                        break;
+                    case "file_name":
+                        fields.fileName = jsonParser.getValueAsString();
+                        break;
+                    case "original_size":
+                        fields.originalSize = readLong(jsonParser);
+                        break;
+                    case "kraked_size":
+                        fields.krakedSize = readLong(jsonParser);
+                        break;
+                    case "saved_bytes":
+                        fields.savedBytes = readLong(jsonParser);
+                        break;
+                    case "kraked_url":
+                        fields.krakedUrl = jsonParser.getValueAsString();
+                        break;
+                    case "message":
+                        fields.message = jsonParser.getValueAsString();
+                        break;
+                    default:
+                        jsonParser.skipChildren();
+                }
+            }
+            return fields;
+        }
+    }
+
+    private static Boolean readBoolean(JsonParser jsonParser) throws IOException {
+        switch (jsonParser.getCurrentToken()) {
+            case VALUE_TRUE:
+                return true;
+            case VALUE_FALSE:
+                return false;
+            case VALUE_STRING:
+                return Boolean.valueOf(jsonParser.getText());
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new JsonParseException(jsonParser, "Expected a boolean");
+        }
+    }
+
+    private static Long readLong(JsonParser jsonParser) throws IOException {
+        switch (jsonParser.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+                return jsonParser.getLongValue();
+            case VALUE_NUMBER_FLOAT:
+            case VALUE_STRING:
+                return jsonParser.getValueAsLong();
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new JsonParseException(jsonParser, "Expected a number");
+        }
+    }
+
+    private static class Fields {
+        private Boolean success;
+        private String id;
+        private String fileName;
+        private Long originalSize;
+        private Long krakedSize;
+        private Long savedBytes;
+        private String krakedUrl;
+        private String message;
+
+        private SuccessfulUploadResponse toSuccessfulUploadResponse() {
+            return new SuccessfulUploadResponse(success, fileName, originalSize, krakedSize, savedBytes, krakedUrl);
+        }
+
+        private FailedUploadResponse toFailedUploadResponse() {
+            return new FailedUploadResponse(success, message);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Multipart body of a direct stream upload. The image is copied from the stream to the connection through a buffer of
+ * the {@link BufferPool}, so an upload holds one buffer of memory regardless of the image size. The stream is closed
+ * once written.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+class StreamMultiPartOutput extends MultiPartOutput {
+
+    private final InputStream image;
+    private final long imageLength;
+    private final BufferPool bufferPool;
+
+    /**
+     * @param imageLength exact number of bytes the stream provides or -1 if unknown
+     */
+    StreamMultiPartOutput(String boundary, String dataPartName, byte[] data, String imagePartName, InputStream image, long imageLength, BufferPool bufferPool) {
+        super(boundary, dataPartName, data, imagePartName,
+                MediaType.APPLICATION_OCTET_STREAM,
+                "filename=\"" + UUID.randomUUID() + "\"",
+                imageLength);
+        checkNotNull(image, "image must not be null");
+        checkNotNull(bufferPool, "bufferPool must not be null");
+
+        this.image = image;
+        this.imageLength = imageLength;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    protected void writeImage(OutputStream outputStream) throws IOException {
+        final ByteBuffer buffer = bufferPool.acquire();
+        try (InputStream image = this.image) {
+            final byte[] bytes = buffer.array();
+            if (imageLength < 0) {
+                int read;
+                while ((read = image.read(bytes)) != -1) {
+                    outputStream.write(bytes, 0, read);
+                }
+                return;
+            }
+
+            // The announced length is binding, a mismatch has to fail the request instead of corrupting the body
+            long remaining = imageLength;
+            while (remaining > 0) {
+                final int read = image.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+                if (read == -1) {
+                    throw new IOException("Image stream ended " + remaining + " bytes before its content length of " + imageLength);
+                }
+                outputStream.write(bytes, 0, read);
+                remaining -= read;
+            }
+            if (image.read() != -1) {
+                throw new IOException("Image stream exceeds its content length of " + imageLength);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+}
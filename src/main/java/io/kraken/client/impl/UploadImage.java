@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+/**
+ * Image stream of a direct upload with what is known about it up front: its exact length, if known, and whether it
+ * can be sent again by a retry.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class UploadImage {
+
+    private final Supplier<InputStream> stream;
+    private final long length;
+    private final boolean replayable;
+
+    UploadImage(Supplier<InputStream> stream, long length, boolean replayable) {
+        this.stream = stream;
+        this.length = length;
+        this.replayable = replayable;
+    }
+
+    /**
+     * @return the stream positioned at the start of the image, a replayable image can be opened for every attempt
+     */
+    InputStream open() {
+        return stream.get();
+    }
+
+    /**
+     * @return exact size of the image in bytes or -1 if unknown
+     */
+    long getLength() {
+        return length;
+    }
+
+    boolean isReplayable() {
+        return replayable;
+    }
+}
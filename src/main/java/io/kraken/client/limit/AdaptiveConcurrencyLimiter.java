@@ -0,0 +1,455 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.limit;
+
+import com.google.common.base.Ticker;
+import io.kraken.client.circuitbreaker.CircuitState;
+import io.kraken.client.exception.KrakenIoConcurrencyLimitException;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.metrics.KrakenIoMetrics;
+import io.kraken.client.metrics.RequestTimings;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Limits the requests in flight per Kraken.io endpoint to a limit derived from the observed round-trip times. Two
+ * moving averages of the round-trip time are kept, a short one over the last ~10 and a long one over the last ~600
+ * requests. While the short average stays within {@code rttTolerance} of the long one the limit grows by about its
+ * square root per request, as latency rises beyond the tolerance it shrinks proportionally. Requests which were
+ * dropped (I/O errors, 5xx and 429) shrink it by {@code backoffRatio}. The limit only grows while at least half of it
+ * is in use, so an idle client does not accumulate a limit it never tested.
+ * <p>
+ * The round-trip times are those of single attempts when {@link #getClientMetrics()} is configured as the metrics of
+ * the decorated client, so neither the waits of a rate limiter nor the backoff between retries count as latency.
+ * Otherwise the time from acquiring to completing a permit is taken.
+ * <p>
+ * Requests beyond the limit wait in a queue of up to {@code maxQueueSize} requests for at most {@code maxWait}, after
+ * that they are rejected with a {@link KrakenIoConcurrencyLimitException}. A limiter is thread safe and can be shared
+ * by any number of {@link ConcurrencyLimitingKrakenIoClient}s.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double SHORT_RTT_ALPHA = 2d / (10 + 1);
+    private static final double LONG_RTT_ALPHA = 2d / (600 + 1);
+
+    private final Ticker ticker;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double smoothing;
+    private final double backoffRatio;
+    private final int maxQueueSize;
+    private final long maxWaitNanos;
+    private final KrakenIoMetrics metrics;
+    private final Map<Endpoint, Limit> limits = new EnumMap<Endpoint, Limit>(Endpoint.class);
+    private final KrakenIoMetrics clientMetrics = new ClientMetrics();
+    private volatile boolean attemptsSampled;
+
+    AdaptiveConcurrencyLimiter(int initialLimit,
+                               int minLimit,
+                               int maxLimit,
+                               double rttTolerance,
+                               double smoothing,
+                               double backoffRatio,
+                               int maxQueueSize,
+                               long maxWait,
+                               KrakenIoMetrics metrics,
+                               Ticker ticker) {
+        checkArgument(minLimit > 0, "minLimit must be greater than 0");
+        checkArgument(maxLimit >= minLimit, "maxLimit must not be less than minLimit");
+        checkArgument(initialLimit >= minLimit && initialLimit <= maxLimit, "initialLimit must be between minLimit and maxLimit");
+        checkArgument(rttTolerance >= 1, "rttTolerance must not be less than 1");
+        checkArgument(smoothing > 0 && smoothing <= 1, "smoothing must be between 0 (exclusive) and 1");
+        checkArgument(backoffRatio > 0 && backoffRatio < 1, "backoffRatio must be between 0 and 1 (exclusive)");
+        checkArgument(maxQueueSize >= 0, "maxQueueSize must not be negative");
+        checkArgument(maxWait >= 0, "maxWait must not be negative");
+        checkNotNull(metrics, "metrics must not be null");
+        checkNotNull(ticker, "ticker must not be null");
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.smoothing = smoothing;
+        this.backoffRatio = backoffRatio;
+        this.maxQueueSize = maxQueueSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWait);
+        this.metrics = metrics;
+        this.ticker = ticker;
+        for (Endpoint endpoint : Endpoint.values()) {
+            limits.put(endpoint, new Limit(endpoint, initialLimit));
+            metrics.concurrencyLimitChanged(endpoint, initialLimit);
+        }
+    }
+
+    /**
+     * Blocks until one more request may be sent to the endpoint. The returned permit has to be completed exactly once
+     * when the request is done.
+     *
+     * @throws KrakenIoConcurrencyLimitException if the queue is full or the request waited longer than the maximum
+     */
+    public Permit acquire(Endpoint endpoint) {
+        return limit(endpoint).acquire();
+    }
+
+    /**
+     * @return the current limit of requests in flight
+     */
+    public int getLimit(Endpoint endpoint) {
+        return (int) limit(endpoint).limit;
+    }
+
+    /**
+     * @return number of requests currently holding a permit
+     */
+    public int getInFlight(Endpoint endpoint) {
+        return limit(endpoint).inFlight;
+    }
+
+    /**
+     * Metrics to configure on the decorated client, they feed the round-trip time of every attempt into the limit and
+     * pass all calls on to the metrics of this limiter.
+     */
+    public KrakenIoMetrics getClientMetrics() {
+        return clientMetrics;
+    }
+
+    private Limit limit(Endpoint endpoint) {
+        checkNotNull(endpoint, "endpoint must not be null");
+        return limits.get(endpoint);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double rttTolerance = 1.5;
+        private double smoothing = 0.2;
+        private double backoffRatio = 0.9;
+        private int maxQueueSize = 100;
+        private long maxWait = 30000;
+        private KrakenIoMetrics metrics = KrakenIoMetrics.noop();
+
+        private Builder() {
+        }
+
+        /**
+         * Limit before the first round-trip time is observed, 20 by default.
+         */
+        public Builder withInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * Bounds of the limit, 1 and 200 by default.
+         */
+        public Builder withLimits(int minLimit, int maxLimit) {
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Factor by which the short term round-trip time may exceed the long term one before the limit shrinks, 1.5 by
+         * default.
+         */
+        public Builder withRttTolerance(double rttTolerance) {
+            this.rttTolerance = rttTolerance;
+            return this;
+        }
+
+        /**
+         * Weight of a new limit estimate, 0.2 by default.
+         */
+        public Builder withSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+            return this;
+        }
+
+        /**
+         * Factor the limit is multiplied with on a dropped request, 0.9 by default.
+         */
+        public Builder withBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * Requests waiting for a permit beyond this number are rejected immediately, 100 by default, 0 rejects every
+         * request beyond the limit.
+         */
+        public Builder withMaxQueueSize(int maxQueueSize) {
+            this.maxQueueSize = maxQueueSize;
+            return this;
+        }
+
+        /**
+         * Maximum time a request waits for a permit, 30 seconds by default.
+         */
+        public Builder withMaxWait(long maxWait, TimeUnit timeUnit) {
+            this.maxWait = timeUnit.toMillis(maxWait);
+            return this;
+        }
+
+        /**
+         * Receives the current limit whenever it changes.
+         */
+        public Builder withMetrics(KrakenIoMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public AdaptiveConcurrencyLimiter build() {
+            return new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, rttTolerance, smoothing, backoffRatio, maxQueueSize, maxWait, metrics, Ticker.systemTicker());
+        }
+    }
+
+    /**
+     * Permission to send one request, completing it releases the slot and feeds the outcome into the limit. Only the
+     * first completion counts.
+     */
+    public final class Permit {
+        private final Limit limit;
+        private final long started;
+        private boolean completed;
+
+        private Permit(Limit limit, long started) {
+            this.limit = limit;
+            this.started = started;
+        }
+
+        /**
+         * The request received a response from a healthy API, its round-trip time is a sample unless the attempts are
+         * sampled through the {@link #getClientMetrics() client metrics}.
+         */
+        public void success() {
+            complete(Outcome.SUCCESS);
+        }
+
+        /**
+         * The request was dropped or rejected by an overloaded API.
+         */
+        public void dropped() {
+            complete(Outcome.DROPPED);
+        }
+
+        /**
+         * The outcome tells nothing about the load of the API, e.g. the request was invalid.
+         */
+        public void ignore() {
+            complete(Outcome.IGNORED);
+        }
+
+        private void complete(Outcome outcome) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            limit.release(outcome, ticker.read() - started);
+        }
+    }
+
+    private enum Outcome {
+        SUCCESS, DROPPED, IGNORED
+    }
+
+    private final class Limit {
+        private final Endpoint endpoint;
+        private final Lock lock = new ReentrantLock();
+        private final Condition released = lock.newCondition();
+        private volatile double limit;
+        private volatile int inFlight;
+        private int queued;
+        private double shortRtt;
+        private double longRtt;
+
+        private Limit(Endpoint endpoint, int initialLimit) {
+            this.endpoint = endpoint;
+            this.limit = initialLimit;
+        }
+
+        private Permit acquire() {
+            lock.lock();
+            try {
+                if (inFlight >= (int) limit) {
+                    if (queued >= maxQueueSize) {
+                        throw new KrakenIoConcurrencyLimitException("Concurrency limit of " + endpoint.getPath() + " reached and queue full", endpoint);
+                    }
+
+                    queued++;
+                    try {
+                        long remainingNanos = maxWaitNanos;
+                        while (inFlight >= (int) limit) {
+                            if (remainingNanos <= 0) {
+                                throw new KrakenIoConcurrencyLimitException("Timed out waiting for concurrency limit of " + endpoint.getPath(), endpoint);
+                            }
+                            remainingNanos = released.awaitNanos(remainingNanos);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new KrakenIoException("Interrupted while waiting for concurrency limit", e);
+                    } finally {
+                        queued--;
+                    }
+                }
+
+                inFlight++;
+                return new Permit(this, ticker.read());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(Outcome outcome, long rttNanos) {
+            final int previousLimit;
+            final int newLimit;
+            lock.lock();
+            try {
+                previousLimit = (int) limit;
+                if (outcome == Outcome.DROPPED) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                } else if (outcome == Outcome.SUCCESS && !attemptsSampled) {
+                    sample(rttNanos);
+                }
+                inFlight--;
+                newLimit = (int) limit;
+                if (newLimit > previousLimit) {
+                    released.signalAll();
+                } else {
+                    released.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (newLimit != previousLimit) {
+                metrics.concurrencyLimitChanged(endpoint, newLimit);
+            }
+        }
+
+        private void attemptCompleted(long rttNanos) {
+            final int previousLimit;
+            final int newLimit;
+            lock.lock();
+            try {
+                previousLimit = (int) limit;
+                sample(rttNanos);
+                newLimit = (int) limit;
+                if (newLimit > previousLimit) {
+                    released.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (newLimit != previousLimit) {
+                metrics.concurrencyLimitChanged(endpoint, newLimit);
+            }
+        }
+
+        private void sample(long rttNanos) {
+            final double rtt = Math.max(1, rttNanos);
+            if (shortRtt == 0) {
+                shortRtt = rtt;
+                longRtt = rtt;
+            } else {
+                shortRtt += (rtt - shortRtt) * SHORT_RTT_ALPHA;
+                longRtt += (rtt - longRtt) * LONG_RTT_ALPHA;
+            }
+            // Latency dropped far below the long term average, let it recover faster than the average would
+            if (longRtt / shortRtt > 2) {
+                longRtt *= 0.95;
+            }
+            // Requests in flight including this one, below half of the limit the limit is not what holds back
+            if (inFlight * 2 < limit) {
+                return;
+            }
+
+            final double gradient = Math.max(0.5, Math.min(1, rttTolerance * longRtt / shortRtt));
+            final double estimate = limit * gradient + Math.sqrt(limit);
+            limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + estimate * smoothing));
+        }
+    }
+
+    private final class ClientMetrics implements KrakenIoMetrics {
+
+        @Override
+        public void requestStarted(Endpoint endpoint) {
+            metrics.requestStarted(endpoint);
+        }
+
+        @Override
+        public void requestCompleted(Endpoint endpoint, int status, RequestTimings requestTimings, long uploadedBytes) {
+            metrics.requestCompleted(endpoint, status, requestTimings, uploadedBytes);
+            // Only answers of a healthy API are latency samples, overload is handled by the permits
+            if (status >= 200 && status < 300) {
+                attemptsSampled = true;
+                limit(endpoint).attemptCompleted(requestTimings.getTotalNanos());
+            }
+        }
+
+        @Override
+        public void requestFailed(Endpoint endpoint, Throwable throwable) {
+            metrics.requestFailed(endpoint, throwable);
+        }
+
+        @Override
+        public void bytesSaved(Endpoint endpoint, long savedBytes) {
+            metrics.bytesSaved(endpoint, savedBytes);
+        }
+
+        @Override
+        public void requestRejected(Endpoint endpoint) {
+            metrics.requestRejected(endpoint);
+        }
+
+        @Override
+        public void circuitStateChanged(Endpoint endpoint, CircuitState from, CircuitState to) {
+            metrics.circuitStateChanged(endpoint, from, to);
+        }
+
+        @Override
+        public void concurrencyLimitChanged(Endpoint endpoint, int limit) {
+            metrics.concurrencyLimitChanged(endpoint, limit);
+        }
+
+        @Override
+        public void requestHedged(Endpoint endpoint) {
+            metrics.requestHedged(endpoint);
+        }
+
+        @Override
+        public void deadlineExceeded(Endpoint endpoint) {
+            metrics.deadlineExceeded(endpoint);
+        }
+    }
+}
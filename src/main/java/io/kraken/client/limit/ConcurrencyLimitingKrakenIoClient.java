@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.limit;
+
+import io.kraken.client.KrakenIoClient;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.model.request.*;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+import javax.ws.rs.ProcessingException;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link KrakenIoClient} decorator passing every request through an {@link AdaptiveConcurrencyLimiter}. Configure
+ * {@link AdaptiveConcurrencyLimiter#getClientMetrics()} as the metrics of the decorated client to sample the round-trip
+ * time of every attempt, otherwise the whole call including retries and rate limiter waits is taken. Responses with
+ * status 5xx or 429 and requests without response count as dropped. Other failures, e.g. client errors, exceeded
+ * deadlines, open circuits or invalid images, tell nothing about the load of the API and do not affect the limit.
+ * <p>
+ * With a {@link io.kraken.client.batch.KrakenIoBatch} on top, configure the batch concurrency to the maximum limit and
+ * let the limiter decide how many uploads are actually in flight.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class ConcurrencyLimitingKrakenIoClient implements KrakenIoClient {
+
+    private final KrakenIoClient krakenIoClient;
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitingKrakenIoClient(KrakenIoClient krakenIoClient, AdaptiveConcurrencyLimiter limiter) {
+        checkNotNull(krakenIoClient, "krakenIoClient must not be null");
+        checkNotNull(limiter, "limiter must not be null");
+
+        this.krakenIoClient = krakenIoClient;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public SuccessfulUploadResponse directUpload(DirectUploadRequest directUploadRequest) {
+        return limit(Endpoint.UPLOAD, () -> krakenIoClient.directUpload(directUploadRequest));
+    }
+
+    @Override
+    public SuccessfulUploadResponse directUpload(DirectFileUploadRequest directFileUploadRequest) {
+        return limit(Endpoint.UPLOAD, () -> krakenIoClient.directUpload(directFileUploadRequest));
+    }
+
+    @Override
+    public SuccessfulUploadResponse imageUrlUpload(ImageUrlUploadRequest imageUrlUploadRequest) {
+        return limit(Endpoint.URL, () -> krakenIoClient.imageUrlUpload(imageUrlUploadRequest));
+    }
+
+    @Override
+    public SuccessfulUploadCallbackUrlResponse directUpload(DirectUploadCallbackUrlRequest directUploadCallbackUrlRequest) {
+        return limit(Endpoint.UPLOAD, () -> krakenIoClient.directUpload(directUploadCallbackUrlRequest));
+    }
+
+    @Override
+    public SuccessfulUploadCallbackUrlResponse directUpload(DirectFileUploadCallbackUrlRequest directFileUploadCallbackUrlRequest) {
+        return limit(Endpoint.UPLOAD, () -> krakenIoClient.directUpload(directFileUploadCallbackUrlRequest));
+    }
+
+    @Override
+    public SuccessfulUploadCallbackUrlResponse imageUrlUpload(ImageUrlUploadCallbackUrlRequest imageUrlUploadCallbackUrlRequest) {
+        return limit(Endpoint.URL, () -> krakenIoClient.imageUrlUpload(imageUrlUploadCallbackUrlRequest));
+    }
+
+    private <T> T limit(Endpoint endpoint, Supplier<T> request) {
+        final AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(endpoint);
+        try {
+            final T result = request.get();
+            permit.success();
+            return result;
+        } catch (KrakenIoRequestException e) {
+            final Integer status = e.getFailedUploadResponse() != null ? e.getFailedUploadResponse().getStatus() : null;
+            if (status != null && (status >= 500 || status == 429)) {
+                permit.dropped();
+            } else {
+                permit.ignore();
+            }
+            throw e;
+        } catch (ProcessingException e) {
+            // No response, e.g. a refused connection or a read timeout of the client
+            permit.dropped();
+            throw e;
+        } finally {
+            permit.ignore();
+        }
+    }
+}
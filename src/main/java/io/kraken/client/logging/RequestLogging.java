@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.logging;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decides which requests are logged and where. Every attempt of a request is one line of {@code key=value} pairs:
+ * endpoint, status, duration and optionally the JSON of the request options and of the response. Image bytes and API
+ * credentials are never logged. A request is logged if it is sampled, one in {@code sampleRate}, or slower than the
+ * {@code slowRequestThreshold}. The client does no logging work at all without a {@code RequestLogging} or while the
+ * logger is not enabled for the level.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class RequestLogging {
+
+    private final Logger logger;
+    private final Level level;
+    private final int sampleRate;
+    private final long slowRequestThreshold;
+    private final boolean payloads;
+
+    private RequestLogging(Logger logger, Level level, int sampleRate, long slowRequestThreshold, boolean payloads) {
+        checkNotNull(logger, "logger must not be null");
+        checkNotNull(level, "level must not be null");
+        checkArgument(sampleRate >= 0, "sampleRate must not be negative");
+        checkArgument(slowRequestThreshold >= 0, "slowRequestThreshold must not be negative");
+
+        this.logger = logger;
+        this.level = level;
+        this.sampleRate = sampleRate;
+        this.slowRequestThreshold = slowRequestThreshold;
+        this.payloads = payloads;
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * One in this many requests is logged, 1 logs every request and 0 only slow requests.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Requests taking at least this many milliseconds are logged regardless of sampling, 0 disables it.
+     */
+    public long getSlowRequestThreshold() {
+        return slowRequestThreshold;
+    }
+
+    /**
+     * Whether the JSON of the request options and of the response is logged.
+     */
+    public boolean isPayloads() {
+        return payloads;
+    }
+
+    /**
+     * @param durationNanos duration of the attempt
+     * @return whether the attempt is to be logged, drawing its sample
+     */
+    public boolean isLogged(long durationNanos) {
+        if (!logger.isLoggable(level)) {
+            return false;
+        }
+        if (isSlow(durationNanos)) {
+            return true;
+        }
+        return sampleRate == 1 || (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) == 0);
+    }
+
+    /**
+     * @return whether the given duration is at least the slow request threshold
+     */
+    public boolean isSlow(long durationNanos) {
+        return slowRequestThreshold > 0 && durationNanos >= TimeUnit.MILLISECONDS.toNanos(slowRequestThreshold);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Logger logger = Logger.getLogger(RequestLogging.class.getCanonicalName());
+        private Level level = Level.INFO;
+        private int sampleRate = 1;
+        private long slowRequestThreshold;
+        private boolean payloads = true;
+
+        private Builder() {
+        }
+
+        public Builder withLogger(Logger logger) {
+            this.logger = logger;
+            return this;
+        }
+
+        public Builder withLevel(Level level) {
+            this.level = level;
+            return this;
+        }
+
+        public Builder withSampleRate(int sampleRate) {
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        public Builder withSlowRequestThreshold(long slowRequestThreshold, TimeUnit unit) {
+            checkNotNull(unit, "unit must not be null");
+            this.slowRequestThreshold = unit.toMillis(slowRequestThreshold);
+            return this;
+        }
+
+        public Builder withPayloads(boolean payloads) {
+            this.payloads = payloads;
+            return this;
+        }
+
+        public RequestLogging build() {
+            return new RequestLogging(logger, level, sampleRate, slowRequestThreshold, payloads);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.metrics;
+
+import io.kraken.client.circuitbreaker.CircuitState;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link KrakenIoMetrics} recording the phase durations per endpoint in HdrHistograms with microsecond resolution.
+ * Recording is wait-free, counters are {@link LongAdder}s, so the request threads never contend on a lock.
+ * Histograms returned by {@link #getHistogram(Endpoint, Phase)} are snapshots.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class HdrHistogramKrakenIoMetrics implements KrakenIoMetrics {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<Endpoint, EndpointMetrics> endpointMetrics = new EnumMap<Endpoint, EndpointMetrics>(Endpoint.class);
+
+    public HdrHistogramKrakenIoMetrics() {
+        for (Endpoint endpoint : Endpoint.values()) {
+            endpointMetrics.put(endpoint, new EndpointMetrics());
+        }
+    }
+
+    @Override
+    public void requestStarted(Endpoint endpoint) {
+        metrics(endpoint).inFlight.increment();
+    }
+
+    @Override
+    public void requestCompleted(Endpoint endpoint, int status, RequestTimings requestTimings, long uploadedBytes) {
+        final EndpointMetrics metrics = metrics(endpoint);
+        metrics.inFlight.decrement();
+        metrics.uploadedBytes.add(uploadedBytes);
+        for (Phase phase : Phase.values()) {
+            final long nanos = requestTimings.getNanos(phase);
+            if (nanos > 0 || phase == Phase.TOTAL) {
+                metrics.histograms.get(phase).recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+            }
+        }
+
+        if (status != 200) {
+            LongAdder errors = metrics.errors.get(status);
+            if (errors == null) {
+                final LongAdder newErrors = new LongAdder();
+                errors = metrics.errors.putIfAbsent(status, newErrors);
+                if (errors == null) {
+                    errors = newErrors;
+                }
+            }
+            errors.increment();
+        }
+    }
+
+    @Override
+    public void requestFailed(Endpoint endpoint, Throwable throwable) {
+        final EndpointMetrics metrics = metrics(endpoint);
+        metrics.inFlight.decrement();
+        metrics.failures.increment();
+    }
+
+    @Override
+    public void bytesSaved(Endpoint endpoint, long savedBytes) {
+        metrics(endpoint).savedBytes.add(savedBytes);
+    }
+
+    @Override
+    public void requestRejected(Endpoint endpoint) {
+        metrics(endpoint).rejected.increment();
+    }
+
+    @Override
+    public void circuitStateChanged(Endpoint endpoint, CircuitState from, CircuitState to) {
+        metrics(endpoint).circuitState = to;
+    }
+
+    @Override
+    public void concurrencyLimitChanged(Endpoint endpoint, int limit) {
+        metrics(endpoint).concurrencyLimit = limit;
+    }
+
+    @Override
+    public void requestHedged(Endpoint endpoint) {
+        metrics(endpoint).hedged.increment();
+    }
+
+    @Override
+    public void deadlineExceeded(Endpoint endpoint) {
+        metrics(endpoint).deadlineExceeded.increment();
+    }
+
+    /**
+     * @return snapshot of the durations of the phase in microseconds
+     */
+    public Histogram getHistogram(Endpoint endpoint, Phase phase) {
+        checkNotNull(phase, "phase must not be null");
+        return metrics(endpoint).histograms.get(phase).copy();
+    }
+
+    /**
+     * @return number of requests currently waiting for a response
+     */
+    public long getInFlight(Endpoint endpoint) {
+        return metrics(endpoint).inFlight.sum();
+    }
+
+    public long getUploadedBytes(Endpoint endpoint) {
+        return metrics(endpoint).uploadedBytes.sum();
+    }
+
+    public long getSavedBytes(Endpoint endpoint) {
+        return metrics(endpoint).savedBytes.sum();
+    }
+
+    /**
+     * @return number of responses per HTTP status other than 200
+     */
+    public Map<Integer, Long> getErrorCounts(Endpoint endpoint) {
+        final Map<Integer, Long> errorCounts = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, LongAdder> entry : metrics(endpoint).errors.entrySet()) {
+            errorCounts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return errorCounts;
+    }
+
+    /**
+     * @return number of requests which did not receive a response
+     */
+    public long getFailureCount(Endpoint endpoint) {
+        return metrics(endpoint).failures.sum();
+    }
+
+    /**
+     * @return number of requests which failed fast because the circuit was open
+     */
+    public long getRejectedCount(Endpoint endpoint) {
+        return metrics(endpoint).rejected.sum();
+    }
+
+    /**
+     * @return last reported state of the circuit, closed if no circuit breaker is configured
+     */
+    public CircuitState getCircuitState(Endpoint endpoint) {
+        return metrics(endpoint).circuitState;
+    }
+
+    /**
+     * @return last reported adaptive concurrency limit, 0 if no limiter reports to these metrics
+     */
+    public int getConcurrencyLimit(Endpoint endpoint) {
+        return metrics(endpoint).concurrencyLimit;
+    }
+
+    /**
+     * @return number of hedges sent for slow requests
+     */
+    public long getHedgedCount(Endpoint endpoint) {
+        return metrics(endpoint).hedged.sum();
+    }
+
+    /**
+     * @return number of requests which ran out of their deadline
+     */
+    public long getDeadlineExceededCount(Endpoint endpoint) {
+        return metrics(endpoint).deadlineExceeded.sum();
+    }
+
+    private EndpointMetrics metrics(Endpoint endpoint) {
+        checkNotNull(endpoint, "endpoint must not be null");
+        return endpointMetrics.get(endpoint);
+    }
+
+    private static final class EndpointMetrics {
+        private final Map<Phase, Histogram> histograms = new EnumMap<Phase, Histogram>(Phase.class);
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder uploadedBytes = new LongAdder();
+        private final LongAdder savedBytes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder hedged = new LongAdder();
+        private final LongAdder deadlineExceeded = new LongAdder();
+        private volatile CircuitState circuitState = CircuitState.CLOSED;
+        private volatile int concurrencyLimit;
+        private final ConcurrentMap<Integer, LongAdder> errors = new ConcurrentHashMap<Integer, LongAdder>();
+
+        private EndpointMetrics() {
+            for (Phase phase : Phase.values()) {
+                histograms.put(phase, new ConcurrentHistogram(SIGNIFICANT_DIGITS));
+            }
+        }
+    }
+}
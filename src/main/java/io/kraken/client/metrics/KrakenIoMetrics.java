@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.metrics;
+
+import io.kraken.client.circuitbreaker.CircuitState;
+
+/**
+ * Instrumentation hook of the Kraken.io clients, called for every attempt of a request. Implementations are called
+ * from the request threads and must be thread safe and fast, e.g. {@link HdrHistogramKrakenIoMetrics}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public interface KrakenIoMetrics {
+
+    /**
+     * A request is about to be sent.
+     */
+    void requestStarted(Endpoint endpoint);
+
+    /**
+     * A response was received, {@code status} is the HTTP status, anything but 200 is a failed request.
+     *
+     * @param uploadedBytes size of the request body written
+     */
+    void requestCompleted(Endpoint endpoint, int status, RequestTimings requestTimings, long uploadedBytes);
+
+    /**
+     * No response was received, e.g. due to an I/O error.
+     */
+    void requestFailed(Endpoint endpoint, Throwable throwable);
+
+    /**
+     * A request was optimized successfully, saving the given number of bytes.
+     */
+    void bytesSaved(Endpoint endpoint, long savedBytes);
+
+    /**
+     * A request failed fast because the circuit of its endpoint is open.
+     *
+     * @since 1.2.0
+     */
+    default void requestRejected(Endpoint endpoint) {
+    }
+
+    /**
+     * The circuit of the endpoint changed its state.
+     *
+     * @since 1.2.0
+     */
+    default void circuitStateChanged(Endpoint endpoint, CircuitState from, CircuitState to) {
+    }
+
+    /**
+     * The adaptive concurrency limit of the endpoint changed.
+     *
+     * @since 1.2.0
+     */
+    default void concurrencyLimitChanged(Endpoint endpoint, int limit) {
+    }
+
+    /**
+     * A hedge of a slow request was sent to the endpoint.
+     *
+     * @since 1.2.0
+     */
+    default void requestHedged(Endpoint endpoint) {
+    }
+
+    /**
+     * A request to the endpoint ran out of its deadline.
+     *
+     * @since 1.2.0
+     */
+    default void deadlineExceeded(Endpoint endpoint) {
+    }
+
+    /**
+     * @return metrics discarding everything
+     */
+    static KrakenIoMetrics noop() {
+        return NoopKrakenIoMetrics.INSTANCE;
+    }
+}
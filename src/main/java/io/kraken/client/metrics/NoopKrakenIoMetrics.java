@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.metrics;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class NoopKrakenIoMetrics implements KrakenIoMetrics {
+
+    static final NoopKrakenIoMetrics INSTANCE = new NoopKrakenIoMetrics();
+
+    private NoopKrakenIoMetrics() {
+    }
+
+    @Override
+    public void requestStarted(Endpoint endpoint) {
+    }
+
+    @Override
+    public void requestCompleted(Endpoint endpoint, int status, RequestTimings requestTimings, long uploadedBytes) {
+    }
+
+    @Override
+    public void requestFailed(Endpoint endpoint, Throwable throwable) {
+    }
+
+    @Override
+    public void bytesSaved(Endpoint endpoint, long savedBytes) {
+    }
+}
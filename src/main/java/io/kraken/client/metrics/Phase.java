@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.metrics;
+
+/**
+ * Phases of a request timed by {@link KrakenIoMetrics}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public enum Phase {
+
+    /**
+     * From sending the request until the body starts being written: leasing or opening a connection and sending the
+     * request headers.
+     */
+    CONNECT,
+
+    /**
+     * Writing the request body.
+     */
+    UPLOAD,
+
+    /**
+     * From the request body being written until the response headers arrived, i.e. the optimization done by the API.
+     */
+    PROCESSING,
+
+    /**
+     * Reading and unmarshalling the response body.
+     */
+    DESERIALIZATION,
+
+    /**
+     * The whole request.
+     */
+    TOTAL
+}
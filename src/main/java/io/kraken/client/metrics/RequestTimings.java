@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.metrics;
+
+/**
+ * Durations of the {@link Phase}s of one request in nanoseconds. Phases the request did not get to are 0.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public final class RequestTimings {
+
+    private final long connectNanos;
+    private final long uploadNanos;
+    private final long processingNanos;
+    private final long deserializationNanos;
+    private final long totalNanos;
+
+    public RequestTimings(long connectNanos, long uploadNanos, long processingNanos, long deserializationNanos, long totalNanos) {
+        this.connectNanos = connectNanos;
+        this.uploadNanos = uploadNanos;
+        this.processingNanos = processingNanos;
+        this.deserializationNanos = deserializationNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    public long getNanos(Phase phase) {
+        switch (phase) {
+            case CONNECT:
+                return connectNanos;
+            case UPLOAD:
+                return uploadNanos;
+            case PROCESSING:
+                return processingNanos;
+            case DESERIALIZATION:
+                return deserializationNanos;
+            default:
+                return totalNanos;
+        }
+    }
+
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    public long getUploadNanos() {
+        return uploadNanos;
+    }
+
+    public long getProcessingNanos() {
+        return processingNanos;
+    }
+
+    public long getDeserializationNanos() {
+        return deserializationNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestTimings{" +
+                "connectNanos=" + connectNanos +
+                ", uploadNanos=" + uploadNanos +
+                ", processingNanos=" + processingNanos +
+                ", deserializationNanos=" + deserializationNanos +
+                ", totalNanos=" + totalNanos +
+                '}';
+    }
+}
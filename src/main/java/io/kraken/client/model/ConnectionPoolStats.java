@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.model;
+
+/**
+ * Point in time snapshot of the connection pool of a client.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class ConnectionPoolStats {
+
+    private final int leased;
+    private final int pending;
+    private final int available;
+    private final int max;
+
+    public ConnectionPoolStats(int leased, int pending, int available, int max) {
+        this.leased = leased;
+        this.pending = pending;
+        this.available = available;
+        this.max = max;
+    }
+
+    /**
+     * Connections currently executing a request.
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * Requests waiting for a free connection.
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * Idle connections kept alive for reuse.
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolStats{" +
+                "leased=" + leased +
+                ", pending=" + pending +
+                ", available=" + available +
+                ", max=" + max +
+                '}';
+    }
+}
@@ -41,8 +41,9 @@ public abstract class AbstractUploadCallbackUrlRequest extends AbstractUploadReq
                                                AbstractResize resize,
                                                Set<Metadata> preserveMeta,
                                                Convert convert,
-                                               URL callbackUrl) {
-        super(dev, false, webp, lossy, quality, resize, preserveMeta, convert, false);
+                                               URL callbackUrl,
+                                               Long deadline) {
+        super(dev, false, webp, lossy, quality, resize, preserveMeta, convert, false, deadline);
 
         checkNotNull(callbackUrl, "callbackUrl must not be null");
         this.callbackUrl = callbackUrl;
@@ -16,6 +16,7 @@
 package io.kraken.client.model.request;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.kraken.client.model.Convert;
 import io.kraken.client.model.Metadata;
@@ -23,6 +24,7 @@ import io.kraken.client.model.resize.AbstractResize;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -44,6 +46,8 @@ public abstract class AbstractUploadRequest {
     private final Convert convert;
     @JsonProperty("auto_orient")
     private final Boolean autoOrient;
+    @JsonIgnore
+    private final Long deadline;
 
     @JsonCreator
     protected AbstractUploadRequest(Boolean dev,
@@ -54,12 +58,14 @@ public abstract class AbstractUploadRequest {
                                     AbstractResize resize,
                                     Set<Metadata> preserveMeta,
                                     Convert convert,
-                                    Boolean autoOrient) {
+                                    Boolean autoOrient,
+                                    Long deadline) {
         checkNotNull(dev, "dev must not be null");
         checkNotNull(wait, "wait must not be null");
         checkNotNull(lossy, "lossy must not be null");
         checkArgument(quality == null || (quality != null && quality >= 1 && quality <= 100), "quality must be between 1-100");
         checkArgument(lossy != null || (lossy == null && quality == null), "quality can only be set if lossy is set");
+        checkArgument(deadline == null || deadline > 0, "deadline must be greater than 0");
 
         this.dev = dev;
         this.wait = wait;
@@ -70,6 +76,7 @@ public abstract class AbstractUploadRequest {
         this.preserveMeta = preserveMeta;
         this.convert = convert;
         this.autoOrient = autoOrient;
+        this.deadline = deadline;
     }
 
     public Boolean getDev() {
@@ -104,7 +111,20 @@ public abstract class AbstractUploadRequest {
         return convert;
     }
 
-    protected static class Builder<T extends Builder> {
+    public Boolean getAutoOrient() {
+        return autoOrient;
+    }
+
+    /**
+     * @return milliseconds the request may take in total, including all retries, or {@code null} if it is only
+     * bounded by the timeouts of the client
+     * @since 1.2.0
+     */
+    public Long getDeadline() {
+        return deadline;
+    }
+
+    public static class Builder<T extends Builder> {
         protected Boolean dev = false;
         protected Boolean webp = false;
         protected Boolean lossy = false;
@@ -113,6 +133,7 @@ public abstract class AbstractUploadRequest {
         protected Set<Metadata> preserveMeta = new HashSet<Metadata>();
         protected Convert convert;
         protected Boolean autoOrient = false;
+        protected Long deadline;
 
         public T withLossy(boolean lossy) {
             this.lossy = lossy;
@@ -158,5 +179,37 @@ public abstract class AbstractUploadRequest {
         	this.autoOrient = autoOrient;
         	return (T) this;
         }
+
+        /**
+         * Limits the total time of the request, from handing it to the client to its result: connecting, uploading,
+         * waiting for the optimization and all retries. Timeouts of single attempts are shortened to what is left of
+         * the deadline, a request which runs out of time fails with a
+         * {@link io.kraken.client.exception.KrakenIoDeadlineExceededException}.
+         *
+         * @since 1.2.0
+         */
+        public T withDeadline(long deadline, TimeUnit unit) {
+            checkNotNull(unit, "unit must not be null");
+            this.deadline = unit.toMillis(deadline);
+            return (T) this;
+        }
+
+        /**
+         * Copies all optimization options (everything but the image and the callback url) of the given request.
+         */
+        public T withOptionsFrom(AbstractUploadRequest request) {
+            checkNotNull(request, "request must not be null");
+
+            this.dev = request.getDev();
+            this.webp = request.getWebp();
+            this.lossy = request.getLossy();
+            this.quality = request.getQuality();
+            this.resize = request.getResize();
+            this.preserveMeta = request.getPreserveMeta() == null ? new HashSet<Metadata>() : new HashSet<Metadata>(request.getPreserveMeta());
+            this.convert = request.getConvert();
+            this.autoOrient = request.getAutoOrient();
+            this.deadline = request.getDeadline();
+            return (T) this;
+        }
     }
 }
@@ -43,8 +43,9 @@ public class DirectFileUploadCallbackUrlRequest extends AbstractUploadCallbackUr
                                                Set<Metadata> preserveMeta,
                                                Convert convert,
                                                URL callbackUrl,
-                                               File image) {
-        super(dev, webp, lossy, quality, resize, preserveMeta, convert, callbackUrl);
+                                               File image,
+                                               Long deadline) {
+        super(dev, webp, lossy, quality, resize, preserveMeta, convert, callbackUrl, deadline);
 
         checkNotNull(image, "image must not be null");
         this.image = image;
@@ -76,7 +77,8 @@ public class DirectFileUploadCallbackUrlRequest extends AbstractUploadCallbackUr
                     preserveMeta,
                     convert,
                     callbackUrl,
-                    image
+                    image,
+                    deadline
             );
         }
     }
@@ -41,8 +41,9 @@ public class DirectFileUploadRequest extends AbstractUploadRequest {
                                     AbstractResize resize,
                                     Set<Metadata> preserveMeta,
                                     Convert convert,
-                                    File image) {
-        super(dev, true, webp, lossy, quality, resize, preserveMeta, convert, false);
+                                    File image,
+                                    Long deadline) {
+        super(dev, true, webp, lossy, quality, resize, preserveMeta, convert, false, deadline);
 
         checkNotNull(image, "image must not be null");
         this.image = image;
@@ -72,7 +73,8 @@ public class DirectFileUploadRequest extends AbstractUploadRequest {
                     resize,
                     preserveMeta,
                     convert,
-                    image
+                    image,
+                    deadline
             );
         }
     }
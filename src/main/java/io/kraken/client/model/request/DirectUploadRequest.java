@@ -23,6 +23,7 @@ import io.kraken.client.model.resize.AbstractResize;
 import java.io.InputStream;
 import java.util.Set;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -33,6 +34,10 @@ public class DirectUploadRequest extends AbstractUploadRequest {
 
     @JsonIgnore
     private final InputStream image;
+    @JsonIgnore
+    private final boolean streaming;
+    @JsonIgnore
+    private final Long contentLength;
 
     private DirectUploadRequest(Boolean dev,
                                 Boolean webp,
@@ -42,28 +47,77 @@ public class DirectUploadRequest extends AbstractUploadRequest {
                                 Set<Metadata> preserveMeta,
                                 Convert convert,
                                 InputStream image,
-                                Boolean autoOrient) {
-        super(dev, true, webp, lossy, quality, resize, preserveMeta, convert, autoOrient);
+                                Boolean autoOrient,
+                                boolean streaming,
+                                Long contentLength,
+                                Long deadline) {
+        super(dev, true, webp, lossy, quality, resize, preserveMeta, convert, autoOrient, deadline);
 
         checkNotNull(image, "image must not be null");
+        checkArgument(contentLength == null || contentLength >= 0, "contentLength must not be negative");
         this.image = image;
+        this.streaming = streaming;
+        this.contentLength = contentLength;
     }
 
     public InputStream getImage() {
         return image;
     }
 
+    /**
+     * @return {@code true} if the image is sent straight from the stream and never buffered, the request is then
+     * attempted only once
+     * @since 1.2.0
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * @return number of bytes the image stream provides or {@code null} if unknown
+     * @since 1.2.0
+     */
+    public Long getContentLength() {
+        return contentLength;
+    }
+
     public static Builder builder(InputStream image) {
         return new Builder(image);
     }
 
     public static class Builder extends AbstractUploadRequest.Builder<Builder> {
         private final InputStream image;
+        private boolean streaming;
+        private Long contentLength;
 
         private Builder(InputStream image) {
             this.image = image;
         }
 
+        /**
+         * Sends the image straight from the stream without buffering it in memory, even if retries are enabled. Such
+         * a request is not retried.
+         *
+         * @since 1.2.0
+         */
+        public Builder withStreaming(boolean streaming) {
+            this.streaming = streaming;
+            return this;
+        }
+
+        /**
+         * Exact number of bytes the image stream provides, the request is then sent with a {@code Content-Length}
+         * instead of chunked. Streams which are not buffered need it to scale the read timeout of a
+         * {@link io.kraken.client.timeout.TimeoutPolicy} and to be counted by the bytes per second of a
+         * {@link io.kraken.client.ratelimit.RateLimiter}.
+         *
+         * @since 1.2.0
+         */
+        public Builder withContentLength(long contentLength) {
+            this.contentLength = contentLength;
+            return this;
+        }
+
         public DirectUploadRequest build() {
             return new DirectUploadRequest(
                     dev,
@@ -74,7 +128,10 @@ public class DirectUploadRequest extends AbstractUploadRequest {
                     preserveMeta,
                     convert,
                     image,
-                    autoOrient
+                    autoOrient,
+                    streaming,
+                    contentLength,
+                    deadline
             );
         }
     }
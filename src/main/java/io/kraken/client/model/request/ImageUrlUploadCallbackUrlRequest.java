@@ -42,8 +42,9 @@ public class ImageUrlUploadCallbackUrlRequest extends AbstractUploadCallbackUrlR
                                              Set<Metadata> preserveMeta,
                                              Convert convert,
                                              URL callbackUrl,
-                                             URL imageUrl) {
-        super(dev, webp, lossy, quality, resize, preserveMeta, convert, callbackUrl);
+                                             URL imageUrl,
+                                             Long deadline) {
+        super(dev, webp, lossy, quality, resize, preserveMeta, convert, callbackUrl, deadline);
 
         checkNotNull(imageUrl, "imageUrl must not be null");
         this.imageUrl = imageUrl;
@@ -75,7 +76,8 @@ public class ImageUrlUploadCallbackUrlRequest extends AbstractUploadCallbackUrlR
                     preserveMeta,
                     convert,
                     callbackUrl,
-                    imageUrl
+                    imageUrl,
+                    deadline
             );
         }
     }
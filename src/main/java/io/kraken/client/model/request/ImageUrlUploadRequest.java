@@ -42,8 +42,9 @@ public class ImageUrlUploadRequest extends AbstractUploadRequest {
                                   Set<Metadata> preserveMeta,
                                   Convert convert,
                                   URL imageUrl,
-                                  Boolean autoOrient) {
-        super(dev, true, webp, lossy, quality, resize, preserveMeta, convert, autoOrient);
+                                  Boolean autoOrient,
+                                  Long deadline) {
+        super(dev, true, webp, lossy, quality, resize, preserveMeta, convert, autoOrient, deadline);
 
         checkNotNull(imageUrl, "imageUrl must not be null");
         this.imageUrl = imageUrl;
@@ -74,7 +75,8 @@ public class ImageUrlUploadRequest extends AbstractUploadRequest {
                     preserveMeta,
                     convert,
                     imageUrl,
-                    autoOrient
+                    autoOrient,
+                    deadline
             );
         }
     }
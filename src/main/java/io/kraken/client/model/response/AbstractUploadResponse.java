@@ -16,7 +16,6 @@
 package io.kraken.client.model.response;
 
 import com.fasterxml.jackson.annotation.*;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * @author Emir Dizdarevic
@@ -29,14 +28,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 })
 public abstract class AbstractUploadResponse {
 
-    @JsonIgnore
-    protected final ObjectMapper objectMapper = new ObjectMapper();
-
     private final Boolean success;
 
     @JsonIgnore
     private Integer status;
 
+    @JsonIgnore
+    private String id;
+
     @JsonCreator
     protected AbstractUploadResponse(@JsonProperty("success") Boolean success) {
         this.success = success;
@@ -53,4 +52,17 @@ public abstract class AbstractUploadResponse {
     public void setStatus(Integer status) {
         this.status = status;
     }
+
+    /**
+     * Id of the upload, only present on results delivered to a callback url.
+     *
+     * @since 1.2.0
+     */
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
 }
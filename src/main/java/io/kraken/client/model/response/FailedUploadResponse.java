@@ -41,7 +41,7 @@ public class FailedUploadResponse extends AbstractUploadResponse {
     @Override
     public String toString() {
         try {
-            return "AbstractUploadResponse:" + objectMapper.writeValueAsString(this);
+            return "AbstractUploadResponse:" + ResponseJson.write(this);
         } catch (JsonProcessingException e) {
             return "SuccessfulUploadResponse{" +
                     "success='" + getSuccess() + '\'' +
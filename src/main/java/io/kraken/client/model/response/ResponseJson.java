@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.model.response;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * JSON representation used by the {@code toString()} methods of the responses. The writer is immutable and shared, so
+ * responses do not need to carry a mapper of their own.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class ResponseJson {
+
+    private static final ObjectWriter OBJECT_WRITER = new ObjectMapper().writer();
+
+    private ResponseJson() {
+    }
+
+    static String write(Object response) throws JsonProcessingException {
+        return OBJECT_WRITER.writeValueAsString(response);
+    }
+}
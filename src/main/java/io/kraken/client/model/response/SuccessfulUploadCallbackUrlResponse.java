@@ -16,10 +16,8 @@
 package io.kraken.client.model.response;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * @author Emir Dizdarevic
@@ -27,9 +25,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 public class SuccessfulUploadCallbackUrlResponse {
 
-    @JsonIgnore
-    protected final ObjectMapper objectMapper = new ObjectMapper();
-
     private final String id;
 
     @JsonCreator
@@ -44,7 +39,7 @@ public class SuccessfulUploadCallbackUrlResponse {
     @Override
     public String toString() {
         try {
-            return "AbstractUploadResponse:" + objectMapper.writeValueAsString(this);
+            return "AbstractUploadResponse:" + ResponseJson.write(this);
         } catch (JsonProcessingException e) {
             return "SuccessfulUploadCallbackUrlResponse{" +
                     "id='" + id + '\'' +
@@ -16,8 +16,10 @@
 package io.kraken.client.model.response;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.primitives.Ints;
 
 /**
  * @author Emir Dizdarevic
@@ -26,17 +28,29 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 public class SuccessfulUploadResponse extends AbstractUploadResponse {
 
     private final String fileName;
-    private final Integer originalSize;
-    private final Integer krakedSize;
-    private final Integer savedBytes;
+    private final Long originalSize;
+    private final Long krakedSize;
+    private final Long savedBytes;
     private final String krakedUrl;
 
+    public SuccessfulUploadResponse(Boolean success,
+                                    String fileName,
+                                    Integer originalSize,
+                                    Integer krakedSize,
+                                    Integer savedBytes,
+                                    String krakedUrl) {
+        this(success, fileName, toLong(originalSize), toLong(krakedSize), toLong(savedBytes), krakedUrl);
+    }
+
+    /**
+     * @since 1.2.0
+     */
     @JsonCreator
     public SuccessfulUploadResponse(@JsonProperty("success") Boolean success,
                                     @JsonProperty("file_name") String fileName,
-                                    @JsonProperty("original_size") Integer originalSize,
-                                    @JsonProperty("kraked_size") Integer krakedSize,
-                                    @JsonProperty("saved_bytes") Integer savedBytes,
+                                    @JsonProperty("original_size") Long originalSize,
+                                    @JsonProperty("kraked_size") Long krakedSize,
+                                    @JsonProperty("saved_bytes") Long savedBytes,
                                     @JsonProperty("kraked_url") String krakedUrl) {
         super(success);
         this.fileName = fileName;
@@ -50,15 +64,54 @@ public class SuccessfulUploadResponse extends AbstractUploadResponse {
         return fileName;
     }
 
+    /**
+     * @deprecated sizes above {@link Integer#MAX_VALUE} are capped, use {@link #getOriginalSizeLong()}
+     */
+    @Deprecated
+    @JsonIgnore
     public Integer getOriginalSize() {
-        return originalSize;
+        return toInteger(originalSize);
     }
 
+    /**
+     * @deprecated sizes above {@link Integer#MAX_VALUE} are capped, use {@link #getKrakedSizeLong()}
+     */
+    @Deprecated
+    @JsonIgnore
     public Integer getKrakedSize() {
-        return krakedSize;
+        return toInteger(krakedSize);
     }
 
+    /**
+     * @deprecated sizes above {@link Integer#MAX_VALUE} are capped, use {@link #getSavedBytesLong()}
+     */
+    @Deprecated
+    @JsonIgnore
     public Integer getSavedBytes() {
+        return toInteger(savedBytes);
+    }
+
+    /**
+     * @since 1.2.0
+     */
+    @JsonProperty("originalSize")
+    public Long getOriginalSizeLong() {
+        return originalSize;
+    }
+
+    /**
+     * @since 1.2.0
+     */
+    @JsonProperty("krakedSize")
+    public Long getKrakedSizeLong() {
+        return krakedSize;
+    }
+
+    /**
+     * @since 1.2.0
+     */
+    @JsonProperty("savedBytes")
+    public Long getSavedBytesLong() {
         return savedBytes;
     }
 
@@ -69,17 +122,25 @@ public class SuccessfulUploadResponse extends AbstractUploadResponse {
     @Override
     public String toString() {
         try {
-            return "AbstractUploadResponse:" + objectMapper.writeValueAsString(this);
+            return "AbstractUploadResponse:" + ResponseJson.write(this);
         } catch (JsonProcessingException e) {
             return "SuccessfulUploadResponse{" +
                     "success='" + getSuccess() + '\'' +
                     ", status='" + getStatus() + '\'' +
                     ", fileName='" + getFileName() + '\'' +
-                    ", originalSize=" + getOriginalSize() +
-                    ", krakedSize=" + getKrakedSize() +
-                    ", savedBytes=" + getSavedBytes() +
+                    ", originalSize=" + getOriginalSizeLong() +
+                    ", krakedSize=" + getKrakedSizeLong() +
+                    ", savedBytes=" + getSavedBytesLong() +
                     ", krakedUrl='" + getKrakedUrl() + '\'' +
                     '}';
         }
     }
+
+    private static Long toLong(Integer value) {
+        return value == null ? null : value.longValue();
+    }
+
+    private static Integer toInteger(Long value) {
+        return value == null ? null : Ints.saturatedCast(value);
+    }
 }
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.ratelimit;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.kraken.client.exception.KrakenIoException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Token bucket limiting the requests per second and the uploaded bytes per second sent to Kraken.io. Each bucket holds
+ * up to one second worth of tokens, so short bursts pass without delay. A request which finds a bucket empty reserves
+ * the tokens it needs anyway and waits until they would have been refilled, so large uploads are delayed but never
+ * starved. Callers with a deadline use {@link #tryAcquire(long, long, TimeUnit)}, which reserves nothing when the wait
+ * would exceed it.
+ * <p>
+ * A limiter is thread safe and can be shared by any number of clients in one JVM by passing the same instance to their
+ * {@link io.kraken.client.config.KrakenIoClientConfig}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class RateLimiter {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kraken-io-rate-limiter-%d").build()
+    );
+
+    private final Ticker ticker;
+    private final Lock lock = new ReentrantLock();
+    private final Bucket requests;
+    private final Bucket bytes;
+
+    RateLimiter(double requestsPerSecond, long bytesPerSecond, Ticker ticker) {
+        checkArgument(requestsPerSecond >= 0, "requestsPerSecond must not be negative");
+        checkArgument(bytesPerSecond >= 0, "bytesPerSecond must not be negative");
+        checkArgument(requestsPerSecond > 0 || bytesPerSecond > 0, "either requestsPerSecond or bytesPerSecond must be set");
+        checkNotNull(ticker, "ticker must not be null");
+
+        this.ticker = ticker;
+        this.requests = requestsPerSecond > 0 ? new Bucket(requestsPerSecond, Math.max(1, requestsPerSecond), ticker.read()) : null;
+        this.bytes = bytesPerSecond > 0 ? new Bucket(bytesPerSecond, bytesPerSecond, ticker.read()) : null;
+    }
+
+    /**
+     * Blocks until one request uploading the given number of bytes may be sent.
+     */
+    public void acquire(long uploadBytes) {
+        sleep(reserve(uploadBytes));
+    }
+
+    /**
+     * Blocks until one request uploading the given number of bytes may be sent, unless that takes longer than the
+     * timeout. Nothing is reserved then, so a request giving up does not delay the ones after it.
+     *
+     * @return {@code false} without waiting if the request may not be sent within the timeout
+     */
+    public boolean tryAcquire(long uploadBytes, long timeout, TimeUnit timeoutUnit) {
+        final long waitNanos = reserve(uploadBytes, timeoutUnit.toNanos(timeout));
+        if (waitNanos < 0) {
+            return false;
+        }
+        sleep(waitNanos);
+        return true;
+    }
+
+    /**
+     * Non-blocking variant of {@link #acquire(long)}, the returned future completes once the request may be sent.
+     */
+    public CompletableFuture<Void> acquireAsync(long uploadBytes) {
+        return after(reserve(uploadBytes), null);
+    }
+
+    /**
+     * Non-blocking variant of {@link #tryAcquire(long, long, TimeUnit)}, the returned future completes with
+     * {@code true} once the request may be sent or right away with {@code false}.
+     */
+    public CompletableFuture<Boolean> tryAcquireAsync(long uploadBytes, long timeout, TimeUnit timeoutUnit) {
+        final long waitNanos = reserve(uploadBytes, timeoutUnit.toNanos(timeout));
+        return waitNanos < 0 ? CompletableFuture.completedFuture(false) : after(waitNanos, true);
+    }
+
+    /**
+     * @return nanoseconds the caller has to wait before sending the request
+     */
+    long reserve(long uploadBytes) {
+        return reserve(uploadBytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return nanoseconds the caller has to wait before sending the request or -1 if that exceeds the maximum wait,
+     * nothing is reserved in that case
+     */
+    long reserve(long uploadBytes, long maxWaitNanos) {
+        checkArgument(uploadBytes >= 0, "uploadBytes must not be negative");
+
+        lock.lock();
+        try {
+            final long now = ticker.read();
+            long readyAt = now;
+            if (requests != null) {
+                readyAt = Math.max(readyAt, requests.readyAt(now, 1));
+            }
+            if (bytes != null && uploadBytes > 0) {
+                readyAt = Math.max(readyAt, bytes.readyAt(now, uploadBytes));
+            }
+            if (readyAt - now > maxWaitNanos) {
+                return -1;
+            }
+
+            if (requests != null) {
+                requests.reserve(now, 1);
+            }
+            if (bytes != null && uploadBytes > 0) {
+                bytes.reserve(now, uploadBytes);
+            }
+            return readyAt - now;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void sleep(long waitNanos) {
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KrakenIoException("Interrupted while waiting for rate limiter", e);
+            }
+        }
+    }
+
+    private static <T> CompletableFuture<T> after(long waitNanos, final T value) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        if (waitNanos <= 0) {
+            future.complete(value);
+        } else {
+            SCHEDULER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    future.complete(value);
+                }
+            }, waitNanos, TimeUnit.NANOSECONDS);
+        }
+        return future;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private double requestsPerSecond;
+        private long bytesPerSecond;
+
+        private Builder() {
+        }
+
+        public Builder withRequestsPerSecond(double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+            return this;
+        }
+
+        public Builder withBytesPerSecond(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        public RateLimiter build() {
+            return new RateLimiter(requestsPerSecond, bytesPerSecond, Ticker.systemTicker());
+        }
+    }
+
+    private static final class Bucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double stored;
+        private long nextFree;
+
+        private Bucket(double tokensPerSecond, double capacity, long now) {
+            this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.stored = capacity;
+            this.nextFree = now;
+        }
+
+        /**
+         * @return time at which the tokens would be available, without reserving them
+         */
+        private long readyAt(long now, double tokens) {
+            final double available = now > nextFree ? Math.min(capacity, stored + (now - nextFree) * tokensPerNano) : stored;
+            return Math.max(now, nextFree) + (long) Math.ceil((tokens - Math.min(tokens, available)) / tokensPerNano);
+        }
+
+        /**
+         * @return time at which the reserved tokens are available, later reservations queue up behind this one
+         */
+        private long reserve(long now, double tokens) {
+            if (now > nextFree) {
+                stored = Math.min(capacity, stored + (now - nextFree) * tokensPerNano);
+                nextFree = now;
+            }
+
+            final double fromStored = Math.min(tokens, stored);
+            stored -= fromStored;
+            nextFree += (long) Math.ceil((tokens - fromStored) / tokensPerNano);
+            return nextFree;
+        }
+    }
+}
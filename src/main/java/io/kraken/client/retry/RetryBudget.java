@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Caps retries to a fraction of the requests made, so retries cannot multiply the load on the API while it is
+ * struggling. Every request deposits {@code ratio} of a retry into the budget, every retry withdraws a whole one.
+ * The balance is capped at {@code reserve} retries, which is also what is available before any traffic.
+ * <p>
+ * A budget is thread safe and meant to be shared, e.g. by all clients of an application talking to Kraken.io.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long maxBalance;
+    private final AtomicLong balance;
+
+    private RetryBudget(double ratio, int reserve) {
+        checkArgument(ratio >= 0 && ratio <= 1, "ratio must be between 0 and 1");
+        checkArgument(reserve >= 0, "reserve must not be negative");
+
+        this.deposit = Math.round(ratio * SCALE);
+        this.maxBalance = reserve * SCALE;
+        this.balance = new AtomicLong(maxBalance);
+    }
+
+    /**
+     * Records a request, to be called once per request regardless of how many times it is attempted.
+     */
+    public void recordRequest() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= maxBalance) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(maxBalance, current + deposit)));
+    }
+
+    /**
+     * @return {@code true} if a retry may be attempted, the retry is withdrawn from the budget in that case
+     */
+    public boolean tryAcquireRetry() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    /**
+     * @return number of retries currently available
+     */
+    public int getAvailableRetries() {
+        return (int) (balance.get() / SCALE);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private double ratio = 0.1;
+        private int reserve = 10;
+
+        private Builder() {
+        }
+
+        /**
+         * Fraction of the requests which may be retried, e.g. 0.1 allows one retry per ten requests.
+         */
+        public Builder withRatio(double ratio) {
+            this.ratio = ratio;
+            return this;
+        }
+
+        /**
+         * Maximum number of retries which can be saved up.
+         */
+        public Builder withReserve(int reserve) {
+            this.reserve = reserve;
+            return this;
+        }
+
+        public RetryBudget build() {
+            return new RetryBudget(ratio, reserve);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.retry;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.nio.file.FileSystemException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decides whether and when a failed request is attempted again. Uploads are not idempotent, so by default requests are
+ * only retried if the API cannot have processed them: on 429 and 503 responses and on failures to connect or to get a
+ * response on a reused connection. Retrying other 5xx responses and I/O errors after the request was sent, e.g. read
+ * timeouts, has to be enabled with {@link Builder#withNonIdempotentRetries(boolean)}, Kraken.io may have optimized the
+ * image already and a retry is charged again. Uploads with a callback url are never retried, a repeated upload could
+ * call back twice.
+ * <p>
+ * Retries wait with exponential backoff and full jitter: the n-th retry waits a random time between
+ * 0 and {@code min(maxBackoff, initialBackoff * 2^(n-1))}. A {@code Retry-After} given by the API is honoured, if it
+ * asks for a longer wait than {@code maxBackoff} the request is not retried. All retries are drawn from a
+ * {@link RetryBudget}.
+ * <p>
+ * Streamed images ({@link io.kraken.client.model.request.DirectUploadRequest}) are read into memory once when retries
+ * are enabled, so they can be sent again.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class RetryPolicy {
+
+    private static final Set<Integer> UNPROCESSED_STATUSES = ImmutableSet.of(429, 503);
+    private static final Set<Integer> SERVER_ERROR_STATUSES = ImmutableSet.of(500, 502, 504);
+    private static final RetryPolicy DISABLED = builder().withMaxAttempts(1).build();
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final RetryBudget retryBudget;
+    private final boolean nonIdempotentRetries;
+
+    private RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, RetryBudget retryBudget, boolean nonIdempotentRetries) {
+        checkArgument(maxAttempts > 0, "maxAttempts must be greater than 0");
+        checkArgument(initialBackoff >= 0, "initialBackoff must not be negative");
+        checkArgument(maxBackoff >= initialBackoff, "maxBackoff must not be less than initialBackoff");
+        checkNotNull(retryBudget, "retryBudget must not be null");
+
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retryBudget = retryBudget;
+        this.nonIdempotentRetries = nonIdempotentRetries;
+    }
+
+    /**
+     * @return policy which never retries
+     */
+    public static RetryPolicy disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return maxAttempts > 1;
+    }
+
+    /**
+     * Total number of attempts including the first one.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    public boolean isNonIdempotentRetries() {
+        return nonIdempotentRetries;
+    }
+
+    public boolean isRetryable(int status) {
+        return UNPROCESSED_STATUSES.contains(status) || nonIdempotentRetries && SERVER_ERROR_STATUSES.contains(status);
+    }
+
+    /**
+     * Failures to connect and a reused connection closed without response are retryable, other I/O errors only with
+     * non-idempotent retries. I/O errors concerning a local file or an unknown host are never retryable.
+     */
+    public boolean isRetryable(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FileNotFoundException || cause instanceof FileSystemException || cause instanceof UnknownHostException) {
+                return false;
+            }
+            if (cause instanceof ConnectException || cause instanceof ConnectTimeoutException || cause instanceof NoHttpResponseException) {
+                return true;
+            }
+            if (cause instanceof IOException) {
+                return nonIdempotentRetries;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param attempt        number of the attempt which failed, starting at 1
+     * @param retryAfterValue {@code Retry-After} header of the failed attempt, may be {@code null}
+     * @return milliseconds to wait before the next attempt or -1 if the request must not be retried
+     */
+    public long nextBackoff(int attempt, String retryAfterValue) {
+        return nextBackoff(attempt, retryAfterValue, Long.MAX_VALUE);
+    }
+
+    /**
+     * A retry is only taken from the budget if it can start before the request runs out of time.
+     *
+     * @param attempt         number of the attempt which failed, starting at 1
+     * @param retryAfterValue {@code Retry-After} header of the failed attempt, may be {@code null}
+     * @param remainingMillis milliseconds left until the deadline of the request
+     * @return milliseconds to wait before the next attempt or -1 if the request must not be retried
+     */
+    public long nextBackoff(int attempt, String retryAfterValue, long remainingMillis) {
+        if (attempt >= maxAttempts) {
+            return -1;
+        }
+
+        final long retryAfter = parseRetryAfter(retryAfterValue);
+        if (retryAfter > maxBackoff) {
+            return -1;
+        }
+
+        final long ceiling = Math.min(maxBackoff, initialBackoff << Math.min(attempt - 1, 30));
+        final long backoff = Math.max(ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0, retryAfter);
+        if (backoff >= remainingMillis || !retryBudget.tryAcquireRetry()) {
+            return -1;
+        }
+        return backoff;
+    }
+
+    static long parseRetryAfter(String retryAfterValue) {
+        if (retryAfterValue == null || retryAfterValue.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(retryAfterValue.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                final ZonedDateTime retryAt = ZonedDateTime.parse(retryAfterValue.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, retryAt.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int maxAttempts = 3;
+        private long initialBackoff = 200;
+        private long maxBackoff = 10000;
+        private RetryBudget retryBudget;
+        private boolean nonIdempotentRetries;
+
+        private Builder() {
+        }
+
+        public Builder withMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder withInitialBackoff(long initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        public Builder withMaxBackoff(long maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * Budget shared with other policies, by default every policy has a budget of its own.
+         */
+        public Builder withRetryBudget(RetryBudget retryBudget) {
+            this.retryBudget = retryBudget;
+            return this;
+        }
+
+        /**
+         * Also retries 500, 502 and 504 responses and I/O errors after the request was sent, e.g. read timeouts. The API
+         * may have processed such a request already, so an image can be optimized and charged twice. Disabled by default.
+         */
+        public Builder withNonIdempotentRetries(boolean nonIdempotentRetries) {
+            this.nonIdempotentRetries = nonIdempotentRetries;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff, retryBudget != null ? retryBudget : RetryBudget.builder().build(), nonIdempotentRetries);
+        }
+    }
+}
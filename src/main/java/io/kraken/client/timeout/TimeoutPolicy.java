@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.timeout;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Derives the read timeout of a request from the number of bytes it uploads. Kraken.io answers only after it has
+ * received and optimized the whole image, so the time until the first response byte grows with the image size: a
+ * request waits {@code readTimeout + uploadBytes * timePerMegabyte}, at most {@code maxReadTimeout}. Small requests
+ * keep failing fast while large uploads no longer time out while the image is still being processed.
+ * <p>
+ * A deadline set on the request ({@link io.kraken.client.model.request.AbstractUploadRequest.Builder#withDeadline})
+ * caps the derived timeout.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class TimeoutPolicy {
+
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final int readTimeout;
+    private final long timePerMegabyte;
+    private final int maxReadTimeout;
+
+    private TimeoutPolicy(int readTimeout, long timePerMegabyte, int maxReadTimeout) {
+        checkArgument(readTimeout > 0, "readTimeout must be greater than 0");
+        checkArgument(timePerMegabyte >= 0, "timePerMegabyte must not be negative");
+        checkArgument(maxReadTimeout >= readTimeout, "maxReadTimeout must not be less than readTimeout");
+
+        this.readTimeout = readTimeout;
+        this.timePerMegabyte = timePerMegabyte;
+        this.maxReadTimeout = maxReadTimeout;
+    }
+
+    /**
+     * Read timeout of a request without upload body, e.g. an image url upload.
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Milliseconds added to the read timeout per uploaded megabyte.
+     */
+    public long getTimePerMegabyte() {
+        return timePerMegabyte;
+    }
+
+    public int getMaxReadTimeout() {
+        return maxReadTimeout;
+    }
+
+    /**
+     * @param uploadBytes size of the request body, negative if unknown
+     * @return read timeout in milliseconds for a request uploading the given number of bytes, the maximum read
+     * timeout if the size is unknown
+     */
+    public int getReadTimeout(long uploadBytes) {
+        if (uploadBytes < 0) {
+            return maxReadTimeout;
+        }
+        final double extra = (double) uploadBytes * timePerMegabyte / BYTES_PER_MEGABYTE;
+        return (int) Math.min(maxReadTimeout, readTimeout + extra);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int readTimeout = 3000;
+        private long timePerMegabyte = 1000;
+        private int maxReadTimeout = 120000;
+
+        private Builder() {
+        }
+
+        public Builder withReadTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public Builder withTimePerMegabyte(long timePerMegabyte, TimeUnit unit) {
+            checkNotNull(unit, "unit must not be null");
+            this.timePerMegabyte = unit.toMillis(timePerMegabyte);
+            return this;
+        }
+
+        public Builder withMaxReadTimeout(int maxReadTimeout) {
+            this.maxReadTimeout = maxReadTimeout;
+            return this;
+        }
+
+        public TimeoutPolicy build() {
+            return new TimeoutPolicy(readTimeout, timePerMegabyte, maxReadTimeout);
+        }
+    }
+}
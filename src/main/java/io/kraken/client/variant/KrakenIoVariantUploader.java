@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.variant;
+
+import io.kraken.client.AsyncKrakenIoClient;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.model.Metadata;
+import io.kraken.client.model.request.AbstractUploadRequest;
+import io.kraken.client.model.request.DirectFileUploadRequest;
+import io.kraken.client.model.request.DirectUploadRequest;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Produces all {@link Variant}s of a {@link VariantSetRequest} while sending the original only once. The original is
+ * uploaded with lossless optimization and without resizing, every variant is then created concurrently from the
+ * resulting kraked url through the image url endpoint. A set with a single variant is uploaded directly with the
+ * options of that variant.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoVariantUploader {
+
+    private final AsyncKrakenIoClient asyncKrakenIoClient;
+
+    public KrakenIoVariantUploader(AsyncKrakenIoClient asyncKrakenIoClient) {
+        checkNotNull(asyncKrakenIoClient, "asyncKrakenIoClient must not be null");
+        this.asyncKrakenIoClient = asyncKrakenIoClient;
+    }
+
+    /**
+     * Uploads the variants. The result maps the variant ids, in the order the variants were added, to their
+     * results and fails if the original or any of the variants failed.
+     */
+    public CompletableFuture<Map<String, SuccessfulUploadResponse>> upload(VariantSetRequest variantSetRequest) {
+        checkNotNull(variantSetRequest, "variantSetRequest must not be null");
+
+        final List<Variant> variants = variantSetRequest.getVariants();
+        if (variants.size() == 1) {
+            final Variant variant = variants.get(0);
+            return uploadOriginal(variantSetRequest, variant).thenApply(successfulUploadResponse -> {
+                final Map<String, SuccessfulUploadResponse> results = new LinkedHashMap<>();
+                results.put(variant.getId(), successfulUploadResponse);
+                return results;
+            });
+        }
+
+        return uploadOriginal(variantSetRequest, null)
+                .thenCompose(original -> uploadVariants(variantSetRequest, krakedUrl(original)));
+    }
+
+    private CompletableFuture<SuccessfulUploadResponse> uploadOriginal(VariantSetRequest variantSetRequest, Variant variant) {
+        if (variantSetRequest.getImageFile() != null) {
+            final DirectFileUploadRequest.Builder builder = DirectFileUploadRequest.builder(variantSetRequest.getImageFile());
+            return asyncKrakenIoClient.directUpload(options(builder, variantSetRequest, variant).withAutoOrient(variantSetRequest.getAutoOrient()).build());
+        } else {
+            final DirectUploadRequest.Builder builder = DirectUploadRequest.builder(variantSetRequest.getImage());
+            return asyncKrakenIoClient.directUpload(options(builder, variantSetRequest, variant).withAutoOrient(variantSetRequest.getAutoOrient()).build());
+        }
+    }
+
+    private CompletableFuture<Map<String, SuccessfulUploadResponse>> uploadVariants(VariantSetRequest variantSetRequest, URL original) {
+        final List<CompletableFuture<SuccessfulUploadResponse>> uploads = new ArrayList<>();
+        for (Variant variant : variantSetRequest.getVariants()) {
+            // The original was oriented already
+            uploads.add(asyncKrakenIoClient.imageUrlUpload(options(ImageUrlUploadRequest.builder(original), variantSetRequest, variant).build()));
+        }
+
+        return CompletableFuture.allOf(uploads.toArray(new CompletableFuture<?>[uploads.size()])).thenApply(ignored -> {
+            final Map<String, SuccessfulUploadResponse> results = new LinkedHashMap<>();
+            for (int i = 0; i < uploads.size(); i++) {
+                results.put(variantSetRequest.getVariants().get(i).getId(), uploads.get(i).join());
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Applies the options shared by all variants and those of the given variant, none means lossless without resize.
+     */
+    private static <T extends AbstractUploadRequest.Builder<T>> T options(T builder, VariantSetRequest variantSetRequest, Variant variant) {
+        builder.withDev(variantSetRequest.getDev());
+        for (Metadata metadata : variantSetRequest.getPreserveMeta()) {
+            builder.withPreserveMeta(metadata);
+        }
+
+        if (variant != null) {
+            builder.withWebp(variant.getWebp()).withLossy(variant.getLossy()).withResize(variant.getResize()).withConvert(variant.getConvert());
+            if (variant.getQuality() != null) {
+                builder.withQuality(variant.getQuality());
+            }
+        }
+        return builder;
+    }
+
+    private static URL krakedUrl(SuccessfulUploadResponse original) {
+        try {
+            return new URL(original.getKrakedUrl());
+        } catch (MalformedURLException e) {
+            throw new KrakenIoException("Invalid kraked url of the original " + original.getKrakedUrl(), e);
+        }
+    }
+}
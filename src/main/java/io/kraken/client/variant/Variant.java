@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.variant;
+
+import io.kraken.client.model.Convert;
+import io.kraken.client.model.resize.AbstractResize;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * One output of a {@link VariantSetRequest}: the optimization options applied to the original for this variant.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public final class Variant {
+
+    private final String id;
+    private final Boolean webp;
+    private final Boolean lossy;
+    private final Integer quality;
+    private final AbstractResize resize;
+    private final Convert convert;
+
+    private Variant(String id, Boolean webp, Boolean lossy, Integer quality, AbstractResize resize, Convert convert) {
+        checkNotNull(id, "id must not be null");
+        checkArgument(!id.isEmpty(), "id must not be empty");
+
+        this.id = id;
+        this.webp = webp;
+        this.lossy = lossy;
+        this.quality = quality;
+        this.resize = resize;
+        this.convert = convert;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Boolean getWebp() {
+        return webp;
+    }
+
+    public Boolean getLossy() {
+        return lossy;
+    }
+
+    public Integer getQuality() {
+        return quality;
+    }
+
+    public AbstractResize getResize() {
+        return resize;
+    }
+
+    public Convert getConvert() {
+        return convert;
+    }
+
+    public static Builder builder(String id) {
+        return new Builder(id);
+    }
+
+    public static class Builder {
+        private final String id;
+        private Boolean webp = false;
+        private Boolean lossy = false;
+        private Integer quality;
+        private AbstractResize resize;
+        private Convert convert;
+
+        private Builder(String id) {
+            this.id = id;
+        }
+
+        public Builder withWebp(boolean webp) {
+            this.webp = webp;
+            return this;
+        }
+
+        public Builder withLossy(boolean lossy) {
+            this.lossy = lossy;
+            if (!lossy) {
+                this.quality = null;
+            }
+
+            return this;
+        }
+
+        public Builder withQuality(int quality) {
+            this.lossy = true;
+            this.quality = quality;
+            return this;
+        }
+
+        public Builder withResize(AbstractResize resize) {
+            this.resize = resize;
+            return this;
+        }
+
+        public Builder withConvert(Convert convert) {
+            this.convert = convert;
+            return this;
+        }
+
+        public Variant build() {
+            return new Variant(id, webp, lossy, quality, resize, convert);
+        }
+    }
+}
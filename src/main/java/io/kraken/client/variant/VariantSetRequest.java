@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.variant;
+
+import io.kraken.client.model.Metadata;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * One original image and the {@link Variant}s to produce from it. Options set here (sandbox mode, metadata to keep,
+ * auto orientation) apply to all variants.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public final class VariantSetRequest {
+
+    private final File imageFile;
+    private final InputStream image;
+    private final List<Variant> variants;
+    private final Boolean dev;
+    private final Set<Metadata> preserveMeta;
+    private final Boolean autoOrient;
+
+    private VariantSetRequest(File imageFile, InputStream image, List<Variant> variants, Boolean dev, Set<Metadata> preserveMeta, Boolean autoOrient) {
+        checkArgument(imageFile != null || image != null, "image must not be null");
+        checkArgument(!variants.isEmpty(), "at least one variant is required");
+
+        this.imageFile = imageFile;
+        this.image = image;
+        this.variants = Collections.unmodifiableList(new ArrayList<>(variants));
+        this.dev = dev;
+        this.preserveMeta = Collections.unmodifiableSet(new HashSet<>(preserveMeta));
+        this.autoOrient = autoOrient;
+    }
+
+    /**
+     * The original as file, {@code null} if it is given as stream.
+     */
+    public File getImageFile() {
+        return imageFile;
+    }
+
+    /**
+     * The original as stream, {@code null} if it is given as file.
+     */
+    public InputStream getImage() {
+        return image;
+    }
+
+    public List<Variant> getVariants() {
+        return variants;
+    }
+
+    public Boolean getDev() {
+        return dev;
+    }
+
+    public Set<Metadata> getPreserveMeta() {
+        return preserveMeta;
+    }
+
+    public Boolean getAutoOrient() {
+        return autoOrient;
+    }
+
+    public static Builder builder(File image) {
+        checkNotNull(image, "image must not be null");
+        return new Builder(image, null);
+    }
+
+    public static Builder builder(InputStream image) {
+        checkNotNull(image, "image must not be null");
+        return new Builder(null, image);
+    }
+
+    public static class Builder {
+        private final File imageFile;
+        private final InputStream image;
+        private final Map<String, Variant> variants = new LinkedHashMap<>();
+        private Boolean dev = false;
+        private Set<Metadata> preserveMeta = new HashSet<>();
+        private Boolean autoOrient = false;
+
+        private Builder(File imageFile, InputStream image) {
+            this.imageFile = imageFile;
+            this.image = image;
+        }
+
+        public Builder withVariant(Variant variant) {
+            checkNotNull(variant, "variant must not be null");
+            checkArgument(!variants.containsKey(variant.getId()), "duplicate variant id %s", variant.getId());
+
+            variants.put(variant.getId(), variant);
+            return this;
+        }
+
+        public Builder withDev(boolean dev) {
+            this.dev = dev;
+            return this;
+        }
+
+        public Builder withPreserveMeta(Metadata metadata) {
+            preserveMeta.add(metadata);
+            return this;
+        }
+
+        public Builder withAutoOrient(boolean autoOrient) {
+            this.autoOrient = autoOrient;
+            return this;
+        }
+
+        public VariantSetRequest build() {
+            return new VariantSetRequest(imageFile, image, new ArrayList<>(variants.values()), dev, preserveMeta, autoOrient);
+        }
+    }
+}
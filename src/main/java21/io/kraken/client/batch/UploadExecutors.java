@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Java 21 variant of the executors running blocking {@link io.kraken.client.KrakenIoClient} calls, starting a virtual
+ * thread per upload. The request path does not block in {@code synchronized} blocks, so an upload waiting for its
+ * connection or response unmounts from its carrier thread.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public final class UploadExecutors {
+
+    private UploadExecutors() {
+    }
+
+    /**
+     * @return {@code true} if {@link #newPerUploadExecutor()} runs uploads on virtual threads
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread per upload. The number of concurrent uploads is not bounded by
+     * the executor, callers bound it e.g. through {@link KrakenIoBatch.Builder#withConcurrency(int)}.
+     */
+    public static ExecutorService newPerUploadExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("kraken-io-upload-", 0).factory());
+    }
+}
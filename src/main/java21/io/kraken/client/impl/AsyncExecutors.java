@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Java 21 variant of the executors running the requests of {@link DefaultAsyncKrakenIoClient}, starting a virtual
+ * thread per request. A request waiting for a pooled connection or its response only parks its virtual thread, so
+ * thousands of requests in flight share the few carrier threads.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+final class AsyncExecutors {
+
+    private AsyncExecutors() {
+    }
+
+    /**
+     * @return {@code true} if {@link #newRequestExecutor(int)} runs requests on virtual threads
+     */
+    static boolean isVirtualThreadsSupported() {
+        return true;
+    }
+
+    /**
+     * @param maxThreads ignored, virtual threads are not pooled
+     */
+    static ExecutorService newRequestExecutor(int maxThreads) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("kraken-io-async-", 0).factory());
+    }
+}
@@ -15,15 +15,19 @@
  */
 package io.kraken.client;
 
+import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.mockserver.client.server.MockServerClient;
 import org.mockserver.integration.ClientAndServer;
 
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
+import static org.mockserver.model.HttpRequest.request;
+
 /**
  * @author Emir Dizdarevic
  * @since 1.0.0
@@ -42,6 +46,11 @@ public abstract class AbstractFunctionalTest {
         mockServerClient = ClientAndServer.startClientAndServer(1080);
     }
 
+    @AfterClass
+    public static final void destroyClass() throws Exception {
+        mockServerClient.stop();
+    }
+
     @Before
     public final void init() throws Exception {
         mockServerClient.reset();
@@ -50,4 +59,15 @@ public abstract class AbstractFunctionalTest {
     public MockServerClient getMockServerClient() {
         return mockServerClient;
     }
+
+    /**
+     * Waits until MockServer logged the given number of requests to the path. Requests answered with a delay are
+     * logged only once answered, after a client gave up on them they would otherwise show up in the next test.
+     */
+    protected void awaitRequests(String path, int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mockServerClient.retrieveAsExpectations(request().withPath(path)).length < count && System.nanoTime() - deadline < 0) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+    }
 }
@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client;
+
+import com.google.common.base.Ticker;
+
+/**
+ * {@link Ticker} which only moves when advanced by the test.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class ManualTicker extends Ticker {
+    private long nanos;
+
+    @Override
+    public long read() {
+        return nanos;
+    }
+
+    public void advance(long nanos) {
+        this.nanos += nanos;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import io.kraken.client.AbstractFunctionalTest;
+import io.kraken.client.config.KrakenIoClientConfig;
+import io.kraken.client.impl.DefaultKrakenIoClient;
+import io.kraken.client.impl.DefaultKrakenIoClientFunctionalTest;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.metrics.KrakenIoMetrics;
+import io.kraken.client.metrics.RequestTimings;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockserver.model.Header;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockserver.model.HttpRequest.request;
+import static org.mockserver.model.HttpResponse.response;
+
+/**
+ * Runs batches through a real client against MockServer. On Java 21 and later the failsafe run of the {@code java21}
+ * profile tests the multi-release jar, so {@link UploadExecutors} is its virtual thread variant there.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoBatchFunctionalTest extends AbstractFunctionalTest {
+
+    private final Set<Thread> uploadThreads = ConcurrentHashMap.newKeySet();
+
+    private DefaultKrakenIoClient krakenIoClient;
+
+    @Before
+    public void setUp() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(Resources.toString(Resources.getResource(DefaultKrakenIoClientFunctionalTest.class, "krakenIoResponse200.json"), Charsets.UTF_8))
+                );
+
+        final KrakenIoClientConfig krakenIoClientConfig = KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withMetrics(new ThreadRecordingMetrics())
+                .build();
+        krakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", krakenIoClientConfig);
+    }
+
+    @After
+    public void tearDown() {
+        krakenIoClient.close();
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        final List<ImageUrlUploadRequest> requests = new ArrayList<ImageUrlUploadRequest>();
+        for (int i = 0; i < 50; i++) {
+            requests.add(ImageUrlUploadRequest.builder(new URL("http://somehost/image" + i + ".jpg")).build());
+        }
+
+        final BatchSummary batchSummary = KrakenIoBatch.builder(krakenIoClient)
+                .withConcurrency(10)
+                .withVirtualThreads(true)
+                .build()
+                .submitAll(requests, batchItemResult -> {
+                });
+
+        assertThat(batchSummary.getSucceeded(), is(50L));
+        assertThat(batchSummary.getFailed(), is(0L));
+        assertThat(uploadThreads, not(empty()));
+        for (Thread uploadThread : uploadThreads) {
+            assertThat(uploadThread.getName(), startsWith("kraken-io-upload-"));
+            assertThat(isVirtual(uploadThread), is(UploadExecutors.isVirtualThreadsSupported()));
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private final class ThreadRecordingMetrics implements KrakenIoMetrics {
+
+        @Override
+        public void requestStarted(Endpoint endpoint) {
+            uploadThreads.add(Thread.currentThread());
+        }
+
+        @Override
+        public void requestCompleted(Endpoint endpoint, int status, RequestTimings requestTimings, long uploadedBytes) {
+        }
+
+        @Override
+        public void requestFailed(Endpoint endpoint, Throwable throwable) {
+        }
+
+        @Override
+        public void bytesSaved(Endpoint endpoint, long savedBytes) {
+        }
+    }
+}
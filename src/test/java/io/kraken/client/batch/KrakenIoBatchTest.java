@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+import io.kraken.client.KrakenIoClient;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.model.request.AbstractUploadRequest;
+import io.kraken.client.model.request.ImageUrlUploadCallbackUrlRequest;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import io.kraken.client.model.response.FailedUploadResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoBatchTest {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final List<BatchItemResult> results = Collections.synchronizedList(new ArrayList<BatchItemResult>());
+    private final BatchListener listener = results::add;
+
+    private KrakenIoClient krakenIoClient;
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() throws Exception {
+        krakenIoClient = mock(KrakenIoClient.class);
+        when(krakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenAnswer(invocation -> {
+            final int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(20);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            final String image = ((ImageUrlUploadRequest) invocation.getArgument(0)).getImageUrl().getPath();
+            if (image.startsWith("/fail")) {
+                throw new KrakenIoRequestException("Kraken.io request failed", new FailedUploadResponse(false, "error"));
+            }
+            return new SuccessfulUploadResponse(true, "image.jpg", 100L, 60L, 40L, "http://dl.kraken.io" + image);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUploadsBoundedByConcurrency() throws Exception {
+        final BatchSummary batchSummary = KrakenIoBatch.builder(krakenIoClient).withConcurrency(3).build().submitAll(requests("image", 20), listener);
+
+        assertThat(maxInFlight.get(), is(3));
+        assertThat(results, hasSize(20));
+        assertThat(batchSummary.getSucceeded(), is(20L));
+    }
+
+    @Test
+    public void testResultPerItem() throws Exception {
+        final List<AbstractUploadRequest> requests = new ArrayList<AbstractUploadRequest>();
+        requests.addAll(requests("image", 3));
+        requests.addAll(requests("fail", 1));
+        requests.add(ImageUrlUploadCallbackUrlRequest.builder(new URL("http://somehost/callback.jpg"), new URL("http://somehost/callback")).build());
+
+        final BatchSummary batchSummary = KrakenIoBatch.builder(krakenIoClient).withConcurrency(2).build().submitAll(requests, listener);
+
+        assertThat(results, hasSize(5));
+        final List<AbstractUploadRequest> reported = new ArrayList<AbstractUploadRequest>();
+        for (BatchItemResult batchItemResult : results) {
+            reported.add(batchItemResult.getRequest());
+            if (batchItemResult.getRequest() instanceof ImageUrlUploadCallbackUrlRequest) {
+                assertThat(batchItemResult.isSuccessful(), is(false));
+                assertThat(batchItemResult.getException(), instanceOf(IllegalArgumentException.class));
+            } else if (((ImageUrlUploadRequest) batchItemResult.getRequest()).getImageUrl().getPath().startsWith("/fail")) {
+                assertThat(batchItemResult.isSuccessful(), is(false));
+                assertThat(batchItemResult.getFailedUploadResponse().getMessage(), is("error"));
+            } else {
+                assertThat(batchItemResult.isSuccessful(), is(true));
+            }
+        }
+        assertThat(reported, containsInAnyOrder(requests.toArray()));
+
+        assertThat(batchSummary.getTotal(), is(5L));
+        assertThat(batchSummary.getSucceeded(), is(3L));
+        assertThat(batchSummary.getFailed(), is(2L));
+        assertThat(batchSummary.getOriginalBytes(), is(300L));
+        assertThat(batchSummary.getKrakedBytes(), is(180L));
+        assertThat(batchSummary.getSavedBytes(), is(120L));
+    }
+
+    @Test
+    public void testSourceFailureAwaitsUploadsInFlight() throws Exception {
+        final List<ImageUrlUploadRequest> requests = requests("image", 3);
+        final Iterable<ImageUrlUploadRequest> failingSource = () -> new Iterator<ImageUrlUploadRequest>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public ImageUrlUploadRequest next() {
+                if (next == requests.size()) {
+                    throw new IllegalStateException("source failed");
+                }
+                return requests.get(next++);
+            }
+        };
+
+        try {
+            KrakenIoBatch.builder(krakenIoClient).withConcurrency(5).build().submitAll(failingSource, listener);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(results, hasSize(3));
+            assertThat(inFlight.get(), is(0));
+        }
+    }
+
+    @Test
+    public void testRejectedUploadAwaitsUploadsInFlight() throws Exception {
+        executorService = Executors.newCachedThreadPool();
+        final AtomicInteger accepted = new AtomicInteger();
+        final ExecutorService rejectingExecutorService = mock(ExecutorService.class);
+        doAnswer(invocation -> {
+            if (accepted.incrementAndGet() > 2) {
+                throw new RejectedExecutionException("full");
+            }
+            executorService.execute(invocation.getArgument(0));
+            return null;
+        }).when(rejectingExecutorService).execute(any(Runnable.class));
+
+        try {
+            KrakenIoBatch.builder(krakenIoClient).withConcurrency(5).withExecutorService(rejectingExecutorService).build().submitAll(requests("image", 5), listener);
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            assertThat(results, hasSize(2));
+        }
+        executorService.shutdown();
+        assertThat(executorService.awaitTermination(1, TimeUnit.SECONDS), is(true));
+        assertThat(results, hasSize(2));
+    }
+
+    private static List<ImageUrlUploadRequest> requests(String prefix, int count) throws Exception {
+        final List<ImageUrlUploadRequest> requests = new ArrayList<ImageUrlUploadRequest>();
+        for (int i = 0; i < count; i++) {
+            requests.add(ImageUrlUploadRequest.builder(new URL("http://somehost/" + prefix + i + ".jpg")).build());
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.impl.DefaultKrakenIoClient;
+import io.kraken.client.model.Convert;
+import io.kraken.client.model.ImageFormat;
+import io.kraken.client.model.request.DirectFileUploadRequest;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoDirectoryPipelineTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private DefaultKrakenIoClient krakenIoClient;
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        krakenIoClient = mock(DefaultKrakenIoClient.class);
+        when(krakenIoClient.directUpload(any(DirectFileUploadRequest.class))).thenAnswer(invocation -> {
+            final DirectFileUploadRequest request = invocation.getArgument(0);
+            final long size = request.getImage().length();
+            return new SuccessfulUploadResponse(true, request.getImage().getName(), size, size / 2, size - size / 2, "http://dl.kraken.io/" + request.getImage().getName());
+        });
+        when(krakenIoClient.downloadTo(any(SuccessfulUploadResponse.class), any(Path.class))).thenAnswer(invocation -> {
+            Files.write(invocation.<Path>getArgument(1), "kraked".getBytes(StandardCharsets.UTF_8));
+            return 6L;
+        });
+
+        root = temporaryFolder.newFolder("images").toPath();
+        write(root.resolve("a.jpg"), 100);
+        write(root.resolve("b.PNG"), 200);
+        write(root.resolve("notes.txt"), 100);
+        write(root.resolve("large.jpg"), 5000);
+        Files.createDirectories(root.resolve("nested/deeper"));
+        write(root.resolve("nested/deeper/c.gif"), 300);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        final PipelineSummary summary = pipeline().build().run(root);
+
+        assertThat(summary.getSkipped(), is(0L));
+        assertThat(summary.getBatchSummary().getSucceeded(), is(3L));
+        assertThat(summary.getBatchSummary().getFailed(), is(0L));
+        assertThat(summary.getBatchSummary().getOriginalBytes(), is(600L));
+        assertThat(summary.getBatchSummary().getSavedBytes(), is(300L));
+
+        assertThat(Files.exists(root.resolve("a.kraked.jpg")), is(true));
+        assertThat(Files.exists(root.resolve("b.kraked.PNG")), is(true));
+        assertThat(Files.exists(root.resolve("nested/deeper/c.kraked.gif")), is(true));
+        assertThat(Files.exists(root.resolve("notes.kraked.txt")), is(false));
+        assertThat(Files.exists(root.resolve("large.kraked.jpg")), is(false));
+    }
+
+    @Test
+    public void testRerunSkipsWrittenResults() throws Exception {
+        pipeline().build().run(root);
+        reset(krakenIoClient);
+
+        final PipelineSummary summary = pipeline().build().run(root);
+
+        assertThat(summary.getSkipped(), is(3L));
+        assertThat(summary.getBatchSummary().getTotal(), is(0L));
+        verifyNoInteractions(krakenIoClient);
+    }
+
+    @Test
+    public void testRerunUploadsChangedOriginal() throws Exception {
+        pipeline().build().run(root);
+        final Path original = root.resolve("a.jpg");
+        Files.setLastModifiedTime(original, FileTime.fromMillis(Files.getLastModifiedTime(root.resolve("a.kraked.jpg")).toMillis() + 1000));
+
+        final PipelineSummary summary = pipeline().build().run(root);
+
+        assertThat(summary.getSkipped(), is(2L));
+        assertThat(summary.getBatchSummary().getSucceeded(), is(1L));
+        final ArgumentCaptor<DirectFileUploadRequest> request = ArgumentCaptor.forClass(DirectFileUploadRequest.class);
+        verify(krakenIoClient, times(4)).directUpload(request.capture());
+        assertThat(request.getValue().getImage(), is(original.toFile()));
+    }
+
+    @Test
+    public void testTemplate() throws Exception {
+        final ImageUrlUploadRequest template = ImageUrlUploadRequest.builder(new URL("http://example.com/template.jpg"))
+                .withLossy(true)
+                .withQuality(75)
+                .build();
+
+        pipeline().withTemplate(template).withExtensions("jpg").build().run(root);
+
+        final ArgumentCaptor<DirectFileUploadRequest> request = ArgumentCaptor.forClass(DirectFileUploadRequest.class);
+        verify(krakenIoClient).directUpload(request.capture());
+        assertThat(request.getValue().getImage(), is(new File(root.toFile(), "a.jpg")));
+        assertThat(request.getValue().getLossy(), is(true));
+        assertThat(request.getValue().getQuality(), is(75));
+    }
+
+    @Test
+    public void testTemplateChangingFormat() throws Exception {
+        final ImageUrlUploadRequest webp = ImageUrlUploadRequest.builder(new URL("http://example.com/template.jpg"))
+                .withWebp(true)
+                .build();
+        write(root.resolve("a.png"), 100);
+
+        final PipelineSummary summary = pipeline().withTemplate(webp).withExtensions("jpg", "png", "webp").build().run(root);
+
+        assertThat(summary.getBatchSummary().getSucceeded(), is(3L));
+        assertThat(Files.exists(root.resolve("a.jpg.kraked.webp")), is(true));
+        assertThat(Files.exists(root.resolve("a.png.kraked.webp")), is(true));
+        assertThat(Files.exists(root.resolve("b.PNG.kraked.webp")), is(true));
+
+        final PipelineSummary rerun = pipeline().withTemplate(webp).withExtensions("jpg", "png", "webp").build().run(root);
+        assertThat(rerun.getSkipped(), is(3L));
+        assertThat(rerun.getBatchSummary().getTotal(), is(0L));
+
+        final ImageUrlUploadRequest convert = ImageUrlUploadRequest.builder(new URL("http://example.com/template.jpg"))
+                .withConvert(new Convert(ImageFormat.JPEG, null, null))
+                .build();
+        final KrakenIoDirectoryPipeline pipeline = pipeline().withTemplate(convert).build();
+        assertThat(pipeline.target(root.resolve("b.PNG")), is(root.resolve("b.PNG.kraked.jpeg")));
+
+        final ImageUrlUploadRequest keepExtension = ImageUrlUploadRequest.builder(new URL("http://example.com/template.jpg"))
+                .withConvert(new Convert(ImageFormat.JPEG, null, true))
+                .build();
+        assertThat(pipeline().withTemplate(keepExtension).build().target(root.resolve("b.PNG")), is(root.resolve("b.kraked.PNG")));
+    }
+
+    @Test
+    public void testFailedDownloadIsRetriedOnRerun() throws Exception {
+        when(krakenIoClient.downloadTo(any(SuccessfulUploadResponse.class), eq(root.resolve("a.kraked.jpg"))))
+                .thenThrow(new KrakenIoException("Failed to download"));
+
+        final PipelineSummary summary = pipeline().build().run(root);
+
+        assertThat(summary.getBatchSummary().getSucceeded(), is(2L));
+        assertThat(summary.getBatchSummary().getFailed(), is(1L));
+        assertThat(Files.exists(root.resolve("a.kraked.jpg")), is(false));
+
+        final PipelineSummary rerun = pipeline().build().run(root);
+        assertThat(rerun.getSkipped(), is(2L));
+        assertThat(rerun.getBatchSummary().getFailed(), is(1L));
+    }
+
+    private KrakenIoDirectoryPipeline.Builder pipeline() {
+        return KrakenIoDirectoryPipeline.builder(krakenIoClient).withSize(1, 1000).withConcurrency(2);
+    }
+
+    private static void write(Path path, int size) throws Exception {
+        Files.write(path, new byte[size]);
+    }
+}
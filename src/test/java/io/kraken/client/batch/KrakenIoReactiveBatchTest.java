@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.batch;
+
+import io.kraken.client.AsyncKrakenIoClient;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import io.kraken.client.model.response.FailedUploadResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoReactiveBatchTest {
+
+    private final List<CompletableFuture<SuccessfulUploadResponse>> uploads = new ArrayList<CompletableFuture<SuccessfulUploadResponse>>();
+
+    private AsyncKrakenIoClient asyncKrakenIoClient;
+
+    @Before
+    public void setUp() throws Exception {
+        asyncKrakenIoClient = mock(AsyncKrakenIoClient.class);
+        when(asyncKrakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenAnswer(invocation -> {
+            final CompletableFuture<SuccessfulUploadResponse> upload = new CompletableFuture<SuccessfulUploadResponse>();
+            uploads.add(upload);
+            return upload;
+        });
+    }
+
+    @Test
+    public void testUploadsBoundedByDemand() throws Exception {
+        final RequestPublisher requests = new RequestPublisher(10);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        KrakenIoReactiveBatch.builder(asyncKrakenIoClient).withConcurrency(8).build().submitAll(requests).subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+        assertThat(uploads, hasSize(2));
+        assertThat(requests.requested, is(2L));
+
+        succeed(0);
+        assertThat(subscriber.results, hasSize(1));
+        assertThat(uploads, hasSize(2));
+
+        subscriber.subscription.request(1);
+        assertThat(uploads, hasSize(3));
+    }
+
+    @Test
+    public void testUploadsBoundedByConcurrency() throws Exception {
+        final RequestPublisher requests = new RequestPublisher(10);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        KrakenIoReactiveBatch.builder(asyncKrakenIoClient).withConcurrency(3).build().submitAll(requests).subscribe(subscriber);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertThat(uploads, hasSize(3));
+
+        succeed(1);
+        assertThat(uploads, hasSize(4));
+        assertThat(subscriber.results, hasSize(1));
+        assertThat(subscriber.results.get(0).getRequest(), is(requests.emitted.get(1)));
+    }
+
+    @Test
+    public void testFailedUploadsArePublished() throws Exception {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        KrakenIoReactiveBatch.builder(asyncKrakenIoClient).build().submitAll(new RequestPublisher(2)).subscribe(subscriber);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        uploads.get(0).completeExceptionally(new KrakenIoRequestException("Kraken.io request failed", new FailedUploadResponse(false, "error")));
+        assertThat(subscriber.completed, is(false));
+        succeed(1);
+
+        assertThat(subscriber.results, hasSize(2));
+        assertThat(subscriber.results.get(0).isSuccessful(), is(false));
+        assertThat(subscriber.results.get(0).getFailedUploadResponse().getMessage(), is("error"));
+        assertThat(subscriber.results.get(1).isSuccessful(), is(true));
+        assertThat(subscriber.completed, is(true));
+    }
+
+    @Test
+    public void testSourceErrorAfterUploadsInFlight() throws Exception {
+        final RequestPublisher requests = new RequestPublisher(10);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        KrakenIoReactiveBatch.builder(asyncKrakenIoClient).build().submitAll(requests).subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+        final IllegalStateException error = new IllegalStateException("source failed");
+        requests.subscriber.onError(error);
+        assertThat(subscriber.error, is(nullValue()));
+
+        succeed(0);
+        succeed(1);
+        assertThat(subscriber.results, hasSize(2));
+        assertThat(subscriber.error, is((Throwable) error));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final RequestPublisher requests = new RequestPublisher(10);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        KrakenIoReactiveBatch.builder(asyncKrakenIoClient).build().submitAll(requests).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+        succeed(0);
+
+        assertThat(requests.cancelled, is(true));
+        assertThat(subscriber.results, empty());
+        assertThat(subscriber.completed, is(false));
+    }
+
+    @Test
+    public void testNonPositiveRequest() throws Exception {
+        final RequestPublisher requests = new RequestPublisher(10);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        KrakenIoReactiveBatch.builder(asyncKrakenIoClient).build().submitAll(requests).subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        assertThat(requests.cancelled, is(true));
+        assertThat(subscriber.error, instanceOf(IllegalArgumentException.class));
+        assertThat(uploads, empty());
+    }
+
+    private void succeed(int upload) {
+        uploads.get(upload).complete(new SuccessfulUploadResponse(true, "image.jpg", 100L, 50L, 50L, "http://dl.kraken.io/image.jpg"));
+    }
+
+    /**
+     * Emits the given number of requests synchronously as they are requested.
+     */
+    private static class RequestPublisher implements Publisher<ImageUrlUploadRequest> {
+        private final int count;
+        private final List<ImageUrlUploadRequest> emitted = new ArrayList<ImageUrlUploadRequest>();
+        private Subscriber<? super ImageUrlUploadRequest> subscriber;
+        private long requested;
+        private boolean completed;
+        private boolean cancelled;
+
+        private RequestPublisher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void subscribe(final Subscriber<? super ImageUrlUploadRequest> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    requested += n;
+                    while (!cancelled && emitted.size() < Math.min(requested, count)) {
+                        final ImageUrlUploadRequest request = imageUrlUploadRequest(emitted.size());
+                        emitted.add(request);
+                        subscriber.onNext(request);
+                    }
+                    if (!cancelled && !completed && emitted.size() == count) {
+                        completed = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+
+        private static ImageUrlUploadRequest imageUrlUploadRequest(int index) {
+            try {
+                return ImageUrlUploadRequest.builder(new URL("http://somehost/image" + index + ".jpg")).build();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class RecordingSubscriber implements Subscriber<BatchItemResult> {
+        private final List<BatchItemResult> results = new ArrayList<BatchItemResult>();
+        private Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(BatchItemResult batchItemResult) {
+            results.add(batchItemResult);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.cache;
+
+import io.kraken.client.KrakenIoClient;
+import io.kraken.client.exception.KrakenIoDeadlineExceededException;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.model.Metadata;
+import io.kraken.client.model.request.DirectUploadRequest;
+import io.kraken.client.model.resize.FitResize;
+import io.kraken.client.model.response.FailedUploadResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class CachingKrakenIoClientTest {
+
+    private static final byte[] IMAGE = new byte[]{1, 2, 3, 4};
+
+    private final SuccessfulUploadResponse successfulUploadResponse = new SuccessfulUploadResponse(true, "header.jpg", 100, 50, 50, "http://dl.kraken.io/header.jpg");
+
+    private KrakenIoClient krakenIoClient;
+    private CachingKrakenIoClient cachingKrakenIoClient;
+
+    @Before
+    public void setUp() throws Exception {
+        krakenIoClient = mock(KrakenIoClient.class);
+        cachingKrakenIoClient = CachingKrakenIoClient.builder(krakenIoClient).build();
+    }
+
+    @Test
+    public void testDirectUploadHit() throws Exception {
+        when(krakenIoClient.directUpload(any(DirectUploadRequest.class))).thenReturn(successfulUploadResponse);
+
+        assertThat(cachingKrakenIoClient.directUpload(request(IMAGE).withLossy(true).build()), sameInstance(successfulUploadResponse));
+        assertThat(cachingKrakenIoClient.directUpload(request(IMAGE).withLossy(true).build()), sameInstance(successfulUploadResponse));
+
+        verify(krakenIoClient, times(1)).directUpload(any(DirectUploadRequest.class));
+        assertThat(cachingKrakenIoClient.getCacheStatistics().getHitCount(), is(1L));
+        assertThat(cachingKrakenIoClient.getCacheStatistics().getMissCount(), is(1L));
+    }
+
+    @Test
+    public void testDirectUploadDifferentOptions() throws Exception {
+        when(krakenIoClient.directUpload(any(DirectUploadRequest.class))).thenReturn(successfulUploadResponse);
+
+        cachingKrakenIoClient.directUpload(request(IMAGE).build());
+        cachingKrakenIoClient.directUpload(request(IMAGE).withResize(new FitResize(100, 100)).build());
+        cachingKrakenIoClient.directUpload(request(IMAGE).withResize(new FitResize(100, 200)).build());
+        cachingKrakenIoClient.directUpload(request(new byte[]{4, 3, 2, 1}).build());
+
+        verify(krakenIoClient, times(4)).directUpload(any(DirectUploadRequest.class));
+    }
+
+    @Test
+    public void testCanonicalOptionsIgnoreMetadataOrder() throws Exception {
+        final DirectUploadRequest first = request(IMAGE).withPreserveMeta(Metadata.DATE).withPreserveMeta(Metadata.PROFILE).build();
+        final DirectUploadRequest second = request(IMAGE).withPreserveMeta(Metadata.PROFILE).withPreserveMeta(Metadata.DATE).build();
+
+        assertThat(CacheKeys.forImage(IMAGE, first), is(CacheKeys.forImage(IMAGE, second)));
+        assertThat(CacheKeys.canonicalOptions(first), containsString("[\"date\",\"profile\"]"));
+    }
+
+    @Test
+    public void testDirectUploadFailureNotCached() throws Exception {
+        when(krakenIoClient.directUpload(any(DirectUploadRequest.class)))
+                .thenThrow(new KrakenIoRequestException("Kraken.io request failed", new FailedUploadResponse(false, "error")))
+                .thenReturn(successfulUploadResponse);
+
+        try {
+            cachingKrakenIoClient.directUpload(request(IMAGE).build());
+            fail("Expected KrakenIoRequestException");
+        } catch (KrakenIoRequestException e) {
+            assertThat(e.getFailedUploadResponse().getMessage(), is("error"));
+        }
+
+        assertThat(cachingKrakenIoClient.directUpload(request(IMAGE).build()), sameInstance(successfulUploadResponse));
+    }
+
+    @Test
+    public void testDirectUploadCoalescesConcurrentRequests() throws Exception {
+        final CountDownLatch uploadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseUpload = new CountDownLatch(1);
+        when(krakenIoClient.directUpload(any(DirectUploadRequest.class))).thenAnswer(invocation -> {
+            uploadStarted.countDown();
+            releaseUpload.await();
+            return successfulUploadResponse;
+        });
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<SuccessfulUploadResponse>> futures = new ArrayList<Future<SuccessfulUploadResponse>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executorService.submit(new Callable<SuccessfulUploadResponse>() {
+                    @Override
+                    public SuccessfulUploadResponse call() {
+                        return cachingKrakenIoClient.directUpload(request(IMAGE).build());
+                    }
+                }));
+            }
+
+            uploadStarted.await();
+            Thread.sleep(100);
+            releaseUpload.countDown();
+
+            for (Future<SuccessfulUploadResponse> future : futures) {
+                assertThat(future.get(), sameInstance(successfulUploadResponse));
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        verify(krakenIoClient, times(1)).directUpload(any(DirectUploadRequest.class));
+    }
+
+    @Test
+    public void testJoinedDirectUploadWaitsForOwnDeadline() throws Exception {
+        final CountDownLatch uploadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseUpload = new CountDownLatch(1);
+        when(krakenIoClient.directUpload(any(DirectUploadRequest.class))).thenAnswer(invocation -> {
+            uploadStarted.countDown();
+            releaseUpload.await();
+            return successfulUploadResponse;
+        });
+
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            final Future<SuccessfulUploadResponse> future = executorService.submit(new Callable<SuccessfulUploadResponse>() {
+                @Override
+                public SuccessfulUploadResponse call() {
+                    return cachingKrakenIoClient.directUpload(request(IMAGE).build());
+                }
+            });
+            uploadStarted.await();
+
+            final long started = System.nanoTime();
+            try {
+                cachingKrakenIoClient.directUpload(request(IMAGE).withDeadline(100, TimeUnit.MILLISECONDS).build());
+                fail("Expected KrakenIoDeadlineExceededException");
+            } catch (KrakenIoDeadlineExceededException e) {
+                assertThat(e.getDeadline(), is(100L));
+                assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), lessThan(5000L));
+            }
+
+            releaseUpload.countDown();
+            assertThat(future.get(), sameInstance(successfulUploadResponse));
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        verify(krakenIoClient, times(1)).directUpload(any(DirectUploadRequest.class));
+    }
+
+    @Test
+    public void testDirectUploadConsultsResultStore() throws Exception {
+        final ResultStore resultStore = mock(ResultStore.class);
+        final CacheKey cacheKey = CacheKeys.forImage(IMAGE, request(IMAGE).build());
+        when(resultStore.get(cacheKey)).thenReturn(null, successfulUploadResponse);
+        when(krakenIoClient.directUpload(any(DirectUploadRequest.class))).thenReturn(successfulUploadResponse);
+
+        CachingKrakenIoClient.builder(krakenIoClient).withResultStore(resultStore).build().directUpload(request(IMAGE).build());
+        CachingKrakenIoClient.builder(krakenIoClient).withResultStore(resultStore).build().directUpload(request(IMAGE).build());
+
+        verify(krakenIoClient, times(1)).directUpload(any(DirectUploadRequest.class));
+        verify(resultStore, times(1)).put(cacheKey, successfulUploadResponse);
+    }
+
+    @Test
+    public void testDirectUploadResultStoreFailure() throws Exception {
+        final ResultStore resultStore = mock(ResultStore.class);
+        when(resultStore.get(any(CacheKey.class))).thenThrow(new KrakenIoException("Failed to read"));
+        doThrow(new KrakenIoException("Failed to write")).when(resultStore).put(any(CacheKey.class), any(SuccessfulUploadResponse.class));
+        when(krakenIoClient.directUpload(any(DirectUploadRequest.class))).thenReturn(successfulUploadResponse);
+
+        final CachingKrakenIoClient cachingKrakenIoClient = CachingKrakenIoClient.builder(krakenIoClient).withResultStore(resultStore).build();
+
+        assertThat(cachingKrakenIoClient.directUpload(request(IMAGE).build()), is(successfulUploadResponse));
+        assertThat(cachingKrakenIoClient.directUpload(request(IMAGE).build()), is(successfulUploadResponse));
+        verify(krakenIoClient, times(1)).directUpload(any(DirectUploadRequest.class));
+    }
+
+    private DirectUploadRequest.Builder request(byte[] image) {
+        return DirectUploadRequest.builder(new ByteArrayInputStream(image));
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.cache;
+
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class DiskResultStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testPersistsAcrossReopen() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("results.log");
+
+        try (DiskResultStore diskResultStore = DiskResultStore.builder(file).build()) {
+            diskResultStore.put(key(1), response("first.jpg", null));
+            diskResultStore.put(key(2), response("second.jpg", "http://dl.kraken.io/second.jpg"));
+        }
+
+        try (DiskResultStore diskResultStore = DiskResultStore.builder(file).build()) {
+            assertThat(diskResultStore.size(), is(2));
+            final SuccessfulUploadResponse successfulUploadResponse = diskResultStore.get(key(1));
+            assertThat(successfulUploadResponse.getSuccess(), is(true));
+            assertThat(successfulUploadResponse.getStatus(), is(200));
+            assertThat(successfulUploadResponse.getFileName(), is("first.jpg"));
+            assertThat(successfulUploadResponse.getOriginalSizeLong(), is(100L));
+            assertThat(successfulUploadResponse.getSavedBytesLong(), is(50L));
+            assertThat(successfulUploadResponse.getKrakedUrl(), nullValue());
+            assertThat(diskResultStore.get(key(2)).getKrakedUrl(), is("http://dl.kraken.io/second.jpg"));
+            assertThat(diskResultStore.get(key(3)), nullValue());
+        }
+    }
+
+    @Test
+    public void testTruncatesTornTail() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("results.log");
+
+        final long intactSize;
+        try (DiskResultStore diskResultStore = DiskResultStore.builder(file).build()) {
+            diskResultStore.put(key(1), response("first.jpg", null));
+            intactSize = diskResultStore.getFileSize();
+            diskResultStore.put(key(2), response("second.jpg", null));
+        }
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 3);
+        }
+
+        try (DiskResultStore diskResultStore = DiskResultStore.builder(file).build()) {
+            assertThat(diskResultStore.size(), is(1));
+            assertThat(diskResultStore.getFileSize(), is(intactSize));
+            assertThat(diskResultStore.get(key(1)).getFileName(), is("first.jpg"));
+            assertThat(diskResultStore.get(key(2)), nullValue());
+        }
+    }
+
+    @Test
+    public void testCompactDropsSupersededRecords() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("results.log");
+
+        try (DiskResultStore diskResultStore = DiskResultStore.builder(file).withMaximumSize(0).build()) {
+            for (int i = 0; i < 10; i++) {
+                diskResultStore.put(key(1), response("file" + i + ".jpg", null));
+            }
+            diskResultStore.put(key(2), response("other.jpg", null));
+            final long fileSize = diskResultStore.getFileSize();
+
+            diskResultStore.compact();
+
+            assertThat(diskResultStore.getFileSize(), lessThan(fileSize));
+            assertThat(diskResultStore.size(), is(2));
+            assertThat(diskResultStore.get(key(1)).getFileName(), is("file9.jpg"));
+            assertThat(diskResultStore.get(key(2)).getFileName(), is("other.jpg"));
+        }
+    }
+
+    @Test
+    public void testMaximumSizeEvictsOldest() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("results.log");
+
+        try (DiskResultStore diskResultStore = DiskResultStore.builder(file).withMaximumSize(2048).build()) {
+            for (int i = 0; i < 100; i++) {
+                diskResultStore.put(key(i), response("file" + i + ".jpg", null));
+            }
+
+            // Compaction runs in the background
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (diskResultStore.getFileSize() > 2048 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(diskResultStore.getFileSize(), lessThanOrEqualTo(2048L));
+            assertThat(diskResultStore.size(), lessThan(100));
+            assertThat(diskResultStore.get(key(0)), nullValue());
+            assertThat(diskResultStore.get(key(99)).getFileName(), is("file99.jpg"));
+        }
+
+        try (DiskResultStore diskResultStore = DiskResultStore.builder(file).build()) {
+            assertThat(diskResultStore.get(key(99)).getFileName(), is("file99.jpg"));
+        }
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("results.log");
+
+        try (DiskResultStore diskResultStore = DiskResultStore.builder(file).withExpireAfterWrite(50, TimeUnit.MILLISECONDS).build()) {
+            diskResultStore.put(key(1), response("first.jpg", null));
+            assertThat(diskResultStore.get(key(1)).getFileName(), is("first.jpg"));
+
+            TimeUnit.MILLISECONDS.sleep(100);
+            assertThat(diskResultStore.get(key(1)), nullValue());
+        }
+
+        // Expires after an hour by default
+        try (DiskResultStore diskResultStore = DiskResultStore.builder(file).build()) {
+            assertThat(diskResultStore.get(key(1)).getFileName(), is("first.jpg"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExpireAfterWriteMustBePositive() throws Exception {
+        DiskResultStore.builder(temporaryFolder.getRoot().toPath().resolve("results.log")).withExpireAfterWrite(0, TimeUnit.SECONDS).build();
+    }
+
+    private static CacheKey key(int value) {
+        final byte[] digest = new byte[CacheKey.LENGTH];
+        digest[0] = (byte) value;
+        return new CacheKey(digest);
+    }
+
+    private static SuccessfulUploadResponse response(String fileName, String krakedUrl) {
+        return new SuccessfulUploadResponse(true, fileName, 100, 50, 50, krakedUrl);
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.callback;
+
+import com.google.common.base.Charsets;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoCallbackReceiverTest {
+
+    private static final String SUCCESSFUL_RESULT = "{\"id\":\"%s\",\"success\":true,\"file_name\":\"header.jpg\",\"original_size\":100,"
+            + "\"kraked_size\":50,\"saved_bytes\":50,\"kraked_url\":\"http://dl.kraken.io/header.jpg\"}";
+
+    private KrakenIoCallbackReceiver krakenIoCallbackReceiver;
+
+    @Before
+    public void setUp() throws IOException {
+        final int port = freePort();
+        krakenIoCallbackReceiver = KrakenIoCallbackReceiver.builder(new URL("http", "127.0.0.1", port, "/kraken-io/callback"))
+                .withHost("127.0.0.1")
+                .withPort(port)
+                .withTimeout(500, TimeUnit.MILLISECONDS)
+                .withUnclaimedRetention(500, TimeUnit.MILLISECONDS)
+                .withMaxUnclaimedResults(2)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        krakenIoCallbackReceiver.close();
+    }
+
+    @Test
+    public void testResultAfterExpect() throws Exception {
+        final CompletableFuture<SuccessfulUploadResponse> result = krakenIoCallbackReceiver.expect(new SuccessfulUploadCallbackUrlResponse("id1"));
+        assertThat(result.isDone(), is(false));
+
+        assertThat(post(String.format(SUCCESSFUL_RESULT, "id1")), is(200));
+
+        final SuccessfulUploadResponse successfulUploadResponse = result.get(5, TimeUnit.SECONDS);
+        assertThat(successfulUploadResponse.getId(), is("id1"));
+        assertThat(successfulUploadResponse.getStatus(), is(200));
+        assertThat(successfulUploadResponse.getOriginalSizeLong(), is(100L));
+        assertThat(successfulUploadResponse.getKrakedUrl(), is("http://dl.kraken.io/header.jpg"));
+        assertThat(krakenIoCallbackReceiver.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void testResultBeforeExpect() throws Exception {
+        assertThat(post(String.format(SUCCESSFUL_RESULT, "id2")), is(200));
+        assertThat(krakenIoCallbackReceiver.getPendingCount(), is(1));
+
+        final CompletableFuture<SuccessfulUploadResponse> result = krakenIoCallbackReceiver.expect(CompletableFuture.completedFuture(new SuccessfulUploadCallbackUrlResponse("id2")));
+
+        assertThat(result.get(5, TimeUnit.SECONDS).getFileName(), is("header.jpg"));
+        assertThat(krakenIoCallbackReceiver.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void testFailedResult() throws Exception {
+        final CompletableFuture<SuccessfulUploadResponse> result = krakenIoCallbackReceiver.expect("id3");
+
+        assertThat(post("{\"id\":\"id3\",\"success\":false,\"message\":\"Image is too large\"}"), is(200));
+
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("Expected failed result");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(KrakenIoRequestException.class));
+            assertThat(((KrakenIoRequestException) e.getCause()).getFailedUploadResponse().getMessage(), is("Image is too large"));
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final CompletableFuture<SuccessfulUploadResponse> result = krakenIoCallbackReceiver.expect("id4");
+
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("Expected timeout");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(KrakenIoException.class));
+        }
+        assertThat(krakenIoCallbackReceiver.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void testInvalidCallbacks() throws Exception {
+        assertThat(post("{\"success\":true}"), is(400));
+        assertThat(post("not json"), is(400));
+
+        final HttpURLConnection httpURLConnection = (HttpURLConnection) krakenIoCallbackReceiver.getCallbackUrl().openConnection();
+        assertThat(httpURLConnection.getResponseCode(), is(405));
+        assertThat(krakenIoCallbackReceiver.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void testCallbackUrl() {
+        final URL callbackUrl = krakenIoCallbackReceiver.getCallbackUrl();
+
+        assertThat(callbackUrl.getHost(), is("127.0.0.1"));
+        assertThat(callbackUrl.getPort(), greaterThan(0));
+        assertThat(callbackUrl.getPath(), is("/kraken-io/callback"));
+        assertThat(callbackUrl.getQuery(), startsWith("secret="));
+        assertThat(callbackUrl.getQuery().length(), greaterThan(30));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testCallbackUrlRequired() {
+        KrakenIoCallbackReceiver.builder(null).build();
+    }
+
+    @Test
+    public void testCallbackWithoutSecret() throws Exception {
+        final CompletableFuture<SuccessfulUploadResponse> result = krakenIoCallbackReceiver.expect("id5");
+        final URL callbackUrl = krakenIoCallbackReceiver.getCallbackUrl();
+
+        assertThat(post(new URL("http", callbackUrl.getHost(), callbackUrl.getPort(), callbackUrl.getPath()), String.format(SUCCESSFUL_RESULT, "id5")), is(403));
+        assertThat(post(new URL(callbackUrl, callbackUrl.getPath() + "?secret=0123456789abcdef0123456789abcdef"), String.format(SUCCESSFUL_RESULT, "id5")), is(403));
+        assertThat(result.isDone(), is(false));
+    }
+
+    @Test
+    public void testUnclaimedResultsLimited() throws Exception {
+        assertThat(post(String.format(SUCCESSFUL_RESULT, "id6")), is(200));
+        assertThat(post(String.format(SUCCESSFUL_RESULT, "id7")), is(200));
+        assertThat(post(String.format(SUCCESSFUL_RESULT, "id8")), is(429));
+        assertThat(krakenIoCallbackReceiver.getPendingCount(), is(2));
+
+        // Results somebody waits for are not limited
+        final CompletableFuture<SuccessfulUploadResponse> result = krakenIoCallbackReceiver.expect("id9");
+        assertThat(post(String.format(SUCCESSFUL_RESULT, "id9")), is(200));
+        assertThat(result.get(5, TimeUnit.SECONDS).getId(), is("id9"));
+
+        // Claiming frees a slot
+        assertThat(krakenIoCallbackReceiver.expect("id6").get(5, TimeUnit.SECONDS).getId(), is("id6"));
+        assertThat(post(String.format(SUCCESSFUL_RESULT, "id8")), is(200));
+    }
+
+    @Test
+    public void testUnclaimedResultsExpire() throws Exception {
+        assertThat(post(String.format(SUCCESSFUL_RESULT, "id10")), is(200));
+        assertThat(post(String.format(SUCCESSFUL_RESULT, "id11")), is(200));
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (krakenIoCallbackReceiver.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(krakenIoCallbackReceiver.getPendingCount(), is(0));
+        assertThat(post(String.format(SUCCESSFUL_RESULT, "id12")), is(200));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private int post(String body) throws IOException {
+        return post(krakenIoCallbackReceiver.getCallbackUrl(), body);
+    }
+
+    private int post(URL url, String body) throws IOException {
+        final HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
+        httpURLConnection.setRequestMethod("POST");
+        httpURLConnection.setDoOutput(true);
+        httpURLConnection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream outputStream = httpURLConnection.getOutputStream()) {
+            outputStream.write(body.getBytes(Charsets.UTF_8));
+        }
+        return httpURLConnection.getResponseCode();
+    }
+}
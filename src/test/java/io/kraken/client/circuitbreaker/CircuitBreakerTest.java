@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.circuitbreaker;
+
+import io.kraken.client.ManualTicker;
+import io.kraken.client.metrics.Endpoint;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class CircuitBreakerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ManualTicker ticker = new ManualTicker();
+    private final List<String> transitions = new ArrayList<String>();
+    private final CircuitBreakerListener listener = new CircuitBreakerListener() {
+        @Override
+        public void onStateTransition(Endpoint endpoint, CircuitState from, CircuitState to) {
+            transitions.add(endpoint + ":" + from + "->" + to);
+        }
+    };
+
+    @Test
+    public void testOpensOnFailureRate() throws Exception {
+        final CircuitBreaker circuitBreaker = circuitBreaker(50, 100);
+
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.recordResponse(Endpoint.UPLOAD, 200, FAST);
+        }
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.recordResponse(Endpoint.UPLOAD, 503, FAST);
+        }
+        assertThat(circuitBreaker.getState(Endpoint.UPLOAD), is(CircuitState.CLOSED));
+
+        circuitBreaker.recordFailure(Endpoint.UPLOAD, FAST);
+
+        assertThat(circuitBreaker.getState(Endpoint.UPLOAD), is(CircuitState.OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.UPLOAD), is(false));
+        assertThat(circuitBreaker.getState(Endpoint.URL), is(CircuitState.CLOSED));
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.URL), is(true));
+        assertThat(transitions, contains("UPLOAD:CLOSED->OPEN"));
+    }
+
+    @Test
+    public void testClientErrorsAreNoFailures() throws Exception {
+        final CircuitBreaker circuitBreaker = circuitBreaker(50, 100);
+
+        for (int i = 0; i < 20; i++) {
+            circuitBreaker.recordResponse(Endpoint.UPLOAD, i % 2 == 0 ? 429 : 400, FAST);
+        }
+
+        assertThat(circuitBreaker.getState(Endpoint.UPLOAD), is(CircuitState.CLOSED));
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() throws Exception {
+        final CircuitBreaker circuitBreaker = circuitBreaker(100, 80);
+
+        for (int i = 0; i < 2; i++) {
+            circuitBreaker.recordResponse(Endpoint.URL, 200, FAST);
+        }
+        for (int i = 0; i < 8; i++) {
+            circuitBreaker.recordResponse(Endpoint.URL, 200, 2 * SECOND);
+        }
+
+        assertThat(circuitBreaker.getState(Endpoint.URL), is(CircuitState.OPEN));
+    }
+
+    @Test
+    public void testSlowCallsAreNoFailures() throws Exception {
+        final CircuitBreaker circuitBreaker = circuitBreaker(50, 80);
+
+        for (int i = 0; i < 2; i++) {
+            circuitBreaker.recordResponse(Endpoint.URL, 200, FAST);
+        }
+        for (int i = 0; i < 7; i++) {
+            circuitBreaker.recordSlowCall(Endpoint.URL);
+        }
+        assertThat(circuitBreaker.getState(Endpoint.URL), is(CircuitState.CLOSED));
+
+        circuitBreaker.recordSlowCall(Endpoint.URL);
+
+        assertThat(circuitBreaker.getState(Endpoint.URL), is(CircuitState.OPEN));
+    }
+
+    @Test
+    public void testSlidingWindowForgetsOldOutcomes() throws Exception {
+        final CircuitBreaker circuitBreaker = circuitBreaker(50, 100);
+
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.recordFailure(Endpoint.UPLOAD, FAST);
+        }
+        for (int i = 0; i < 100; i++) {
+            circuitBreaker.recordResponse(Endpoint.UPLOAD, 200, FAST);
+        }
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.recordFailure(Endpoint.UPLOAD, FAST);
+        }
+
+        assertThat(circuitBreaker.getState(Endpoint.UPLOAD), is(CircuitState.CLOSED));
+    }
+
+    @Test
+    public void testHalfOpenCloses() throws Exception {
+        final CircuitBreaker circuitBreaker = openCircuitBreaker();
+
+        ticker.advance(29 * SECOND);
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.UPLOAD), is(false));
+
+        ticker.advance(SECOND);
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.UPLOAD), is(true));
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.UPLOAD), is(true));
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.UPLOAD), is(false));
+        assertThat(circuitBreaker.getState(Endpoint.UPLOAD), is(CircuitState.HALF_OPEN));
+
+        circuitBreaker.recordResponse(Endpoint.UPLOAD, 200, FAST);
+        circuitBreaker.recordResponse(Endpoint.UPLOAD, 200, FAST);
+
+        assertThat(circuitBreaker.getState(Endpoint.UPLOAD), is(CircuitState.CLOSED));
+        assertThat(transitions, contains("UPLOAD:CLOSED->OPEN", "UPLOAD:OPEN->HALF_OPEN", "UPLOAD:HALF_OPEN->CLOSED"));
+    }
+
+    @Test
+    public void testHalfOpenOpensAgain() throws Exception {
+        final CircuitBreaker circuitBreaker = openCircuitBreaker();
+
+        ticker.advance(30 * SECOND);
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.UPLOAD), is(true));
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.UPLOAD), is(true));
+        circuitBreaker.recordResponse(Endpoint.UPLOAD, 200, FAST);
+        circuitBreaker.recordResponse(Endpoint.UPLOAD, 502, FAST);
+
+        assertThat(circuitBreaker.getState(Endpoint.UPLOAD), is(CircuitState.OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.UPLOAD), is(false));
+    }
+
+    @Test
+    public void testReleasedPermissionIsReused() throws Exception {
+        final CircuitBreaker circuitBreaker = openCircuitBreaker();
+
+        ticker.advance(30 * SECOND);
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.UPLOAD), is(true));
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.UPLOAD), is(true));
+        circuitBreaker.releasePermission(Endpoint.UPLOAD);
+
+        assertThat(circuitBreaker.tryAcquirePermission(Endpoint.UPLOAD), is(true));
+    }
+
+    private CircuitBreaker openCircuitBreaker() {
+        final CircuitBreaker circuitBreaker = circuitBreaker(50, 100);
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.recordFailure(Endpoint.UPLOAD, FAST);
+        }
+        assertThat(circuitBreaker.getState(Endpoint.UPLOAD), is(CircuitState.OPEN));
+        return circuitBreaker;
+    }
+
+    private CircuitBreaker circuitBreaker(float failureRateThreshold, float slowCallRateThreshold) {
+        return new CircuitBreaker(failureRateThreshold, slowCallRateThreshold, 1000, 100, 10, 30000, 2, Collections.singletonList(listener), ticker);
+    }
+}
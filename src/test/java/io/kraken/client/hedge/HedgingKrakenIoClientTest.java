@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.hedge;
+
+import io.kraken.client.KrakenIoClient;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.metrics.HdrHistogramKrakenIoMetrics;
+import io.kraken.client.model.request.ImageUrlUploadCallbackUrlRequest;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import io.kraken.client.model.response.FailedUploadResponse;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import io.kraken.client.retry.RetryBudget;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class HedgingKrakenIoClientTest {
+
+    private static final SuccessfulUploadResponse PRIMARY = new SuccessfulUploadResponse(true, "primary.jpg", 100L, 50L, 50L, "http://dl.kraken.io/primary.jpg");
+    private static final SuccessfulUploadResponse HEDGE = new SuccessfulUploadResponse(true, "hedge.jpg", 100L, 50L, 50L, "http://dl.kraken.io/hedge.jpg");
+
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final CountDownLatch primaryReleased = new CountDownLatch(1);
+    private final CountDownLatch primaryInterrupted = new CountDownLatch(1);
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final HdrHistogramKrakenIoMetrics metrics = new HdrHistogramKrakenIoMetrics();
+
+    private KrakenIoClient krakenIoClient;
+    private ImageUrlUploadRequest imageUrlUploadRequest;
+
+    @Before
+    public void setUp() throws Exception {
+        krakenIoClient = mock(KrakenIoClient.class);
+        imageUrlUploadRequest = ImageUrlUploadRequest.builder(new URL("http://somehost/image.jpg")).build();
+    }
+
+    @After
+    public void tearDown() {
+        primaryReleased.countDown();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testFastRequestIsNotHedged() throws Exception {
+        when(krakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenReturn(PRIMARY);
+
+        assertThat(hedgingClient(1).imageUrlUpload(imageUrlUploadRequest), is(PRIMARY));
+        verify(krakenIoClient, times(1)).imageUrlUpload(imageUrlUploadRequest);
+        assertThat(metrics.getHedgedCount(Endpoint.URL), is(0L));
+    }
+
+    @Test
+    public void testSlowRequestIsHedged() throws Exception {
+        when(krakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenAnswer(invocation -> slowPrimary());
+
+        assertThat(hedgingClient(1).imageUrlUpload(imageUrlUploadRequest), is(HEDGE));
+        assertThat(attempts.get(), is(2));
+        assertThat(metrics.getHedgedCount(Endpoint.URL), is(1L));
+        assertThat("Primary is cancelled", primaryInterrupted.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testHedgeBudgetExhausted() throws Exception {
+        when(krakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenAnswer(invocation -> slowPrimary());
+        executorService.execute(() -> {
+            sleepQuietly(200);
+            primaryReleased.countDown();
+        });
+
+        assertThat(hedgingClient(0).imageUrlUpload(imageUrlUploadRequest), is(PRIMARY));
+        assertThat(attempts.get(), is(1));
+        assertThat(metrics.getHedgedCount(Endpoint.URL), is(0L));
+    }
+
+    @Test
+    public void testFailureBeforeHedgeIsNotHedged() throws Exception {
+        final KrakenIoRequestException failure = new KrakenIoRequestException("Kraken.io request failed", new FailedUploadResponse(false, "error"));
+        when(krakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenThrow(failure);
+
+        try {
+            hedgingClient(1).imageUrlUpload(imageUrlUploadRequest);
+            fail("Expected KrakenIoRequestException");
+        } catch (KrakenIoRequestException e) {
+            assertThat(e, is(failure));
+        }
+        verify(krakenIoClient, times(1)).imageUrlUpload(imageUrlUploadRequest);
+    }
+
+    @Test
+    public void testCallbackUrlRequestIsPassedThrough() throws Exception {
+        final ImageUrlUploadCallbackUrlRequest imageUrlUploadCallbackUrlRequest = ImageUrlUploadCallbackUrlRequest.builder(
+                new URL("http://somehost/image.jpg"), new URL("http://somehost/callback")
+        ).build();
+        final SuccessfulUploadCallbackUrlResponse successfulUploadCallbackUrlResponse = mock(SuccessfulUploadCallbackUrlResponse.class);
+        when(krakenIoClient.imageUrlUpload(imageUrlUploadCallbackUrlRequest)).thenReturn(successfulUploadCallbackUrlResponse);
+
+        assertThat(hedgingClient(1).imageUrlUpload(imageUrlUploadCallbackUrlRequest), is(successfulUploadCallbackUrlResponse));
+        verify(krakenIoClient, times(1)).imageUrlUpload(imageUrlUploadCallbackUrlRequest);
+    }
+
+    private HedgingKrakenIoClient hedgingClient(int reserve) {
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.builder()
+                .withDelay(20, TimeUnit.MILLISECONDS)
+                .withBudget(RetryBudget.builder().withRatio(0).withReserve(reserve).build())
+                .withMetrics(metrics)
+                .build();
+        return new HedgingKrakenIoClient(krakenIoClient, hedgingPolicy, executorService);
+    }
+
+    /**
+     * The first attempt blocks until released or interrupted, any further attempt returns immediately.
+     */
+    private SuccessfulUploadResponse slowPrimary() {
+        if (attempts.incrementAndGet() > 1) {
+            return HEDGE;
+        }
+        try {
+            primaryReleased.await();
+            return PRIMARY;
+        } catch (InterruptedException e) {
+            primaryInterrupted.countDown();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.hedge;
+
+import io.kraken.client.retry.RetryBudget;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class HedgingPolicyTest {
+
+    @Test
+    public void testFixedDelay() throws Exception {
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.builder().withDelay(250, TimeUnit.MILLISECONDS).build();
+        for (int i = 0; i < 200; i++) {
+            hedgingPolicy.recordLatency(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        assertThat(hedgingPolicy.getHedgeDelay(TimeUnit.MILLISECONDS), is(250L));
+    }
+
+    @Test
+    public void testPercentileDelay() throws Exception {
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.builder()
+                .withDelay(250, TimeUnit.MILLISECONDS)
+                .withPercentile(95)
+                .withWindowSize(100)
+                .build();
+
+        for (int i = 1; i < 100; i++) {
+            hedgingPolicy.recordLatency(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat(hedgingPolicy.getHedgeDelay(TimeUnit.MILLISECONDS), is(250L));
+
+        hedgingPolicy.recordLatency(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(hedgingPolicy.getHedgeDelay(TimeUnit.MILLISECONDS), both(greaterThanOrEqualTo(94L)).and(lessThanOrEqualTo(96L)));
+
+        // The next window replaces the previous one
+        for (int i = 0; i < 100; i++) {
+            hedgingPolicy.recordLatency(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        assertThat(hedgingPolicy.getHedgeDelay(TimeUnit.MILLISECONDS), is(20L));
+    }
+
+    @Test
+    public void testHedgesCappedByBudget() throws Exception {
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.builder()
+                .withBudget(RetryBudget.builder().withRatio(0.1).withReserve(1).build())
+                .build();
+
+        assertThat(hedgingPolicy.tryAcquireHedge(), is(true));
+        assertThat(hedgingPolicy.tryAcquireHedge(), is(false));
+
+        for (int i = 0; i < 9; i++) {
+            hedgingPolicy.recordRequest();
+        }
+        assertThat(hedgingPolicy.tryAcquireHedge(), is(false));
+        hedgingPolicy.recordRequest();
+        assertThat(hedgingPolicy.tryAcquireHedge(), is(true));
+    }
+}
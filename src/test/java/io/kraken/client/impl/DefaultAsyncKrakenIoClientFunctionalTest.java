@@ -0,0 +1,447 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Resources;
+import io.kraken.client.AbstractFunctionalTest;
+import io.kraken.client.AsyncKrakenIoClient;
+import io.kraken.client.config.KrakenIoClientConfig;
+import io.kraken.client.exception.KrakenIoDeadlineExceededException;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.metrics.HdrHistogramKrakenIoMetrics;
+import io.kraken.client.metrics.KrakenIoMetrics;
+import io.kraken.client.metrics.RequestTimings;
+import io.kraken.client.model.request.*;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import io.kraken.client.ratelimit.RateLimiter;
+import io.kraken.client.retry.RetryPolicy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockserver.matchers.Times;
+import org.mockserver.model.Header;
+import org.mockserver.verify.VerificationTimes;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockserver.model.HttpRequest.request;
+import static org.mockserver.model.HttpResponse.response;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class DefaultAsyncKrakenIoClientFunctionalTest extends AbstractFunctionalTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private AsyncKrakenIoClient asyncKrakenIoClient;
+
+    @Before
+    public void setUp() throws Exception {
+        asyncKrakenIoClient = new DefaultAsyncKrakenIoClient("somekey", "somesecret", "http://localhost:1080", 3000);
+    }
+
+    @Test
+    public void testDirectUpload() throws Exception {
+        respond("/v1/upload", 200, "krakenIoResponse200.json");
+
+        final DirectUploadRequest directUploadRequest = DirectUploadRequest.builder(new ByteArrayInputStream(loadFileBinary("test.jpg"))).build();
+        assertSuccessfulUploadResponse(asyncKrakenIoClient.directUpload(directUploadRequest).get());
+    }
+
+    @Test
+    public void testDirectFileUpload() throws Exception {
+        respond("/v1/upload", 200, "krakenIoResponse200.json");
+
+        final DirectFileUploadRequest directFileUploadRequest = DirectFileUploadRequest.builder(new File(Resources.getResource(DefaultAsyncKrakenIoClientFunctionalTest.class, "test.jpg").toURI())).build();
+        assertSuccessfulUploadResponse(asyncKrakenIoClient.directUpload(directFileUploadRequest).get());
+    }
+
+    @Test
+    public void testImageUrlUpload() throws Exception {
+        respond("/v1/url", 200, "krakenIoResponse200.json");
+
+        final ImageUrlUploadRequest imageUrlUploadRequest = ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build();
+        assertSuccessfulUploadResponse(asyncKrakenIoClient.imageUrlUpload(imageUrlUploadRequest).get());
+    }
+
+    @Test
+    public void testImageUrlUploadCallbackUrl() throws Exception {
+        respond("/v1/url", 200, "krakenIoCallbackUrlResponse200.json");
+
+        final ImageUrlUploadCallbackUrlRequest imageUrlUploadCallbackUrlRequest = ImageUrlUploadCallbackUrlRequest
+                .builder(new URL("http://somehost/image"), new URL("http://somehost/somecallback"))
+                .build();
+
+        final SuccessfulUploadCallbackUrlResponse successfulUploadCallbackUrlResponse = asyncKrakenIoClient.imageUrlUpload(imageUrlUploadCallbackUrlRequest).get();
+        assertThat(successfulUploadCallbackUrlResponse.getId(), is("18fede37617a787649c3f60b9f1f280d"));
+    }
+
+    @Test
+    public void testImageUrlUploadConcurrent() throws Exception {
+        respond("/v1/url", 200, "krakenIoResponse200.json");
+
+        final List<CompletableFuture<SuccessfulUploadResponse>> futures = new ArrayList<CompletableFuture<SuccessfulUploadResponse>>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(asyncKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image" + i)).build()));
+        }
+
+        for (CompletableFuture<SuccessfulUploadResponse> future : futures) {
+            assertSuccessfulUploadResponse(future.get());
+        }
+    }
+
+    @Test
+    public void testImageUrlUpload_400() throws Exception {
+        respond("/v1/url", 400, "krakenIoResponse400.json");
+
+        try {
+            asyncKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build()).get();
+            fail("Expected KrakenIoRequestException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(KrakenIoRequestException.class));
+            final KrakenIoRequestException krakenIoRequestException = (KrakenIoRequestException) e.getCause();
+            assertThat(krakenIoRequestException.getFailedUploadResponse().getStatus(), is(400));
+            assertThat(krakenIoRequestException.getFailedUploadResponse().getSuccess(), is(false));
+        }
+    }
+
+    @Test
+    public void testImageUrlUploadCallbackUrl_500() throws Exception {
+        respond("/v1/url", 500, "krakenIoResponse500.json");
+
+        try {
+            asyncKrakenIoClient.imageUrlUpload(ImageUrlUploadCallbackUrlRequest.builder(new URL("http://somehost/image"), new URL("http://somehost/somecallback")).build()).get();
+            fail("Expected KrakenIoRequestException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(KrakenIoRequestException.class));
+            assertThat(((KrakenIoRequestException) e.getCause()).getFailedUploadResponse().getStatus(), is(500));
+        }
+    }
+
+    @Test
+    public void testImageUrlUpload_ConnectionRefused() throws Exception {
+        final AsyncKrakenIoClient unreachableClient = new DefaultAsyncKrakenIoClient("somekey", "somesecret", "http://localhost:1", 3000);
+
+        try {
+            unreachableClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build()).get();
+            fail("Expected KrakenIoException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(KrakenIoException.class));
+        }
+    }
+
+    @Test
+    public void testImageUrlUploadDeadlineExceeded() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                                .withDelay(TimeUnit.MILLISECONDS, 2000)
+                );
+
+        final long start = System.nanoTime();
+        try {
+            asyncKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image"))
+                    .withDeadline(300, TimeUnit.MILLISECONDS)
+                    .build()).get();
+            fail("Expected KrakenIoDeadlineExceededException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(KrakenIoDeadlineExceededException.class));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(1500L));
+        }
+
+        awaitRequests("/v1/url", 1);
+    }
+
+    @Test
+    public void testImageUrlUploadDeadlineExceededWaitingForRateLimiter() throws Exception {
+        respond("/v1/url", 200, "krakenIoResponse200.json");
+
+        final DefaultAsyncKrakenIoClient limitedAsyncKrakenIoClient = new DefaultAsyncKrakenIoClient("somekey", "somesecret", KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withRateLimiter(RateLimiter.builder().withRequestsPerSecond(0.5).build())
+                .build());
+        try {
+            limitedAsyncKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build()).get(5, TimeUnit.SECONDS);
+
+            final long start = System.nanoTime();
+            try {
+                limitedAsyncKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image"))
+                        .withDeadline(300, TimeUnit.MILLISECONDS)
+                        .build()).get(5, TimeUnit.SECONDS);
+                fail("Expected KrakenIoDeadlineExceededException");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(KrakenIoDeadlineExceededException.class));
+                assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(300L));
+            }
+        } finally {
+            limitedAsyncKrakenIoClient.close();
+        }
+
+        getMockServerClient().verify(request().withPath("/v1/url"), VerificationTimes.exactly(1));
+    }
+
+    @Test
+    public void testImageUrlUploadFailingMetricsOnResponse() throws Exception {
+        respond("/v1/url", 200, "krakenIoResponse200.json");
+
+        final KrakenIoClientConfig krakenIoClientConfig = KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withMetrics(new FailingMetrics(false))
+                .build();
+        assertFailsWithKrakenIoException(krakenIoClientConfig);
+    }
+
+    @Test
+    public void testImageUrlUploadFailingMetricsAfterRateLimiter() throws Exception {
+        respond("/v1/url", 200, "krakenIoResponse200.json");
+
+        final KrakenIoClientConfig krakenIoClientConfig = KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withRateLimiter(RateLimiter.builder().withRequestsPerSecond(100).build())
+                .withMetrics(new FailingMetrics(true))
+                .build();
+        assertFailsWithKrakenIoException(krakenIoClientConfig);
+    }
+
+    private void assertFailsWithKrakenIoException(KrakenIoClientConfig krakenIoClientConfig) throws Exception {
+        final DefaultAsyncKrakenIoClient failingAsyncKrakenIoClient = new DefaultAsyncKrakenIoClient("somekey", "somesecret", krakenIoClientConfig);
+        try {
+            failingAsyncKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build()).get(5, TimeUnit.SECONDS);
+            fail("Expected KrakenIoException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(KrakenIoException.class));
+            assertThat(e.getCause().getCause(), instanceOf(IllegalStateException.class));
+        } finally {
+            failingAsyncKrakenIoClient.close();
+        }
+    }
+
+    @Test
+    public void testDirectUploadRetry_503() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/upload"),
+                        Times.once()
+                )
+                .respond(
+                        response()
+                                .withStatusCode(503)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse500.json"))
+                );
+        respond("/v1/upload", 200, "krakenIoResponse200.json");
+
+        final KrakenIoClientConfig krakenIoClientConfig = KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withRetryPolicy(RetryPolicy.builder().withInitialBackoff(10).withMaxBackoff(100).build())
+                .build();
+        final DefaultAsyncKrakenIoClient retryingAsyncKrakenIoClient = new DefaultAsyncKrakenIoClient("somekey", "somesecret", krakenIoClientConfig);
+        try {
+            final DirectUploadRequest directUploadRequest = DirectUploadRequest.builder(new ByteArrayInputStream(loadFileBinary("test.jpg"))).build();
+            assertSuccessfulUploadResponse(retryingAsyncKrakenIoClient.directUpload(directUploadRequest).get());
+        } finally {
+            retryingAsyncKrakenIoClient.close();
+        }
+
+        getMockServerClient().verify(request().withPath("/v1/upload"), VerificationTimes.exactly(2));
+    }
+
+    @Test
+    public void testDirectUploadAndDownload() throws Exception {
+        // Text, binary bodies need JAXB in the mock server
+        final byte[] image = Strings.repeat("kraked", 20000).getBytes(Charsets.UTF_8);
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/upload")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody("{\"success\":true,\"file_name\":\"header.jpg\",\"original_size\":" + image.length + ",\"kraked_size\":" + image.length
+                                        + ",\"saved_bytes\":0,\"kraked_url\":\"http://localhost:1080/dl/header.jpg\"}")
+                );
+        getMockServerClient()
+                .when(
+                        request()
+                                .withMethod("GET")
+                                .withPath("/dl/header.jpg")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "image/jpeg"))
+                                .withBody(new String(image, Charsets.UTF_8))
+                );
+
+        final DefaultAsyncKrakenIoClient defaultAsyncKrakenIoClient = (DefaultAsyncKrakenIoClient) asyncKrakenIoClient;
+        final Path target = temporaryFolder.getRoot().toPath().resolve("header.jpg");
+        final DirectUploadRequest directUploadRequest = DirectUploadRequest.builder(new ByteArrayInputStream(image)).build();
+
+        final long bytes = defaultAsyncKrakenIoClient.directUpload(directUploadRequest)
+                .thenCompose(successfulUploadResponse -> defaultAsyncKrakenIoClient.downloadTo(successfulUploadResponse, target))
+                .get();
+
+        assertThat(bytes, is((long) image.length));
+        assertThat(Files.readAllBytes(target), is(image));
+    }
+
+    @Test
+    public void testRequestsInFlightBeyondConnectionPool() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                                .withDelay(TimeUnit.MILLISECONDS, 100)
+                );
+
+        // Responses are handled on the thread which ran the request
+        final Set<Thread> requestThreads = ConcurrentHashMap.newKeySet();
+        final KrakenIoClientConfig krakenIoClientConfig = KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withMaxTotalConnections(2)
+                .withMaxConnectionsPerRoute(2)
+                .withMetrics(new HdrHistogramKrakenIoMetrics() {
+                    @Override
+                    public void requestCompleted(Endpoint endpoint, int status, RequestTimings requestTimings, long uploadedBytes) {
+                        requestThreads.add(Thread.currentThread());
+                        super.requestCompleted(endpoint, status, requestTimings, uploadedBytes);
+                    }
+                })
+                .build();
+        final DefaultAsyncKrakenIoClient pooledAsyncKrakenIoClient = new DefaultAsyncKrakenIoClient("somekey", "somesecret", krakenIoClientConfig);
+        try {
+            final List<CompletableFuture<SuccessfulUploadResponse>> futures = new ArrayList<CompletableFuture<SuccessfulUploadResponse>>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(pooledAsyncKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image" + i)).build()));
+            }
+            for (CompletableFuture<SuccessfulUploadResponse> future : futures) {
+                assertSuccessfulUploadResponse(future.get());
+            }
+        } finally {
+            pooledAsyncKrakenIoClient.close();
+        }
+
+        for (Thread requestThread : requestThreads) {
+            assertThat(requestThread.getName(), startsWith("kraken-io-async-"));
+        }
+        if (!AsyncExecutors.isVirtualThreadsSupported()) {
+            assertThat(requestThreads, hasSize(2));
+        }
+    }
+
+    private void assertSuccessfulUploadResponse(SuccessfulUploadResponse successfulUploadResponse) {
+        assertThat(successfulUploadResponse.getStatus(), is(200));
+        assertThat(successfulUploadResponse.getSuccess(), is(true));
+        assertThat(successfulUploadResponse.getFileName(), is("header.jpg"));
+        assertThat(successfulUploadResponse.getKrakedUrl(), is("http://dl.kraken.io/ecdfa5c55d5668b1b5fe9e420554c4ee/header.jpg"));
+        assertThat(successfulUploadResponse.getOriginalSizeLong(), is(100L));
+        assertThat(successfulUploadResponse.getSavedBytesLong(), is(50L));
+        assertThat(successfulUploadResponse.getKrakedSizeLong(), is(50L));
+    }
+
+    private void respond(String path, int statusCode, String bodyFileName) throws IOException {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath(path)
+                )
+                .respond(
+                        response()
+                                .withStatusCode(statusCode)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString(bodyFileName))
+                );
+    }
+
+    private String loadFileString(String fileName) throws IOException {
+        return Resources.toString(Resources.getResource(DefaultAsyncKrakenIoClientFunctionalTest.class, fileName), Charsets.UTF_8);
+    }
+
+    private byte[] loadFileBinary(String fileName) throws IOException {
+        return Resources.toByteArray(Resources.getResource(DefaultAsyncKrakenIoClientFunctionalTest.class, fileName));
+    }
+
+    /**
+     * Metrics of a broken user implementation, throwing when a request starts or completes.
+     */
+    private static final class FailingMetrics implements KrakenIoMetrics {
+        private final boolean failOnStart;
+
+        private FailingMetrics(boolean failOnStart) {
+            this.failOnStart = failOnStart;
+        }
+
+        @Override
+        public void requestStarted(Endpoint endpoint) {
+            if (failOnStart) {
+                throw new IllegalStateException("requestStarted");
+            }
+        }
+
+        @Override
+        public void requestCompleted(Endpoint endpoint, int status, RequestTimings requestTimings, long uploadedBytes) {
+            throw new IllegalStateException("requestCompleted");
+        }
+
+        @Override
+        public void requestFailed(Endpoint endpoint, Throwable throwable) {
+        }
+
+        @Override
+        public void bytesSaved(Endpoint endpoint, long savedBytes) {
+        }
+    }
+}
@@ -16,35 +16,74 @@
 package io.kraken.client.impl;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.io.Resources;
 import io.kraken.client.AbstractFunctionalTest;
 import io.kraken.client.KrakenIoClient;
+import io.kraken.client.circuitbreaker.CircuitBreaker;
+import io.kraken.client.circuitbreaker.CircuitState;
+import io.kraken.client.config.KrakenIoClientConfig;
+import io.kraken.client.exception.KrakenIoCircuitOpenException;
+import io.kraken.client.exception.KrakenIoDeadlineExceededException;
 import io.kraken.client.exception.KrakenIoException;
 import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.hedge.HedgingKrakenIoClient;
+import io.kraken.client.hedge.HedgingPolicy;
+import io.kraken.client.logging.RequestLogging;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.metrics.HdrHistogramKrakenIoMetrics;
+import io.kraken.client.metrics.KrakenIoMetrics;
+import io.kraken.client.metrics.Phase;
+import io.kraken.client.model.ConnectionPoolStats;
 import io.kraken.client.model.RGBA;
 import io.kraken.client.model.request.*;
 import io.kraken.client.model.resize.FillResize;
 import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
 import io.kraken.client.model.response.SuccessfulUploadResponse;
+import io.kraken.client.ratelimit.RateLimiter;
+import io.kraken.client.retry.RetryPolicy;
+import io.kraken.client.timeout.TimeoutPolicy;
 import org.apache.commons.fileupload.MultipartStream;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockserver.matchers.Times;
 import org.mockserver.mock.Expectation;
 import org.mockserver.model.Header;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.verify.VerificationTimes;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static net.javacrumbs.jsonunit.JsonMatchers.jsonEquals;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 import static org.mockserver.model.HttpRequest.request;
 import static org.mockserver.model.HttpResponse.response;
 
@@ -56,6 +95,9 @@ public class DefaultKrakenIoClientFunctionalTest extends AbstractFunctionalTest
 
     private static final Pattern MULTIPART_BOUNDARY_PATTERN = Pattern.compile("multipart/form-data;boundary=(.*)");
 
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private KrakenIoClient krakenIoClient;
 
     @Before
@@ -708,6 +750,826 @@ public class DefaultKrakenIoClientFunctionalTest extends AbstractFunctionalTest
         }
     }
 
+    @Test
+    public void testConnectionPoolStats() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                );
+
+        final KrakenIoClientConfig krakenIoClientConfig = KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withMaxTotalConnections(5)
+                .withMaxConnectionsPerRoute(5)
+                .build();
+        final DefaultKrakenIoClient pooledKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", krakenIoClientConfig);
+        try {
+            pooledKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+            pooledKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+
+            final ConnectionPoolStats connectionPoolStats = pooledKrakenIoClient.getConnectionPoolStats();
+            assertThat(connectionPoolStats.getMax(), is(5));
+            assertThat(connectionPoolStats.getLeased(), is(0));
+            assertThat(connectionPoolStats.getAvailable(), is(1));
+        } finally {
+            pooledKrakenIoClient.close();
+        }
+    }
+
+    @Test
+    public void testDirectUploadRetry_503() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/upload"),
+                        Times.once()
+                )
+                .respond(
+                        response()
+                                .withStatusCode(503)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse500.json"))
+                );
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/upload")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                );
+
+        final DefaultKrakenIoClient retryingKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", retryConfig());
+        try {
+            final DirectUploadRequest directUploadRequest = DirectUploadRequest.builder(new ByteArrayInputStream(loadFileBinary("test.jpg"))).build();
+            final SuccessfulUploadResponse successfulUploadResponse = retryingKrakenIoClient.directUpload(directUploadRequest);
+            assertThat(successfulUploadResponse.getStatus(), is(200));
+        } finally {
+            retryingKrakenIoClient.close();
+        }
+
+        final Expectation[] expectations = getMockServerClient().retrieveAsExpectations(request().withPath("/v1/upload"));
+        assertThat(Arrays.asList(expectations), hasSize(2));
+        for (Expectation expectation : expectations) {
+            final MultipartStream multipartStream = new MultipartStream(new ByteArrayInputStream(expectation.getHttpRequest().getBodyAsRawBytes()), getMultipartBoundary(expectation));
+            final ByteArrayOutputStream image = new ByteArrayOutputStream();
+            multipartStream.skipPreamble();
+            multipartStream.readHeaders();
+            multipartStream.discardBodyData();
+            multipartStream.readBoundary();
+            multipartStream.readHeaders();
+            multipartStream.readBodyData(image);
+            assertThat(image.toByteArray(), is(loadFileBinary("test.jpg")));
+        }
+    }
+
+    @Test
+    public void testDirectUploadContentLength() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/upload")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                );
+
+        final byte[] imageBytes = loadFileBinary("test.jpg");
+        final DirectUploadRequest directUploadRequest = DirectUploadRequest.builder(new BufferedInputStream(new ByteArrayInputStream(imageBytes)))
+                .withContentLength(imageBytes.length)
+                .build();
+        assertThat(krakenIoClient.directUpload(directUploadRequest).getStatus(), is(200));
+
+        final Expectation[] expectations = getMockServerClient().retrieveAsExpectations(request().withPath("/v1/upload"));
+        assertThat(Arrays.asList(expectations), hasSize(1));
+        final HttpRequest httpRequest = expectations[0].getHttpRequest();
+        assertThat(httpRequest.getFirstHeader("Content-Length"), is(String.valueOf(httpRequest.getBodyAsRawBytes().length)));
+        assertThat(httpRequest.getFirstHeader("Transfer-Encoding"), isEmptyOrNullString());
+        assertThat(httpRequest.getFirstHeader(ContentLength.HINT_HEADER), isEmptyOrNullString());
+    }
+
+    @Test
+    public void testDirectUploadContentLengthMismatch() throws Exception {
+        final byte[] imageBytes = loadFileBinary("test.jpg");
+        final DirectUploadRequest directUploadRequest = DirectUploadRequest.builder(new BufferedInputStream(new ByteArrayInputStream(imageBytes)))
+                .withContentLength(imageBytes.length + 1)
+                .build();
+
+        final DefaultKrakenIoClient retryingKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", retryConfig());
+        try {
+            retryingKrakenIoClient.directUpload(directUploadRequest);
+            fail("Expected KrakenIoException");
+        } catch (KrakenIoException e) {
+            assertThat(e.getMessage(), containsString("content length"));
+        } finally {
+            retryingKrakenIoClient.close();
+        }
+
+        getMockServerClient().verify(request().withPath("/v1/upload"), VerificationTimes.exactly(0));
+    }
+
+    @Test
+    public void testDirectUploadStreamingNoRetry_503() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/upload")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(503)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse500.json"))
+                );
+
+        final DefaultKrakenIoClient retryingKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", retryConfig());
+        try {
+            final DirectUploadRequest directUploadRequest = DirectUploadRequest.builder(new BufferedInputStream(new ByteArrayInputStream(loadFileBinary("test.jpg"))))
+                    .withStreaming(true)
+                    .build();
+            retryingKrakenIoClient.directUpload(directUploadRequest);
+            fail("Expected KrakenIoRequestException");
+        } catch (KrakenIoRequestException e) {
+            assertThat(e.getFailedUploadResponse().getStatus(), is(503));
+        } finally {
+            retryingKrakenIoClient.close();
+        }
+
+        getMockServerClient().verify(request().withPath("/v1/upload"), VerificationTimes.exactly(1));
+    }
+
+    @Test
+    public void testImageUrlUploadNoRetry_429_RetryAfterTooLong() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(429)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withHeader(new Header("Retry-After", "3600"))
+                                .withBody(loadFileString("krakenIoResponse500.json"))
+                );
+
+        final DefaultKrakenIoClient retryingKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", retryConfig());
+        try {
+            retryingKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+            fail("Expected KrakenIoRequestException");
+        } catch (KrakenIoRequestException e) {
+            assertThat(e.getFailedUploadResponse().getStatus(), is(429));
+        } finally {
+            retryingKrakenIoClient.close();
+        }
+
+        getMockServerClient().verify(request().withPath("/v1/url"), VerificationTimes.exactly(1));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/upload")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                );
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(500)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse500.json"))
+                );
+
+        final HdrHistogramKrakenIoMetrics metrics = new HdrHistogramKrakenIoMetrics();
+        final KrakenIoClientConfig krakenIoClientConfig = KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withMetrics(metrics)
+                .build();
+        final DefaultKrakenIoClient instrumentedKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", krakenIoClientConfig);
+        try {
+            instrumentedKrakenIoClient.directUpload(DirectUploadRequest.builder(new ByteArrayInputStream(loadFileBinary("test.jpg"))).build());
+            try {
+                instrumentedKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+                fail("Expected KrakenIoRequestException");
+            } catch (KrakenIoRequestException e) {
+                assertThat(e.getFailedUploadResponse().getStatus(), is(500));
+            }
+        } finally {
+            instrumentedKrakenIoClient.close();
+        }
+
+        assertThat(metrics.getHistogram(Endpoint.UPLOAD, Phase.TOTAL).getTotalCount(), is(1L));
+        assertThat(metrics.getHistogram(Endpoint.UPLOAD, Phase.UPLOAD).getTotalCount(), is(1L));
+        assertThat(metrics.getUploadedBytes(Endpoint.UPLOAD), greaterThan((long) loadFileBinary("test.jpg").length));
+        assertThat(metrics.getSavedBytes(Endpoint.UPLOAD), is(50L));
+        assertThat(metrics.getInFlight(Endpoint.UPLOAD), is(0L));
+        assertThat(metrics.getErrorCounts(Endpoint.UPLOAD).entrySet(), empty());
+
+        assertThat(metrics.getHistogram(Endpoint.URL, Phase.TOTAL).getTotalCount(), is(1L));
+        assertThat(metrics.getErrorCounts(Endpoint.URL), hasEntry(500, 1L));
+        assertThat(metrics.getSavedBytes(Endpoint.URL), is(0L));
+        assertThat(metrics.getInFlight(Endpoint.URL), is(0L));
+    }
+
+    @Test
+    public void testRequestLogging() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/upload")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                );
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(500)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse500.json"))
+                );
+
+        final List<LogRecord> logRecords = new CopyOnWriteArrayList<LogRecord>();
+        final Logger logger = Logger.getLogger(DefaultKrakenIoClientFunctionalTest.class.getCanonicalName());
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.INFO);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                logRecords.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        final KrakenIoClientConfig krakenIoClientConfig = KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withRequestLogging(RequestLogging.builder().withLogger(logger).build())
+                .build();
+        final DefaultKrakenIoClient loggingKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", krakenIoClientConfig);
+        try {
+            loggingKrakenIoClient.directUpload(DirectUploadRequest.builder(new ByteArrayInputStream(loadFileBinary("test.jpg"))).withLossy(true).build());
+            try {
+                loggingKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+                fail("Expected KrakenIoRequestException");
+            } catch (KrakenIoRequestException e) {
+                assertThat(e.getFailedUploadResponse().getStatus(), is(500));
+            }
+        } finally {
+            loggingKrakenIoClient.close();
+        }
+
+        assertThat(logRecords, hasSize(2));
+        assertThat(logRecords.get(0).getLevel(), is(Level.INFO));
+        assertThat(logRecords.get(0).getMessage(), startsWith("endpoint=/v1/upload status=200 "));
+        assertThat(logRecords.get(0).getMessage(), containsString("request={\"dev\":false,\"wait\":true,\"webp\":false,\"lossy\":true"));
+        assertThat(logRecords.get(0).getMessage(), containsString("response={\"success\":true"));
+        assertThat(logRecords.get(1).getMessage(), startsWith("endpoint=/v1/url status=500 "));
+        assertThat(logRecords.get(1).getMessage(), containsString("\"url\":\"http://somehost/image\""));
+        assertThat(logRecords.get(1).getMessage(), containsString("response={\"success\":false"));
+        for (LogRecord logRecord : logRecords) {
+            assertThat(logRecord.getMessage(), not(containsString("somesecret")));
+        }
+    }
+
+    @Test
+    public void testCircuitBreakerFailsFast() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(503)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse500.json"))
+                );
+
+        final HdrHistogramKrakenIoMetrics metrics = new HdrHistogramKrakenIoMetrics();
+        final CircuitBreaker circuitBreaker = CircuitBreaker.builder()
+                .withSlidingWindowSize(10)
+                .withMinimumNumberOfCalls(2)
+                .build();
+        final KrakenIoClientConfig krakenIoClientConfig = KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withCircuitBreaker(circuitBreaker)
+                .withMetrics(metrics)
+                .build();
+        final DefaultKrakenIoClient guardedKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", krakenIoClientConfig);
+        try {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    guardedKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+                    fail("Expected KrakenIoRequestException");
+                } catch (KrakenIoRequestException e) {
+                    assertThat(e.getFailedUploadResponse().getStatus(), is(503));
+                }
+            }
+
+            try {
+                guardedKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+                fail("Expected KrakenIoCircuitOpenException");
+            } catch (KrakenIoCircuitOpenException e) {
+                assertThat(e.getEndpoint(), is(Endpoint.URL));
+            }
+        } finally {
+            guardedKrakenIoClient.close();
+        }
+
+        getMockServerClient().verify(request().withPath("/v1/url"), VerificationTimes.exactly(2));
+        assertThat(circuitBreaker.getState(Endpoint.URL), is(CircuitState.OPEN));
+        assertThat(circuitBreaker.getState(Endpoint.UPLOAD), is(CircuitState.CLOSED));
+        assertThat(metrics.getCircuitState(Endpoint.URL), is(CircuitState.OPEN));
+        assertThat(metrics.getRejectedCount(Endpoint.URL), is(1L));
+    }
+
+    @Test
+    public void testImageUrlUploadHedged() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url"),
+                        Times.once()
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                                .withDelay(TimeUnit.MILLISECONDS, 2000)
+                );
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                );
+
+        final HdrHistogramKrakenIoMetrics metrics = new HdrHistogramKrakenIoMetrics();
+        final HedgingPolicy hedgingPolicy = HedgingPolicy.builder()
+                .withDelay(100, TimeUnit.MILLISECONDS)
+                .withMetrics(metrics)
+                .build();
+        final DefaultKrakenIoClient defaultKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", "http://localhost:1080", 3000);
+        try {
+            final long start = System.nanoTime();
+            final SuccessfulUploadResponse successfulUploadResponse = new HedgingKrakenIoClient(defaultKrakenIoClient, hedgingPolicy)
+                    .imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+
+            assertThat(successfulUploadResponse.getStatus(), is(200));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(1500L));
+            assertThat(metrics.getHedgedCount(Endpoint.URL), is(1L));
+        } finally {
+            defaultKrakenIoClient.close();
+        }
+
+        getMockServerClient().verify(request().withPath("/v1/url"), VerificationTimes.exactly(2));
+    }
+
+    @Test
+    public void testImageUrlUploadDeadlineExceeded() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                                .withDelay(TimeUnit.MILLISECONDS, 2000)
+                );
+
+        final HdrHistogramKrakenIoMetrics metrics = new HdrHistogramKrakenIoMetrics();
+        final CircuitBreaker circuitBreaker = CircuitBreaker.builder()
+                .withSlidingWindowSize(10)
+                .withMinimumNumberOfCalls(1)
+                .build();
+        final DefaultKrakenIoClient deadlineKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withMetrics(metrics)
+                .withCircuitBreaker(circuitBreaker)
+                .build());
+        final long start = System.nanoTime();
+        try {
+            deadlineKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image"))
+                    .withDeadline(300, TimeUnit.MILLISECONDS)
+                    .build());
+            fail("Expected KrakenIoDeadlineExceededException");
+        } catch (KrakenIoDeadlineExceededException e) {
+            assertThat(e.getEndpoint(), is(Endpoint.URL));
+            assertThat(e.getDeadline(), is(300L));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(1500L));
+            assertThat(metrics.getDeadlineExceededCount(Endpoint.URL), is(1L));
+            // Recorded as slow call, the only one in the window
+            assertThat(circuitBreaker.getState(Endpoint.URL), is(CircuitState.OPEN));
+        } finally {
+            deadlineKrakenIoClient.close();
+        }
+
+        awaitRequests("/v1/url", 1);
+    }
+
+    @Test
+    public void testImageUrlUploadNoRetry_503_BackoffBeyondDeadline() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(503)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withHeader(new Header("Retry-After", "2"))
+                                .withBody(loadFileString("krakenIoResponse500.json"))
+                );
+
+        final DefaultKrakenIoClient retryingKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withRetryPolicy(RetryPolicy.builder().withMaxAttempts(3).withMaxBackoff(5000).build())
+                .build());
+        try {
+            retryingKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image"))
+                    .withDeadline(1, TimeUnit.SECONDS)
+                    .build());
+            fail("Expected KrakenIoRequestException");
+        } catch (KrakenIoRequestException e) {
+            assertThat(e.getFailedUploadResponse().getStatus(), is(503));
+        } finally {
+            retryingKrakenIoClient.close();
+        }
+
+        getMockServerClient().verify(request().withPath("/v1/url"), VerificationTimes.exactly(1));
+    }
+
+    @Test
+    public void testImageUrlUploadNoRetry_ReadTimeout() throws Exception {
+        delayedResponse("/v1/url", 500);
+
+        final HdrHistogramKrakenIoMetrics metrics = new HdrHistogramKrakenIoMetrics();
+        final DefaultKrakenIoClient retryingKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", readTimeoutConfig(RetryPolicy.builder()
+                .withInitialBackoff(10)
+                .withMaxBackoff(100)
+                .build(), metrics));
+        try {
+            retryingKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+            fail("Expected read timeout");
+        } catch (RuntimeException e) {
+            assertThat(Throwables.getRootCause(e), instanceOf(SocketTimeoutException.class));
+        } finally {
+            retryingKrakenIoClient.close();
+        }
+
+        assertThat(metrics.getFailureCount(Endpoint.URL), is(1L));
+        awaitRequests("/v1/url", 1);
+    }
+
+    @Test
+    public void testImageUrlUploadCallbackUrlNoRetry_ReadTimeout() throws Exception {
+        delayedResponse("/v1/url", 500);
+
+        final HdrHistogramKrakenIoMetrics metrics = new HdrHistogramKrakenIoMetrics();
+        final DefaultKrakenIoClient retryingKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", readTimeoutConfig(RetryPolicy.builder()
+                .withMaxAttempts(3)
+                .withInitialBackoff(10)
+                .withMaxBackoff(100)
+                .withNonIdempotentRetries(true)
+                .build(), metrics));
+        try {
+            try {
+                retryingKrakenIoClient.imageUrlUpload(ImageUrlUploadCallbackUrlRequest.builder(new URL("http://somehost/image"), new URL("http://somehost/somecallback")).build());
+                fail("Expected read timeout");
+            } catch (RuntimeException e) {
+                assertThat(Throwables.getRootCause(e), instanceOf(SocketTimeoutException.class));
+            }
+            assertThat(metrics.getFailureCount(Endpoint.URL), is(1L));
+
+            // Retried when opted in, unless calling back
+            try {
+                retryingKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+                fail("Expected read timeout");
+            } catch (RuntimeException e) {
+                assertThat(Throwables.getRootCause(e), instanceOf(SocketTimeoutException.class));
+            }
+            assertThat(metrics.getFailureCount(Endpoint.URL), is(4L));
+        } finally {
+            retryingKrakenIoClient.close();
+        }
+
+        awaitRequests("/v1/url", 4);
+    }
+
+    @Test
+    public void testRequestFailedBeforeSending() throws Exception {
+        final HdrHistogramKrakenIoMetrics metrics = new HdrHistogramKrakenIoMetrics();
+        final DefaultKrakenIoClient failingKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withMetrics(metrics)
+                .build());
+        try {
+            failingKrakenIoClient.execute(Endpoint.URL, ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build(), () -> {
+                throw new IllegalStateException("entity");
+            }, 0, response -> response);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(metrics.getFailureCount(Endpoint.URL), is(1L));
+            assertThat(metrics.getInFlight(Endpoint.URL), is(0L));
+        } finally {
+            failingKrakenIoClient.close();
+        }
+    }
+
+    @Test
+    public void testImageUrlUploadDeadlineExceededWaitingForRateLimiter() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                );
+
+        final DefaultKrakenIoClient limitedKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withRateLimiter(RateLimiter.builder().withRequestsPerSecond(0.5).build())
+                .build());
+        try {
+            limitedKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+
+            final long start = System.nanoTime();
+            try {
+                limitedKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image"))
+                        .withDeadline(300, TimeUnit.MILLISECONDS)
+                        .build());
+                fail("Expected KrakenIoDeadlineExceededException");
+            } catch (KrakenIoDeadlineExceededException e) {
+                // Gives up right away instead of sleeping into the deadline
+                assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(300L));
+            }
+        } finally {
+            limitedKrakenIoClient.close();
+        }
+
+        getMockServerClient().verify(request().withPath("/v1/url"), VerificationTimes.exactly(1));
+    }
+
+    @Test
+    public void testImageUrlUploadDeadlineExceededWaitingForConnection() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath("/v1/url")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                                .withDelay(TimeUnit.MILLISECONDS, 1500)
+                );
+
+        final DefaultKrakenIoClient poolKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withMaxTotalConnections(1)
+                .withMaxConnectionsPerRoute(1)
+                .withConnectionRequestTimeout(10000)
+                .build());
+        final Thread holder = new Thread(() -> {
+            try {
+                poolKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try {
+            holder.start();
+            while (poolKrakenIoClient.getConnectionPoolStats().getLeased() == 0) {
+                Thread.sleep(10);
+            }
+
+            final long start = System.nanoTime();
+            try {
+                poolKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image"))
+                        .withDeadline(300, TimeUnit.MILLISECONDS)
+                        .build());
+                fail("Expected KrakenIoDeadlineExceededException");
+            } catch (KrakenIoDeadlineExceededException e) {
+                assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(1000L));
+            }
+            holder.join();
+        } finally {
+            poolKrakenIoClient.close();
+        }
+    }
+
+    @Test
+    public void testTimeoutPolicyScalesWithUploadSize() throws Exception {
+        getMockServerClient()
+                .when(
+                        request()
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                                .withDelay(TimeUnit.MILLISECONDS, 800)
+                );
+
+        // test.jpg has about 0.12 MB, its uploads wait 300 ms + 1.2 s for the response
+        final DefaultKrakenIoClient timeoutKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withTimeoutPolicy(TimeoutPolicy.builder()
+                        .withReadTimeout(300)
+                        .withTimePerMegabyte(10, TimeUnit.SECONDS)
+                        .build())
+                .build());
+        try {
+            final SuccessfulUploadResponse successfulUploadResponse = timeoutKrakenIoClient.directUpload(DirectUploadRequest.builder(new ByteArrayInputStream(loadFileBinary("test.jpg"))).build());
+            assertThat(successfulUploadResponse.getStatus(), is(200));
+
+            try {
+                timeoutKrakenIoClient.imageUrlUpload(ImageUrlUploadRequest.builder(new URL("http://somehost/image")).build());
+                fail("Expected read timeout");
+            } catch (RuntimeException e) {
+                assertThat(Throwables.getRootCause(e), instanceOf(SocketTimeoutException.class));
+            }
+        } finally {
+            timeoutKrakenIoClient.close();
+        }
+
+        awaitRequests("/v1/url", 1);
+    }
+
+    @Test
+    public void testDownloadTo() throws Exception {
+        final byte[] image = downloadBody();
+        respondDownload(image);
+
+        final Path target = temporaryFolder.getRoot().toPath().resolve("header.jpg");
+        final DefaultKrakenIoClient defaultKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", "http://localhost:1080", 3000);
+        try {
+            assertThat(defaultKrakenIoClient.downloadTo(downloadable(image.length), target), is((long) image.length));
+        } finally {
+            defaultKrakenIoClient.close();
+        }
+
+        assertThat(Files.readAllBytes(target), is(image));
+        assertThat(temporaryFolder.getRoot().list(), arrayContaining("header.jpg"));
+        if (target.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            // Default permissions of new files rather than those of temp files
+            final Path reference = temporaryFolder.newFile("reference.jpg").toPath();
+            assertThat(Files.getPosixFilePermissions(target), is(Files.getPosixFilePermissions(reference)));
+        }
+    }
+
+    @Test
+    public void testDownloadToKeepsPermissionsOfReplacedFile() throws Exception {
+        final Path target = temporaryFolder.getRoot().toPath().resolve("header.jpg");
+        Files.write(target, new byte[]{1, 2, 3});
+        assumeTrue(target.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        final Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(target, permissions);
+
+        final byte[] image = downloadBody();
+        respondDownload(image);
+        final DefaultKrakenIoClient defaultKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", "http://localhost:1080", 3000);
+        try {
+            defaultKrakenIoClient.downloadTo(downloadable(image.length), target);
+        } finally {
+            defaultKrakenIoClient.close();
+        }
+
+        assertThat(Files.readAllBytes(target), is(image));
+        assertThat(Files.getPosixFilePermissions(target), is(permissions));
+    }
+
+    @Test
+    public void testDownloadToSizeMismatch() throws Exception {
+        final byte[] image = downloadBody();
+        respondDownload(image);
+
+        final Path target = temporaryFolder.getRoot().toPath().resolve("header.jpg");
+        final DefaultKrakenIoClient defaultKrakenIoClient = new DefaultKrakenIoClient("somekey", "somesecret", "http://localhost:1080", 3000);
+        try {
+            defaultKrakenIoClient.downloadTo(downloadable(image.length + 1), target);
+            fail("Expected KrakenIoException");
+        } catch (KrakenIoException e) {
+            assertThat(e.getMessage(), containsString("expected " + (image.length + 1)));
+        } finally {
+            defaultKrakenIoClient.close();
+        }
+
+        assertThat(temporaryFolder.getRoot().list(), emptyArray());
+    }
+
+    private byte[] downloadBody() {
+        // Text, binary bodies need JAXB in the mock server; larger than the download buffer
+        return Strings.repeat("kraked", 20000).getBytes(Charsets.UTF_8);
+    }
+
+    private void respondDownload(byte[] image) {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withMethod("GET")
+                                .withPath("/dl/header.jpg")
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "image/jpeg"))
+                                .withBody(new String(image, Charsets.UTF_8))
+                );
+    }
+
+    private SuccessfulUploadResponse downloadable(long krakedSize) {
+        return new SuccessfulUploadResponse(true, "header.jpg", 100L, krakedSize, 100L - krakedSize, "http://localhost:1080/dl/header.jpg");
+    }
+
+    private void delayedResponse(String path, long delayMillis) throws IOException {
+        getMockServerClient()
+                .when(
+                        request()
+                                .withPath(path)
+                )
+                .respond(
+                        response()
+                                .withStatusCode(200)
+                                .withHeader(new Header("Content-Type", "application/json"))
+                                .withBody(loadFileString("krakenIoResponse200.json"))
+                                .withDelay(TimeUnit.MILLISECONDS, delayMillis)
+                );
+    }
+
+    private KrakenIoClientConfig readTimeoutConfig(RetryPolicy retryPolicy, KrakenIoMetrics metrics) {
+        return KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withReadTimeout(200)
+                .withRetryPolicy(retryPolicy)
+                .withMetrics(metrics)
+                .build();
+    }
+
+    private KrakenIoClientConfig retryConfig() {
+        return KrakenIoClientConfig.builder()
+                .withBaseUrl("http://localhost:1080")
+                .withRetryPolicy(RetryPolicy.builder()
+                        .withMaxAttempts(3)
+                        .withInitialBackoff(10)
+                        .withMaxBackoff(100)
+                        .build())
+                .build();
+    }
+
     private byte[] getMultipartBoundary(Expectation expectation) {
         final String contentType = expectation.getHttpRequest().getFirstHeader("Content-Type");
         final Matcher matcher = MULTIPART_BOUNDARY_PATTERN.matcher(contentType);
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kraken.client.model.*;
+import io.kraken.client.model.request.*;
+import io.kraken.client.model.resize.FillResize;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class RequestWriterTest {
+
+    private final ObjectMapper objectMapper = AbstractKrakenIoClient.createObjectMapper();
+    private final RequestWriter requestWriter = new RequestWriter(objectMapper, "some\"key", "somesecret");
+
+    @Test
+    public void testWriteSimpleRequests() throws Exception {
+        final URL imageUrl = new URL("http://somehost/image.jpg");
+        final URL callbackUrl = new URL("http://somehost/callback?id=1");
+
+        assertSameAsAuthWrapper(DirectUploadRequest.builder(new ByteArrayInputStream(new byte[0])).build());
+        assertSameAsAuthWrapper(DirectFileUploadRequest.builder(new File("image.jpg")).build());
+        assertSameAsAuthWrapper(DirectUploadCallbackUrlRequest.builder(new ByteArrayInputStream(new byte[0]), callbackUrl).build());
+        assertSameAsAuthWrapper(DirectFileUploadCallbackUrlRequest.builder(new File("image.jpg"), callbackUrl).build());
+        assertSameAsAuthWrapper(ImageUrlUploadRequest.builder(imageUrl).build());
+        assertSameAsAuthWrapper(ImageUrlUploadCallbackUrlRequest.builder(imageUrl, callbackUrl).build());
+    }
+
+    @Test
+    public void testWriteAllOptions() throws Exception {
+        final ImageUrlUploadRequest imageUrlUploadRequest = ImageUrlUploadRequest.builder(new URL("http://somehost/image.jpg"))
+                .withDev(true)
+                .withWebp(true)
+                .withQuality(80)
+                .withAutoOrient(true)
+                .withResize(new FillResize(150, 150, new RGBA(100, 100, 100, BigDecimal.ONE)))
+                .withPreserveMeta(Metadata.DATE)
+                .withPreserveMeta(Metadata.GEOTAG)
+                .withConvert(new Convert(ImageFormat.PNG, new RGBA(10, 20, 30, BigDecimal.ONE), true))
+                .withDeadline(5, TimeUnit.SECONDS)
+                .build();
+
+        assertSameAsAuthWrapper(imageUrlUploadRequest);
+        assertThat(objectMapper.readTree(requestWriter.write(imageUrlUploadRequest)).has("deadline"), is(false));
+    }
+
+    private void assertSameAsAuthWrapper(AbstractUploadRequest abstractUploadRequest) throws Exception {
+        final byte[] expected = objectMapper.writeValueAsBytes(new AuthWrapper<>(new Auth("some\"key", "somesecret"), abstractUploadRequest));
+
+        assertThat(objectMapper.readTree(requestWriter.write(abstractUploadRequest)), is(objectMapper.readTree(expected)));
+    }
+}
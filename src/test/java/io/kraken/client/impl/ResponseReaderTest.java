@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.google.common.base.Charsets;
+import io.kraken.client.model.response.AbstractUploadResponse;
+import io.kraken.client.model.response.FailedUploadResponse;
+import io.kraken.client.model.response.SuccessfulUploadCallbackUrlResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class ResponseReaderTest {
+
+    private final ResponseReader responseReader = new ResponseReader(AbstractKrakenIoClient.createObjectMapper().getFactory());
+
+    @Test
+    public void testReadSuccessfulUploadResponse() throws Exception {
+        final AbstractUploadResponse abstractUploadResponse = responseReader.readUploadResponse(json(
+                "{\"file_name\":\"header.jpg\",\"original_size\":5000000000,\"kraked_size\":4000000000,"
+                        + "\"saved_bytes\":1000000000,\"kraked_url\":\"http://dl.kraken.io/header.jpg\","
+                        + "\"unknown\":{\"nested\":[1,2.5,{\"a\":null}]},\"success\":true}"));
+
+        assertThat(abstractUploadResponse, instanceOf(SuccessfulUploadResponse.class));
+        final SuccessfulUploadResponse successfulUploadResponse = (SuccessfulUploadResponse) abstractUploadResponse;
+        assertThat(successfulUploadResponse.getSuccess(), is(true));
+        assertThat(successfulUploadResponse.getFileName(), is("header.jpg"));
+        assertThat(successfulUploadResponse.getOriginalSizeLong(), is(5000000000L));
+        assertThat(successfulUploadResponse.getKrakedSizeLong(), is(4000000000L));
+        assertThat(successfulUploadResponse.getSavedBytesLong(), is(1000000000L));
+        assertThat(successfulUploadResponse.getOriginalSize(), is(Integer.MAX_VALUE));
+        assertThat(successfulUploadResponse.getKrakedUrl(), is("http://dl.kraken.io/header.jpg"));
+    }
+
+    @Test
+    public void testReadFailedUploadResponse() throws Exception {
+        final AbstractUploadResponse abstractUploadResponse = responseReader.readUploadResponse(json("{\"success\":false,\"message\":\"Unknown API Key\"}"));
+
+        assertThat(abstractUploadResponse, instanceOf(FailedUploadResponse.class));
+        assertThat(((FailedUploadResponse) abstractUploadResponse).getMessage(), is("Unknown API Key"));
+        assertThat(responseReader.readFailedUploadResponse(json("{\"success\":false,\"message\":\"Unknown API Key\"}")).getMessage(), is("Unknown API Key"));
+    }
+
+    @Test
+    public void testReadCallbackUrlResponse() throws Exception {
+        final SuccessfulUploadCallbackUrlResponse successfulUploadCallbackUrlResponse = responseReader.readCallbackUrlResponse(json("{\"id\":\"18fede37617a787649c3f60b9f1f280d\"}"));
+
+        assertThat(successfulUploadCallbackUrlResponse.getId(), is("18fede37617a787649c3f60b9f1f280d"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadUploadResponseWithoutSuccess() throws Exception {
+        responseReader.readUploadResponse(json("{\"message\":\"Unknown API Key\"}"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadNoObject() throws Exception {
+        responseReader.readUploadResponse(json("[]"));
+    }
+
+    private static InputStream json(String json) {
+        return new ByteArrayInputStream(json.getBytes(Charsets.UTF_8));
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.impl;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class StreamMultiPartOutputTest {
+
+    private static final byte[] DATA = "{\"auth\":{}}".getBytes(Charsets.UTF_8);
+
+    private final BufferPool bufferPool = new BufferPool(1, 4);
+
+    @Test
+    public void testWriteKnownLength() throws Exception {
+        final byte[] image = "0123456789".getBytes(Charsets.UTF_8);
+        final StreamMultiPartOutput streamMultiPartOutput = output(image, image.length);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        streamMultiPartOutput.write(outputStream);
+
+        final String body = new String(outputStream.toByteArray(), Charsets.UTF_8);
+        assertThat((long) outputStream.size(), is(streamMultiPartOutput.getContentLength()));
+        assertThat(body, containsString("name=\"data\""));
+        assertThat(body, containsString("name=\"upload\""));
+        assertThat(body, containsString("0123456789"));
+        assertThat(body, endsWith("--boundary--\r\n"));
+    }
+
+    @Test
+    public void testWriteUnknownLength() throws Exception {
+        final StreamMultiPartOutput streamMultiPartOutput = output("0123456789".getBytes(Charsets.UTF_8), -1);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        streamMultiPartOutput.write(outputStream);
+
+        assertThat(streamMultiPartOutput.getContentLength(), is(-1L));
+        assertThat(new String(outputStream.toByteArray(), Charsets.UTF_8), containsString("0123456789"));
+    }
+
+    @Test
+    public void testWriteShorterThanContentLength() throws Exception {
+        assertWriteFails(output("0123456789".getBytes(Charsets.UTF_8), 11), "ended");
+    }
+
+    @Test
+    public void testWriteLongerThanContentLength() throws Exception {
+        assertWriteFails(output("0123456789".getBytes(Charsets.UTF_8), 9), "exceeds");
+    }
+
+    private StreamMultiPartOutput output(byte[] image, long imageLength) {
+        return new StreamMultiPartOutput("boundary", "data", DATA, "upload", new ByteArrayInputStream(image), imageLength, bufferPool);
+    }
+
+    private void assertWriteFails(StreamMultiPartOutput streamMultiPartOutput, String message) {
+        try {
+            streamMultiPartOutput.write(new ByteArrayOutputStream());
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString(message));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.limit;
+
+import io.kraken.client.ManualTicker;
+import io.kraken.client.exception.KrakenIoConcurrencyLimitException;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.metrics.HdrHistogramKrakenIoMetrics;
+import io.kraken.client.metrics.Phase;
+import io.kraken.client.metrics.RequestTimings;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ManualTicker ticker = new ManualTicker();
+    private final HdrHistogramKrakenIoMetrics metrics = new HdrHistogramKrakenIoMetrics();
+
+    @Test
+    public void testLimitGrowsUnderSteadyLatency() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = limiter(10, 100, 60000);
+
+        for (int round = 0; round < 20; round++) {
+            runRound(limiter, limiter.getLimit(Endpoint.UPLOAD), 100 * MILLISECOND);
+        }
+
+        assertThat(limiter.getLimit(Endpoint.UPLOAD), greaterThan(20));
+        assertThat(limiter.getLimit(Endpoint.URL), is(10));
+        assertThat(metrics.getConcurrencyLimit(Endpoint.UPLOAD), is(limiter.getLimit(Endpoint.UPLOAD)));
+        assertThat(limiter.getInFlight(Endpoint.UPLOAD), is(0));
+    }
+
+    @Test
+    public void testLimitShrinksWhenLatencyRises() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = limiter(10, 100, 60000);
+        for (int round = 0; round < 20; round++) {
+            runRound(limiter, limiter.getLimit(Endpoint.UPLOAD), 100 * MILLISECOND);
+        }
+        final int grownLimit = limiter.getLimit(Endpoint.UPLOAD);
+
+        for (int round = 0; round < 5; round++) {
+            runRound(limiter, limiter.getLimit(Endpoint.UPLOAD), 500 * MILLISECOND);
+        }
+
+        assertThat(limiter.getLimit(Endpoint.UPLOAD), lessThan(grownLimit / 2));
+    }
+
+    @Test
+    public void testAttemptsSampledThroughClientMetrics() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = limiter(10, 100, 60000);
+
+        // Calls take ever longer waiting for a rate limiter, while every attempt answers in 100ms
+        for (int round = 0; round < 20; round++) {
+            final List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<AdaptiveConcurrencyLimiter.Permit>();
+            for (int i = 0; i < limiter.getLimit(Endpoint.UPLOAD); i++) {
+                permits.add(limiter.acquire(Endpoint.UPLOAD));
+            }
+            ticker.advance((round + 1) * 1000 * MILLISECOND);
+            for (AdaptiveConcurrencyLimiter.Permit permit : permits) {
+                limiter.getClientMetrics().requestCompleted(Endpoint.UPLOAD, 200, new RequestTimings(0, 0, 0, 0, 100 * MILLISECOND), 0);
+                permit.success();
+            }
+        }
+
+        assertThat(limiter.getLimit(Endpoint.UPLOAD), greaterThan(20));
+        // Passed on to the metrics of the limiter
+        assertThat(metrics.getHistogram(Endpoint.UPLOAD, Phase.TOTAL).getTotalCount(), greaterThan(0L));
+    }
+
+    @Test
+    public void testLimitDoesNotGrowWhenIdle() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = limiter(10, 100, 60000);
+
+        for (int round = 0; round < 100; round++) {
+            runRound(limiter, 1, 100 * MILLISECOND);
+        }
+
+        assertThat(limiter.getLimit(Endpoint.UPLOAD), is(10));
+    }
+
+    @Test
+    public void testDroppedShrinksLimit() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = limiter(10, 100, 60000);
+
+        limiter.acquire(Endpoint.URL).dropped();
+
+        assertThat(limiter.getLimit(Endpoint.URL), is(9));
+        assertThat(metrics.getConcurrencyLimit(Endpoint.URL), is(9));
+    }
+
+    @Test
+    public void testIgnoredKeepsLimit() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = limiter(1, 100, 60000);
+
+        final AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(Endpoint.URL);
+        permit.ignore();
+        permit.dropped();
+
+        assertThat(limiter.getLimit(Endpoint.URL), is(1));
+        assertThat(limiter.getInFlight(Endpoint.URL), is(0));
+    }
+
+    @Test
+    public void testRejectsWhenQueueFull() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = limiter(1, 0, 60000);
+        limiter.acquire(Endpoint.UPLOAD);
+
+        try {
+            limiter.acquire(Endpoint.UPLOAD);
+            fail("Expected KrakenIoConcurrencyLimitException");
+        } catch (KrakenIoConcurrencyLimitException e) {
+            assertThat(e.getEndpoint(), is(Endpoint.UPLOAD));
+        }
+    }
+
+    @Test
+    public void testRejectsAfterMaxWait() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = limiter(1, 10, 10);
+        limiter.acquire(Endpoint.UPLOAD);
+
+        try {
+            limiter.acquire(Endpoint.UPLOAD);
+            fail("Expected KrakenIoConcurrencyLimitException");
+        } catch (KrakenIoConcurrencyLimitException e) {
+            assertThat(e.getMessage(), containsString("Timed out"));
+        }
+    }
+
+    @Test
+    public void testQueuedRequestProceedsOnRelease() throws Exception {
+        final AdaptiveConcurrencyLimiter limiter = limiter(1, 10, 60000);
+        final AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(Endpoint.UPLOAD);
+
+        final CompletableFuture<AdaptiveConcurrencyLimiter.Permit> queued = CompletableFuture.supplyAsync(() -> limiter.acquire(Endpoint.UPLOAD));
+        Thread.sleep(100);
+        assertThat(queued.isDone(), is(false));
+
+        permit.ignore();
+
+        queued.get(5, TimeUnit.SECONDS).ignore();
+        assertThat(limiter.getInFlight(Endpoint.UPLOAD), is(0));
+    }
+
+    private void runRound(AdaptiveConcurrencyLimiter limiter, int requests, long rttNanos) {
+        final List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<AdaptiveConcurrencyLimiter.Permit>();
+        for (int i = 0; i < requests; i++) {
+            permits.add(limiter.acquire(Endpoint.UPLOAD));
+        }
+        ticker.advance(rttNanos);
+        for (AdaptiveConcurrencyLimiter.Permit permit : permits) {
+            permit.success();
+        }
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxQueueSize, long maxWait) {
+        return new AdaptiveConcurrencyLimiter(initialLimit, 1, 200, 1.5, 0.2, 0.9, maxQueueSize, maxWait, metrics, ticker);
+    }
+}
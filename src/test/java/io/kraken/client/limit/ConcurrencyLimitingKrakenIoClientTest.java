@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.limit;
+
+import io.kraken.client.KrakenIoClient;
+import io.kraken.client.exception.KrakenIoConcurrencyLimitException;
+import io.kraken.client.exception.KrakenIoDeadlineExceededException;
+import io.kraken.client.exception.KrakenIoException;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.metrics.Endpoint;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import io.kraken.client.model.response.FailedUploadResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.ProcessingException;
+import java.net.URL;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class ConcurrencyLimitingKrakenIoClientTest {
+
+    private KrakenIoClient krakenIoClient;
+    private AdaptiveConcurrencyLimiter limiter;
+    private ConcurrencyLimitingKrakenIoClient concurrencyLimitingKrakenIoClient;
+
+    @Before
+    public void setUp() {
+        krakenIoClient = mock(KrakenIoClient.class);
+        limiter = AdaptiveConcurrencyLimiter.builder().withInitialLimit(10).build();
+        concurrencyLimitingKrakenIoClient = new ConcurrencyLimitingKrakenIoClient(krakenIoClient, limiter);
+    }
+
+    @Test
+    public void testSuccess() throws Exception {
+        final SuccessfulUploadResponse successfulUploadResponse = new SuccessfulUploadResponse(true, "image.jpg", 100, 50, 50, "http://dl.kraken.io/image.jpg");
+        when(krakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenReturn(successfulUploadResponse);
+
+        assertThat(concurrencyLimitingKrakenIoClient.imageUrlUpload(request()), sameInstance(successfulUploadResponse));
+        assertThat(limiter.getLimit(Endpoint.URL), is(10));
+        assertThat(limiter.getInFlight(Endpoint.URL), is(0));
+    }
+
+    @Test
+    public void testOverloadedResponseShrinksLimit() throws Exception {
+        when(krakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenThrow(requestException(503));
+
+        expectFailure();
+        assertThat(limiter.getLimit(Endpoint.URL), is(9));
+    }
+
+    @Test
+    public void testClientErrorKeepsLimit() throws Exception {
+        when(krakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenThrow(requestException(400));
+
+        expectFailure();
+        assertThat(limiter.getLimit(Endpoint.URL), is(10));
+        assertThat(limiter.getInFlight(Endpoint.URL), is(0));
+    }
+
+    @Test
+    public void testIoErrorShrinksLimit() throws Exception {
+        when(krakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenThrow(new ProcessingException("Read timed out"));
+
+        expectFailure(ProcessingException.class);
+        assertThat(limiter.getLimit(Endpoint.URL), is(9));
+    }
+
+    @Test
+    public void testLocalFailuresKeepLimit() throws Exception {
+        when(krakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenThrow(
+                new KrakenIoDeadlineExceededException(Endpoint.URL, 100),
+                new KrakenIoConcurrencyLimitException("Concurrency limit reached", Endpoint.URL),
+                new KrakenIoException("Failed to read image"),
+                new IllegalArgumentException("Invalid image")
+        );
+
+        expectFailure(KrakenIoDeadlineExceededException.class);
+        expectFailure(KrakenIoConcurrencyLimitException.class);
+        expectFailure(KrakenIoException.class);
+        expectFailure(IllegalArgumentException.class);
+        assertThat(limiter.getLimit(Endpoint.URL), is(10));
+    }
+
+    private void expectFailure() throws Exception {
+        expectFailure(KrakenIoException.class);
+    }
+
+    private void expectFailure(Class<? extends RuntimeException> exceptionClass) throws Exception {
+        try {
+            concurrencyLimitingKrakenIoClient.imageUrlUpload(request());
+            fail("Expected " + exceptionClass.getSimpleName());
+        } catch (RuntimeException e) {
+            assertThat(e, instanceOf(exceptionClass));
+            assertThat(limiter.getInFlight(Endpoint.URL), is(0));
+        }
+    }
+
+    private static KrakenIoRequestException requestException(int status) {
+        final FailedUploadResponse failedUploadResponse = new FailedUploadResponse(false, "error");
+        failedUploadResponse.setStatus(status);
+        return new KrakenIoRequestException("Kraken.io request failed", failedUploadResponse);
+    }
+
+    private static ImageUrlUploadRequest request() throws Exception {
+        return ImageUrlUploadRequest.builder(new URL("http://somehost/image.jpg")).build();
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.logging;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class RequestLoggingTest {
+
+    private final Logger logger = Logger.getLogger(RequestLoggingTest.class.getCanonicalName());
+
+    @Test
+    public void testNothingLoggedWhileLoggerDisabled() throws Exception {
+        logger.setLevel(Level.WARNING);
+        final RequestLogging requestLogging = RequestLogging.builder()
+                .withLogger(logger)
+                .withSlowRequestThreshold(1, TimeUnit.MILLISECONDS)
+                .build();
+
+        assertThat(requestLogging.isLogged(0), is(false));
+        assertThat(requestLogging.isLogged(TimeUnit.SECONDS.toNanos(1)), is(false));
+    }
+
+    @Test
+    public void testSlowRequestsOnly() throws Exception {
+        logger.setLevel(Level.INFO);
+        final RequestLogging requestLogging = RequestLogging.builder()
+                .withLogger(logger)
+                .withSampleRate(0)
+                .withSlowRequestThreshold(500, TimeUnit.MILLISECONDS)
+                .build();
+
+        assertThat(requestLogging.isLogged(TimeUnit.MILLISECONDS.toNanos(499)), is(false));
+        assertThat(requestLogging.isLogged(TimeUnit.MILLISECONDS.toNanos(500)), is(true));
+        assertThat(requestLogging.isSlow(TimeUnit.MILLISECONDS.toNanos(500)), is(true));
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        logger.setLevel(Level.INFO);
+        final RequestLogging requestLogging = RequestLogging.builder()
+                .withLogger(logger)
+                .withSampleRate(10)
+                .build();
+
+        int logged = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (requestLogging.isLogged(0)) {
+                logged++;
+            }
+        }
+        assertThat(logged, both(greaterThan(700)).and(lessThan(1300)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSampleRate() throws Exception {
+        RequestLogging.builder().withSampleRate(-1).build();
+    }
+}
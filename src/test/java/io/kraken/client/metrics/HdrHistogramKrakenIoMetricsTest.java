@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class HdrHistogramKrakenIoMetricsTest {
+
+    private final HdrHistogramKrakenIoMetrics metrics = new HdrHistogramKrakenIoMetrics();
+
+    @Test
+    public void testRequestCompleted() throws Exception {
+        metrics.requestStarted(Endpoint.UPLOAD);
+        metrics.requestStarted(Endpoint.UPLOAD);
+        assertThat(metrics.getInFlight(Endpoint.UPLOAD), is(2L));
+
+        metrics.requestCompleted(Endpoint.UPLOAD, 200, timings(1, 20, 300, 2), 1000);
+        metrics.bytesSaved(Endpoint.UPLOAD, 400);
+
+        assertThat(metrics.getInFlight(Endpoint.UPLOAD), is(1L));
+        assertThat(metrics.getUploadedBytes(Endpoint.UPLOAD), is(1000L));
+        assertThat(metrics.getSavedBytes(Endpoint.UPLOAD), is(400L));
+        assertThat(metrics.getErrorCounts(Endpoint.UPLOAD).entrySet(), empty());
+
+        final Histogram processing = metrics.getHistogram(Endpoint.UPLOAD, Phase.PROCESSING);
+        assertThat(processing.getTotalCount(), is(1L));
+        assertThat(processing.getMaxValue(), is(both(greaterThanOrEqualTo(299000L)).and(lessThanOrEqualTo(301000L))));
+        assertThat(metrics.getHistogram(Endpoint.UPLOAD, Phase.TOTAL).getTotalCount(), is(1L));
+        assertThat(metrics.getHistogram(Endpoint.URL, Phase.TOTAL).getTotalCount(), is(0L));
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        metrics.requestStarted(Endpoint.URL);
+        metrics.requestCompleted(Endpoint.URL, 429, timings(1, 1, 1, 1), 100);
+        metrics.requestStarted(Endpoint.URL);
+        metrics.requestCompleted(Endpoint.URL, 429, timings(1, 1, 1, 1), 100);
+        metrics.requestStarted(Endpoint.URL);
+        metrics.requestCompleted(Endpoint.URL, 503, timings(1, 1, 1, 1), 100);
+        metrics.requestStarted(Endpoint.URL);
+        metrics.requestFailed(Endpoint.URL, new IOException());
+
+        assertThat(metrics.getErrorCounts(Endpoint.URL), allOf(hasEntry(429, 2L), hasEntry(503, 1L)));
+        assertThat(metrics.getFailureCount(Endpoint.URL), is(1L));
+        assertThat(metrics.getInFlight(Endpoint.URL), is(0L));
+    }
+
+    @Test
+    public void testHistogramIsSnapshot() throws Exception {
+        metrics.requestCompleted(Endpoint.UPLOAD, 200, timings(1, 1, 1, 1), 0);
+        final Histogram histogram = metrics.getHistogram(Endpoint.UPLOAD, Phase.TOTAL);
+        metrics.requestCompleted(Endpoint.UPLOAD, 200, timings(1, 1, 1, 1), 0);
+
+        assertThat(histogram.getTotalCount(), is(1L));
+        assertThat(metrics.getHistogram(Endpoint.UPLOAD, Phase.TOTAL).getTotalCount(), is(2L));
+    }
+
+    private static RequestTimings timings(long connectMillis, long uploadMillis, long processingMillis, long deserializationMillis) {
+        return new RequestTimings(
+                TimeUnit.MILLISECONDS.toNanos(connectMillis),
+                TimeUnit.MILLISECONDS.toNanos(uploadMillis),
+                TimeUnit.MILLISECONDS.toNanos(processingMillis),
+                TimeUnit.MILLISECONDS.toNanos(deserializationMillis),
+                TimeUnit.MILLISECONDS.toNanos(connectMillis + uploadMillis + processingMillis + deserializationMillis)
+        );
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.ratelimit;
+
+import io.kraken.client.ManualTicker;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final ManualTicker ticker = new ManualTicker();
+
+    @Test
+    public void testRequestsPerSecond() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(2, 0, ticker);
+
+        assertThat(rateLimiter.reserve(0), is(0L));
+        assertThat(rateLimiter.reserve(0), is(0L));
+        assertThat(rateLimiter.reserve(0), is(SECOND / 2));
+        assertThat(rateLimiter.reserve(0), is(SECOND));
+
+        ticker.advance(SECOND);
+        assertThat(rateLimiter.reserve(0), is(SECOND / 2));
+    }
+
+    @Test
+    public void testBurstIsCapped() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(1, 0, ticker);
+
+        ticker.advance(10 * SECOND);
+        assertThat(rateLimiter.reserve(0), is(0L));
+        assertThat(rateLimiter.reserve(0), is(SECOND));
+    }
+
+    @Test
+    public void testBytesPerSecond() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(0, 1000, ticker);
+
+        assertThat(rateLimiter.reserve(1000), is(0L));
+        assertThat(rateLimiter.reserve(500), is(SECOND / 2));
+        assertThat(rateLimiter.reserve(0), is(0L));
+
+        ticker.advance(SECOND / 2);
+        assertThat(rateLimiter.reserve(3000), is(3 * SECOND));
+    }
+
+    @Test
+    public void testRequestsAndBytesPerSecond() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(10, 1000, ticker);
+
+        assertThat(rateLimiter.reserve(2000), is(SECOND));
+        assertThat(rateLimiter.reserve(0), is(0L));
+    }
+
+    @Test
+    public void testReserveWithinMaxWait() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(0, 1000, ticker);
+
+        assertThat(rateLimiter.reserve(1000, 0), is(0L));
+        assertThat(rateLimiter.reserve(1000, SECOND / 2), is(-1L));
+        // Nothing was reserved by the request which gave up
+        assertThat(rateLimiter.reserve(500, SECOND / 2), is(SECOND / 2));
+        assertThat(rateLimiter.reserve(0, 0), is(0L));
+    }
+
+    @Test
+    public void testTryAcquire() throws Exception {
+        final RateLimiter rateLimiter = RateLimiter.builder().withRequestsPerSecond(1).build();
+
+        assertThat(rateLimiter.tryAcquire(0, 0, TimeUnit.MILLISECONDS), is(true));
+        assertThat(rateLimiter.tryAcquire(0, 100, TimeUnit.MILLISECONDS), is(false));
+        assertThat(rateLimiter.tryAcquireAsync(0, 100, TimeUnit.MILLISECONDS).get(1, TimeUnit.SECONDS), is(false));
+    }
+
+    @Test
+    public void testAcquireAsync() throws Exception {
+        final RateLimiter rateLimiter = RateLimiter.builder().withRequestsPerSecond(20).build();
+
+        final CompletableFuture<Void> immediate = rateLimiter.acquireAsync(0);
+        assertThat(immediate.isDone(), is(true));
+
+        for (int i = 0; i < 19; i++) {
+            rateLimiter.acquireAsync(0);
+        }
+        final long startTime = System.nanoTime();
+        rateLimiter.acquireAsync(0).get(1, TimeUnit.SECONDS);
+        assertThat(System.nanoTime() - startTime, greaterThan(TimeUnit.MILLISECONDS.toNanos(20)));
+    }
+}
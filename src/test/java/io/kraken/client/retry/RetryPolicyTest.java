@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.retry;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.Test;
+
+import javax.ws.rs.ProcessingException;
+import java.io.FileNotFoundException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void testNextBackoffFullJitter() throws Exception {
+        final RetryPolicy retryPolicy = RetryPolicy.builder()
+                .withMaxAttempts(5)
+                .withInitialBackoff(100)
+                .withMaxBackoff(300)
+                .withRetryBudget(RetryBudget.builder().withReserve(1000).build())
+                .build();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(retryPolicy.nextBackoff(1, null), both(greaterThanOrEqualTo(0L)).and(lessThanOrEqualTo(100L)));
+            assertThat(retryPolicy.nextBackoff(2, null), both(greaterThanOrEqualTo(0L)).and(lessThanOrEqualTo(200L)));
+            assertThat(retryPolicy.nextBackoff(4, null), both(greaterThanOrEqualTo(0L)).and(lessThanOrEqualTo(300L)));
+        }
+        assertThat(retryPolicy.nextBackoff(5, null), is(-1L));
+    }
+
+    @Test
+    public void testNextBackoffRetryAfter() throws Exception {
+        final RetryPolicy retryPolicy = RetryPolicy.builder().withInitialBackoff(10).withMaxBackoff(5000).build();
+
+        assertThat(retryPolicy.nextBackoff(1, "2"), is(2000L));
+        assertThat(retryPolicy.nextBackoff(1, "60"), is(-1L));
+        assertThat(retryPolicy.nextBackoff(1, "garbage"), lessThanOrEqualTo(10L));
+    }
+
+    @Test
+    public void testParseRetryAfterHttpDate() throws Exception {
+        final String retryAfter = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().plusSeconds(30));
+        assertThat(RetryPolicy.parseRetryAfter(retryAfter), both(greaterThan(25000L)).and(lessThanOrEqualTo(30000L)));
+        assertThat(RetryPolicy.parseRetryAfter(null), is(0L));
+    }
+
+    @Test
+    public void testNextBackoffExhaustedBudget() throws Exception {
+        final RetryPolicy retryPolicy = RetryPolicy.builder().withRetryBudget(RetryBudget.builder().withReserve(1).build()).build();
+
+        assertThat(retryPolicy.nextBackoff(1, null), greaterThanOrEqualTo(0L));
+        assertThat(retryPolicy.nextBackoff(1, null), is(-1L));
+    }
+
+    @Test
+    public void testNextBackoffBeyondDeadlineKeepsBudget() throws Exception {
+        final RetryPolicy retryPolicy = RetryPolicy.builder().withRetryBudget(RetryBudget.builder().withReserve(1).build()).build();
+
+        assertThat(retryPolicy.nextBackoff(1, "2", 1000), is(-1L));
+        assertThat(retryPolicy.nextBackoff(1, "2", 3000), is(2000L));
+        assertThat(retryPolicy.nextBackoff(1, "2", 3000), is(-1L));
+    }
+
+    @Test
+    public void testIsRetryable() throws Exception {
+        final RetryPolicy retryPolicy = RetryPolicy.builder().build();
+
+        assertThat(retryPolicy.isRetryable(429), is(true));
+        assertThat(retryPolicy.isRetryable(503), is(true));
+        assertThat(retryPolicy.isRetryable(500), is(false));
+        assertThat(retryPolicy.isRetryable(400), is(false));
+        assertThat(retryPolicy.isRetryable(new ProcessingException(new ConnectException())), is(true));
+        assertThat(retryPolicy.isRetryable(new ProcessingException(new ConnectTimeoutException())), is(true));
+        assertThat(retryPolicy.isRetryable(new ProcessingException(new NoHttpResponseException("closed"))), is(true));
+        assertThat(retryPolicy.isRetryable(new ProcessingException(new SocketTimeoutException())), is(false));
+        assertThat(retryPolicy.isRetryable(new ProcessingException(new FileNotFoundException())), is(false));
+        assertThat(retryPolicy.isRetryable(new IllegalStateException()), is(false));
+        assertThat(RetryPolicy.disabled().nextBackoff(1, null), is(-1L));
+    }
+
+    @Test
+    public void testIsRetryableNonIdempotent() throws Exception {
+        final RetryPolicy retryPolicy = RetryPolicy.builder().withNonIdempotentRetries(true).build();
+
+        assertThat(retryPolicy.isRetryable(500), is(true));
+        assertThat(retryPolicy.isRetryable(504), is(true));
+        assertThat(retryPolicy.isRetryable(400), is(false));
+        assertThat(retryPolicy.isRetryable(new ProcessingException(new SocketTimeoutException())), is(true));
+        assertThat(retryPolicy.isRetryable(new ProcessingException(new UnknownHostException())), is(false));
+    }
+
+    @Test
+    public void testRetryBudgetRatio() throws Exception {
+        final RetryBudget retryBudget = RetryBudget.builder().withRatio(0.2).withReserve(2).build();
+
+        assertThat(retryBudget.tryAcquireRetry(), is(true));
+        assertThat(retryBudget.tryAcquireRetry(), is(true));
+        assertThat(retryBudget.tryAcquireRetry(), is(false));
+
+        for (int i = 0; i < 4; i++) {
+            retryBudget.recordRequest();
+        }
+        assertThat(retryBudget.tryAcquireRetry(), is(false));
+        retryBudget.recordRequest();
+        assertThat(retryBudget.tryAcquireRetry(), is(true));
+
+        for (int i = 0; i < 100; i++) {
+            retryBudget.recordRequest();
+        }
+        assertThat(retryBudget.getAvailableRetries(), is(2));
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.timeout;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class TimeoutPolicyTest {
+
+    private final TimeoutPolicy timeoutPolicy = TimeoutPolicy.builder()
+            .withReadTimeout(2000)
+            .withTimePerMegabyte(1, TimeUnit.SECONDS)
+            .withMaxReadTimeout(30000)
+            .build();
+
+    @Test
+    public void testReadTimeoutWithoutUpload() throws Exception {
+        assertThat(timeoutPolicy.getReadTimeout(0), is(2000));
+    }
+
+    @Test
+    public void testReadTimeoutOfUnknownUploadSize() throws Exception {
+        assertThat(timeoutPolicy.getReadTimeout(-1), is(30000));
+    }
+
+    @Test
+    public void testReadTimeoutGrowsWithUploadSize() throws Exception {
+        assertThat(timeoutPolicy.getReadTimeout(512 * 1024), is(2500));
+        assertThat(timeoutPolicy.getReadTimeout(10 * 1024 * 1024), is(12000));
+    }
+
+    @Test
+    public void testReadTimeoutCapped() throws Exception {
+        assertThat(timeoutPolicy.getReadTimeout(30L * 1024 * 1024), is(30000));
+        assertThat(timeoutPolicy.getReadTimeout(Long.MAX_VALUE / 1024), is(30000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxReadTimeoutBelowReadTimeout() throws Exception {
+        TimeoutPolicy.builder().withReadTimeout(5000).withMaxReadTimeout(1000).build();
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2015 Nekkra UG (oss@kraken.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.kraken.client.variant;
+
+import io.kraken.client.AsyncKrakenIoClient;
+import io.kraken.client.exception.KrakenIoRequestException;
+import io.kraken.client.model.Metadata;
+import io.kraken.client.model.request.DirectUploadRequest;
+import io.kraken.client.model.request.ImageUrlUploadRequest;
+import io.kraken.client.model.resize.FitResize;
+import io.kraken.client.model.resize.SquareResize;
+import io.kraken.client.model.response.FailedUploadResponse;
+import io.kraken.client.model.response.SuccessfulUploadResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.2.0
+ */
+public class KrakenIoVariantUploaderTest {
+
+    private final SuccessfulUploadResponse original = new SuccessfulUploadResponse(true, "header.jpg", 100, 90, 10, "http://dl.kraken.io/original.jpg");
+    private final SuccessfulUploadResponse small = new SuccessfulUploadResponse(true, "header.jpg", 90, 20, 70, "http://dl.kraken.io/small.jpg");
+    private final SuccessfulUploadResponse square = new SuccessfulUploadResponse(true, "header.jpg", 90, 30, 60, "http://dl.kraken.io/square.webp");
+
+    private AsyncKrakenIoClient asyncKrakenIoClient;
+    private KrakenIoVariantUploader krakenIoVariantUploader;
+
+    @Before
+    public void setUp() {
+        asyncKrakenIoClient = mock(AsyncKrakenIoClient.class);
+        krakenIoVariantUploader = new KrakenIoVariantUploader(asyncKrakenIoClient);
+    }
+
+    @Test
+    public void testUploadVariantsFromOriginal() throws Exception {
+        when(asyncKrakenIoClient.directUpload(any(DirectUploadRequest.class))).thenReturn(CompletableFuture.completedFuture(original));
+        when(asyncKrakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class))).thenAnswer(invocation -> {
+            final ImageUrlUploadRequest request = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(request.getWebp() ? square : small);
+        });
+
+        final Map<String, SuccessfulUploadResponse> results = krakenIoVariantUploader.upload(variantSet().build()).get();
+
+        assertThat(results.keySet(), contains("small", "square"));
+        assertThat(results.get("small"), sameInstance(small));
+        assertThat(results.get("square"), sameInstance(square));
+
+        final ArgumentCaptor<DirectUploadRequest> originalRequest = ArgumentCaptor.forClass(DirectUploadRequest.class);
+        verify(asyncKrakenIoClient, times(1)).directUpload(originalRequest.capture());
+        assertThat(originalRequest.getValue().getLossy(), is(false));
+        assertThat(originalRequest.getValue().getResize(), nullValue());
+        assertThat(originalRequest.getValue().getAutoOrient(), is(true));
+        assertThat(originalRequest.getValue().getPreserveMeta(), contains(Metadata.PROFILE));
+
+        final ArgumentCaptor<ImageUrlUploadRequest> variantRequests = ArgumentCaptor.forClass(ImageUrlUploadRequest.class);
+        verify(asyncKrakenIoClient, times(2)).imageUrlUpload(variantRequests.capture());
+        for (ImageUrlUploadRequest variantRequest : variantRequests.getAllValues()) {
+            assertThat(variantRequest.getImageUrl().toString(), is("http://dl.kraken.io/original.jpg"));
+            assertThat(variantRequest.getLossy(), is(true));
+            assertThat(variantRequest.getResize(), notNullValue());
+            assertThat(variantRequest.getAutoOrient(), is(false));
+            assertThat(variantRequest.getPreserveMeta(), contains(Metadata.PROFILE));
+        }
+    }
+
+    @Test
+    public void testUploadSingleVariant() throws Exception {
+        when(asyncKrakenIoClient.directUpload(any(DirectUploadRequest.class))).thenReturn(CompletableFuture.completedFuture(small));
+
+        final Map<String, SuccessfulUploadResponse> results = krakenIoVariantUploader.upload(
+                VariantSetRequest.builder(new ByteArrayInputStream(new byte[]{1, 2, 3})).withVariant(smallVariant()).build()
+        ).get();
+
+        assertThat(results.keySet(), contains("small"));
+        final ArgumentCaptor<DirectUploadRequest> request = ArgumentCaptor.forClass(DirectUploadRequest.class);
+        verify(asyncKrakenIoClient, times(1)).directUpload(request.capture());
+        assertThat(request.getValue().getQuality(), is(80));
+        verify(asyncKrakenIoClient, never()).imageUrlUpload(any(ImageUrlUploadRequest.class));
+    }
+
+    @Test
+    public void testUploadVariantFailure() throws Exception {
+        final CompletableFuture<SuccessfulUploadResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new KrakenIoRequestException("Kraken.io request failed", new FailedUploadResponse(false, "error")));
+        when(asyncKrakenIoClient.directUpload(any(DirectUploadRequest.class))).thenReturn(CompletableFuture.completedFuture(original));
+        when(asyncKrakenIoClient.imageUrlUpload(any(ImageUrlUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(small))
+                .thenReturn(failed);
+
+        try {
+            krakenIoVariantUploader.upload(variantSet().build()).get();
+            fail("Expected failed variant");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(KrakenIoRequestException.class));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateVariantId() {
+        variantSet().withVariant(smallVariant());
+    }
+
+    private static VariantSetRequest.Builder variantSet() {
+        return VariantSetRequest.builder(new ByteArrayInputStream(new byte[]{1, 2, 3}))
+                .withAutoOrient(true)
+                .withPreserveMeta(Metadata.PROFILE)
+                .withVariant(smallVariant())
+                .withVariant(Variant.builder("square").withResize(new SquareResize(300)).withWebp(true).withLossy(true).build());
+    }
+
+    private static Variant smallVariant() {
+        return Variant.builder("small").withResize(new FitResize(100, 100)).withQuality(80).build();
+    }
+}